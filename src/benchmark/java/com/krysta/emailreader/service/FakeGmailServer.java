@@ -0,0 +1,120 @@
+package com.krysta.emailreader.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the Gmail messages.list endpoint used by benchmarks.
+ * Every call returns the same pre-rendered page with a next page token. Like
+ * Gmail it honours the {@code fields} mask used by {@link GmailService} and
+ * compresses the response when the client accepts gzip.
+ */
+final class FakeGmailServer implements AutoCloseable {
+    
+    private static final String LIST_PATH = "/gmail/v1/users/me/messages";
+    
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] fullPage;
+    private final byte[] maskedPage;
+    private final byte[] fullPageGzip;
+    private final byte[] maskedPageGzip;
+    private final AtomicLong lastResponseBytes = new AtomicLong();
+    
+    FakeGmailServer(int messagesPerPage) throws IOException {
+        this.fullPage = renderPage(messagesPerPage, false);
+        this.maskedPage = renderPage(messagesPerPage, true);
+        this.fullPageGzip = gzip(fullPage);
+        this.maskedPageGzip = gzip(maskedPage);
+        this.executor = Executors.newFixedThreadPool(4);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(LIST_PATH, this::handleList);
+        server.setExecutor(executor);
+        server.start();
+    }
+    
+    /**
+     * Root URL to configure on the Gmail client builder.
+     */
+    String rootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+    
+    /**
+     * Bytes on the wire of the most recent response body.
+     */
+    long lastResponseBytes() {
+        return lastResponseBytes.get();
+    }
+    
+    /**
+     * A messages.list page as Gmail renders it: random 16 digit hex ids, a
+     * next page token and the result size estimate, or only the ids and the
+     * token when masked.
+     */
+    static byte[] renderPage(int messages, boolean masked) {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{\n  \"messages\": [\n");
+        for (int i = 0; i < messages; i++) {
+            String id = Long.toHexString(random.nextLong() >>> 4);
+            json.append("    {\n      \"id\": \"").append(id).append('"');
+            if (!masked) {
+                json.append(",\n      \"threadId\": \"").append(Long.toHexString(random.nextLong() >>> 4)).append('"');
+            }
+            json.append("\n    }").append(i < messages - 1 ? ",\n" : "\n");
+        }
+        json.append("  ],\n  \"nextPageToken\": \"").append(Long.toUnsignedString(random.nextLong())).append('"');
+        if (!masked) {
+            json.append(",\n  \"resultSizeEstimate\": ").append(messages + 1);
+        }
+        json.append("\n}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private void handleList(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        boolean masked = query != null && query.contains("fields=");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        
+        byte[] body = masked ? (gzip ? maskedPageGzip : maskedPage) : (gzip ? fullPageGzip : fullPage);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        lastResponseBytes.set(body.length);
+    }
+    
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
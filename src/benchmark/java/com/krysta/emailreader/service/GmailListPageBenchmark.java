@@ -0,0 +1,77 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.ListMessagesResponse;
+import com.krysta.emailreader.dto.EmailAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches and parses one 500-message messages.list page from a local fake
+ * Gmail server, with and without the fields mask and gzip. The wire size of
+ * each variant is printed at the end of the trial; run with {@code -prof gc}
+ * to also compare allocation per page.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args=GmailListPageBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GmailListPageBenchmark {
+    
+    private static final EmailAddress SENDER =
+            new EmailAddress("sender@example.com", "sender", "example.com", "sender@example.com");
+    
+    @Param({"false", "true"})
+    public boolean fieldsMask;
+    
+    @Param({"identity", "gzip"})
+    public String encoding;
+    
+    private FakeGmailServer server;
+    private Gmail gmail;
+    
+    @Setup
+    public void setUp() throws IOException {
+        server = new FakeGmailServer(500);
+        gmail = GmailService.gmailClientBuilder(new NetHttpTransport(), request -> { }, 5000, 5000, "benchmark")
+                .setRootUrl(server.rootUrl())
+                .build();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%nfieldsMask=%s encoding=%s: %d bytes per page on the wire%n",
+                fieldsMask, encoding, server.lastResponseBytes());
+        server.close();
+    }
+    
+    @Benchmark
+    public int listPage() throws IOException {
+        Gmail.Users.Messages.List request = fieldsMask
+                ? GmailService.newListRequest(gmail, SENDER, 500L, null)
+                : gmail.users().messages().list("me").setQ("from:" + SENDER.canonical()).setMaxResults(500L);
+        if ("identity".equals(encoding)) {
+            request.getRequestHeaders().setAcceptEncoding("identity");
+        }
+        ListMessagesResponse response = request.execute();
+        return response.getMessages().size();
+    }
+}
@@ -0,0 +1,59 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.model.ListMessagesResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses one 500-message messages.list page into the generated
+ * {@code ListMessagesResponse} model versus counting it with the streaming
+ * {@link GmailListPage} parser. Run with {@code -prof gc} to compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per page.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="GmailListPageParseBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GmailListPageParseBenchmark {
+    
+    @Param({"true", "false"})
+    public boolean fieldsMask;
+    
+    private byte[] page;
+    
+    @Setup
+    public void setUp() {
+        page = FakeGmailServer.renderPage(500, fieldsMask);
+    }
+    
+    @Benchmark
+    public int modelParser() throws IOException {
+        ListMessagesResponse response = GsonFactory.getDefaultInstance()
+                .fromInputStream(new ByteArrayInputStream(page), StandardCharsets.UTF_8, ListMessagesResponse.class);
+        return response.getMessages().size();
+    }
+    
+    @Benchmark
+    public int streamingParser() throws IOException {
+        return GmailListPage.parse(new ByteArrayInputStream(page)).messageCount();
+    }
+}
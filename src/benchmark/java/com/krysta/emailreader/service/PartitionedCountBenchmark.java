@@ -0,0 +1,99 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.gmail.Gmail;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts a sender with 50k messages spread over ten years against an
+ * in-memory mailbox that answers every messages.list call after 50 ms, once
+ * by paginating sequentially and once over parallel date windows. The
+ * number of list calls is printed at the end of the trial, since splitting
+ * spends extra probe calls to save wall-clock time.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args=PartitionedCountBenchmark}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PartitionedCountBenchmark {
+    
+    private static final EmailAddress SENDER =
+            new EmailAddress("sender@example.com", "sender", "example.com", "sender@example.com");
+    private static final int MESSAGES = 50_000;
+    
+    @Param({"false", "true"})
+    public boolean partitioned;
+    
+    @Param({"4", "8"})
+    public int parallelism;
+    
+    private FakeMailboxTransport transport;
+    private GmailService gmailService;
+    
+    @Setup
+    public void setUp() {
+        long start = Instant.parse("2015-01-01T00:00:00Z").getEpochSecond();
+        long span = TimeUnit.DAYS.toSeconds(3650);
+        long[] timestamps = new long[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            timestamps[i] = start + ThreadLocalRandom.current().nextLong(span);
+        }
+        transport = new FakeMailboxTransport(timestamps, 50);
+        
+        GmailConfig gmailConfig = new GmailConfig();
+        gmailConfig.setApplicationName("benchmark");
+        gmailConfig.getPartitioning().setEnabled(partitioned);
+        gmailConfig.getPartitioning().setParallelism(parallelism);
+        
+        Gmail gmail = GmailService.gmailClientBuilder(transport, request -> { }, 5000, 5000, "benchmark").build();
+        CredentialsStorageService credentialsStorageService = new CredentialsStorageService();
+        GmailClientHolder holder = new GmailClientHolder(credentialsStorageService, transport, new SimpleMeterRegistry()) {
+            @Override
+            public Gmail getClient(ClientFactory factory) {
+                return gmail;
+            }
+        };
+        NetHttpTransport httpTransport = new NetHttpTransport();
+        gmailService = new GmailService(gmailConfig,
+                new AuthorizationFlowCache(gmailConfig, credentialsStorageService, httpTransport), holder,
+                new TokenRefreshService(gmailConfig, new SimpleMeterRegistry()),
+                new GmailQuotaScheduler(gmailConfig, new SimpleMeterRegistry()),
+                new GmailRetryPolicy(gmailConfig, new SimpleMeterRegistry()),
+                new GmailConcurrencyLimiter(gmailConfig, new SimpleMeterRegistry()),
+                new GmailCircuitBreaker(gmailConfig, new AuditService(), new SimpleMeterRegistry()));
+    }
+    
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%npartitioned=%s parallelism=%d: %d list calls%n",
+                partitioned, parallelism, transport.requestCount());
+        gmailService.shutdown();
+    }
+    
+    @Benchmark
+    public long countSender() {
+        return gmailService.countEmailsFromSender(SENDER);
+    }
+}
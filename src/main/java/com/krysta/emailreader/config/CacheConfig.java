@@ -1,12 +1,20 @@
 package com.krysta.emailreader.config;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.krysta.emailreader.service.CachedCount;
+import com.krysta.emailreader.service.PersistentCountStore;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,17 +24,72 @@ import java.util.concurrent.TimeUnit;
 @EnableCaching
 public class CacheConfig {
     
+    public static final String EMAIL_COUNTS_CACHE = "emailCounts";
+    
+    /**
+     * Async cache of email counts keyed by sender address.
+     * Concurrent lookups for the same sender share one in-flight future.
+     * Entries expire based on when the count was fetched from Gmail (not when
+     * it entered this cache), so counts restored from the persistent tier keep
+     * their original age. In refresh-ahead mode entries live until the max
+     * staleness limit and are reloaded in the background once past the
+     * freshness window.
+     */
+    @Bean
+    public AsyncCache<String, CachedCount> emailCountsCache(EmailCacheProperties properties) {
+        long maxAgeNanos = properties.maxEntryAge().toNanos();
+        return Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, CachedCount>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedCount value, long currentTime) {
+                        return remainingNanos(value);
+                    }
+                    
+                    @Override
+                    public long expireAfterUpdate(String key, CachedCount value, long currentTime, long currentDuration) {
+                        return remainingNanos(value);
+                    }
+                    
+                    @Override
+                    public long expireAfterRead(String key, CachedCount value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                    
+                    private long remainingNanos(CachedCount value) {
+                        return Math.max(0, maxAgeNanos - TimeUnit.MILLISECONDS.toNanos(value.ageMillis()));
+                    }
+                })
+                .maximumSize(properties.getMaximumSize())
+                .recordStats()
+                .buildAsync();
+    }
+    
     /**
-     * Configure Caffeine cache with expiration and size limits.
+     * Exposes the email counts cache through Spring's cache abstraction.
      * Cache keys will be email addresses and values will be email counts.
      */
     @Bean
-    public CacheManager cacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("emailCounts");
-        cacheManager.setCaffeine(Caffeine.newBuilder()
-                .expireAfterWrite(5, TimeUnit.MINUTES)
-                .maximumSize(500)
-                .recordStats());
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CacheManager cacheManager(AsyncCache<String, CachedCount> emailCountsCache) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(EMAIL_COUNTS_CACHE, (AsyncCache) emailCountsCache);
         return cacheManager;
     }
+    
+    /**
+     * Optional disk-backed second tier behind the in-memory cache.
+     * Loaded in the background at startup and written behind asynchronously.
+     * Entries are encrypted with the same key that protects the OAuth tokens.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public PersistentCountStore persistentCountStore(EmailCacheProperties properties,
+                                                     GmailConfig gmailConfig) throws IOException {
+        EmailCacheProperties.Persistent persistent = properties.getPersistent();
+        File tokensDir = new File(gmailConfig.getTokensDirectory());
+        if (persistent.isEnabled()) {
+            Files.createDirectories(tokensDir.toPath());
+        }
+        return new PersistentCountStore(
+                persistent.isEnabled(), Path.of(persistent.getFile()), persistent.getTtl().toMillis(), tokensDir);
+    }
 }
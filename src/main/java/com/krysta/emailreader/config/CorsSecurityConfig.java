@@ -40,7 +40,8 @@ public class CorsSecurityConfig {
             "Content-Type",
             "X-API-Key",
             "Authorization",
-            "Accept"
+            "Accept",
+            "X-Request-Timeout-Ms"
         ));
         
         // Expose headers
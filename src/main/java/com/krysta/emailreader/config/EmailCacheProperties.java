@@ -0,0 +1,258 @@
+package com.krysta.emailreader.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration properties for the email count cache.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "email-cache")
+public class EmailCacheProperties {
+    
+    /**
+     * Maximum number of senders kept in the cache
+     */
+    private long maximumSize = 500;
+    
+    /**
+     * How long a cached count is considered fresh
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(5);
+    
+    /**
+     * Stale-while-revalidate settings
+     */
+    private RefreshAhead refreshAhead = new RefreshAhead();
+    
+    /**
+     * Disk-backed second-level cache settings
+     */
+    private Persistent persistent = new Persistent();
+    
+    /**
+     * Rules for normalizing sender addresses into cache keys
+     */
+    private Canonicalization canonicalization = new Canonicalization();
+    
+    /**
+     * Keep cached counts current from the Gmail History API instead of rescanning
+     */
+    private Incremental incremental = new Incremental();
+    
+    /**
+     * Local sender index answering counts without Gmail calls
+     */
+    private Index index = new Index();
+    
+    /**
+     * Per-sender and per-label message bitmaps for set queries across senders
+     */
+    private Bitmaps bitmaps = new Bitmaps();
+    
+    /**
+     * Age at which a cache entry is evicted: the max staleness in refresh-ahead
+     * mode, otherwise the freshness window.
+     */
+    public Duration maxEntryAge() {
+        return refreshAhead.isEnabled() ? refreshAhead.getMaxStaleness() : expireAfterWrite;
+    }
+    
+    /**
+     * Serve stale counts while reloading them in the background.
+     */
+    @Data
+    public static class RefreshAhead {
+        
+        /**
+         * Serve stale entries and refresh them in the background instead of expiring them
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Hard limit on how old a served count may be
+         */
+        private Duration maxStaleness = Duration.ofMinutes(15);
+        
+        /**
+         * Threads reloading stale entries
+         */
+        private int threads = 2;
+        
+        /**
+         * Pending reloads; further reloads are skipped while the queue is full
+         */
+        private int queueCapacity = 100;
+        
+        /**
+         * Deadline for a single background reload
+         */
+        private Duration timeout = Duration.ofMinutes(2);
+    }
+    
+    /**
+     * Keep counts in a local file so they survive restarts.
+     */
+    @Data
+    public static class Persistent {
+        
+        /**
+         * Enable the disk-backed second-level cache
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Append-only file holding persisted counts
+         */
+        private String file = "cache/email-counts.log";
+        
+        /**
+         * Persisted counts older than this are discarded
+         */
+        private Duration ttl = Duration.ofHours(24);
+    }
+    
+    /**
+     * How sender addresses are normalized. Domains are always lower-cased.
+     */
+    @Data
+    public static class Canonicalization {
+        
+        /**
+         * Lower-case the local part (most providers treat it case-insensitively)
+         */
+        private boolean lowercaseLocalPart = true;
+        
+        /**
+         * Drop "+tag" suffixes from the local part
+         */
+        private boolean stripPlusTags = false;
+        
+        /**
+         * Remove dots from the local part for Gmail domains
+         */
+        private boolean ignoreGmailDots = false;
+        
+        /**
+         * Domains that follow Gmail addressing rules
+         */
+        private List<String> gmailDomains = List.of("gmail.com", "googlemail.com");
+    }
+    
+    /**
+     * Apply mailbox changes reported by the History API to cached exact counts.
+     */
+    @Data
+    public static class Incremental {
+        
+        /**
+         * Maintain cached counts incrementally from the mailbox history
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Time between two history syncs
+         */
+        private Duration interval = Duration.ofMinutes(1);
+        
+        /**
+         * Deadline for a single history sync
+         */
+        private Duration timeout = Duration.ofMinutes(1);
+        
+        /**
+         * Changes per sync above which the counts are rescanned instead
+         */
+        private int maxChanges = 500;
+        
+        /**
+         * Counts are rescanned in full at least this often to correct any drift
+         */
+        private Duration fullRescanInterval = Duration.ofHours(24);
+    }
+    
+    /**
+     * Index the sender of every message once and answer counts from it.
+     */
+    @Data
+    public static class Index {
+        
+        /**
+         * Build the sender index at startup and serve counts from it
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Base path of the memory-mapped sender table (.tbl) and its change log (.log)
+         */
+        private String file = "cache/sender-index";
+        
+        /**
+         * Messages whose From header is read per batch call (at most 100)
+         */
+        private int batchSize = 50;
+        
+        /**
+         * Time between two catch-ups from the mailbox history
+         */
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        
+        /**
+         * The index is rebuilt from scratch at least this often
+         */
+        private Duration fullSyncInterval = Duration.ofDays(7);
+        
+        /**
+         * Deadline for a full sync of the mailbox
+         */
+        private Duration syncTimeout = Duration.ofHours(6);
+        
+        /**
+         * Counts are answered from the index only if it caught up this recently
+         */
+        private Duration maxStaleness = Duration.ofMinutes(15);
+        
+        /**
+         * History changes per catch-up above which the index is rebuilt instead
+         */
+        private int maxChanges = 5000;
+    }
+    
+    /**
+     * Bitmaps of the messages matched by each exact sender scan and label
+     * listing, so that unions and differences are counted locally.
+     */
+    @Data
+    public static class Bitmaps {
+        
+        /**
+         * Record a bitmap of the matched messages on every exact count
+         */
+        private boolean enabled = false;
+        
+        /**
+         * File holding the message ordinals and bitmaps across restarts
+         */
+        private String file = "cache/message-bitmaps.bin";
+        
+        /**
+         * Bitmaps older than this are rebuilt before they are used in a query
+         */
+        private Duration maxAge = Duration.ofMinutes(15);
+        
+        /**
+         * Most sender and label bitmaps kept; the oldest are dropped first
+         */
+        private int maxSets = 10000;
+        
+        /**
+         * Time between two writes of changed bitmaps to the file
+         */
+        private Duration flushInterval = Duration.ofMinutes(1);
+    }
+}
@@ -4,6 +4,8 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -38,4 +40,391 @@ public class GmailConfig {
      * OAuth callback port for local authorization
      */
     private int oauthCallbackPort = 8888;
+    
+    /**
+     * HTTP transport settings for Gmail API calls
+     */
+    private Transport transport = new Transport();
+    
+    /**
+     * Background OAuth token refresh settings
+     */
+    private TokenRefresh tokenRefresh = new TokenRefresh();
+    
+    /**
+     * Client-side pacing of Gmail API quota usage
+     */
+    private Quota quota = new Quota();
+    
+    /**
+     * Retry settings for failed Gmail calls
+     */
+    private Retry retry = new Retry();
+    
+    /**
+     * Circuit breaker settings for Gmail calls
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    
+    /**
+     * Dedicated executor for Gmail scans
+     */
+    private Bulkhead bulkhead = new Bulkhead();
+    
+    /**
+     * Adaptive limit on concurrent Gmail calls
+     */
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+    
+    /**
+     * Parallel counting over date windows for large senders
+     */
+    private Partitioning partitioning = new Partitioning();
+    
+    /**
+     * Available HTTP transport implementations.
+     */
+    public enum TransportType {
+        /** JDK HttpURLConnection based transport */
+        NET,
+        /** Apache HttpClient based transport with a pooled connection manager */
+        APACHE
+    }
+    
+    /**
+     * Connection and pooling settings for the Gmail HTTP transport.
+     */
+    @Data
+    public static class Transport {
+        
+        /**
+         * Transport implementation to use
+         */
+        private TransportType type = TransportType.APACHE;
+        
+        /**
+         * Maximum pooled connections in total (apache only)
+         */
+        private int maxConnectionsTotal = 50;
+        
+        /**
+         * Maximum pooled connections per route (apache only)
+         */
+        private int maxConnectionsPerRoute = 20;
+        
+        /**
+         * Idle pooled connections are evicted after this time (apache only)
+         */
+        private Duration idleEviction = Duration.ofSeconds(60);
+        
+        /**
+         * Timeout for establishing a connection
+         */
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        
+        /**
+         * Timeout for reading a response
+         */
+        private Duration readTimeout = Duration.ofSeconds(20);
+        
+        /**
+         * Open a connection to the Gmail API at startup
+         */
+        private boolean prewarm = false;
+        
+        /**
+         * URL used to pre-warm the connection pool
+         */
+        private String prewarmUrl = "https://gmail.googleapis.com/";
+    }
+    
+    /**
+     * Settings for renewing OAuth access tokens ahead of expiry.
+     */
+    @Data
+    public static class TokenRefresh {
+        
+        /**
+         * Refresh tokens in the background instead of on request threads
+         */
+        private boolean enabled = true;
+        
+        /**
+         * How long before expiry the token is renewed
+         */
+        private Duration leadTime = Duration.ofMinutes(5);
+        
+        /**
+         * Maximum random delay subtracted from the refresh time
+         */
+        private Duration jitter = Duration.ofSeconds(60);
+        
+        /**
+         * Delay before retrying a failed refresh
+         */
+        private Duration retryDelay = Duration.ofSeconds(30);
+    }
+    
+    /**
+     * Client-side quota budget. Gmail charges every call a number of quota
+     * units and enforces a per-user units-per-second limit.
+     */
+    @Data
+    public static class Quota {
+        
+        /**
+         * Pace Gmail calls to stay within the budget
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Sustained quota units per second per account
+         */
+        private double unitsPerSecond = 250;
+        
+        /**
+         * Units that may be spent at once after an idle period
+         */
+        private double burst = 250;
+        
+        /**
+         * Quota cost of one messages.list call
+         */
+        private int listCost = 5;
+        
+        /**
+         * Quota cost of one history.list call
+         */
+        private int historyCost = 2;
+        
+        /**
+         * Quota cost of one messages.get call
+         */
+        private int messageCost = 5;
+        
+        /**
+         * Quota cost of one getProfile call
+         */
+        private int profileCost = 1;
+        
+        /**
+         * Calls that would have to wait longer than this for budget fail instead
+         */
+        private Duration maxWait = Duration.ofSeconds(30);
+        
+        /**
+         * Pause applied to the account's budget when Gmail reports a rate limit
+         */
+        private Duration throttlePause = Duration.ofSeconds(1);
+    }
+    
+    /**
+     * Page-level retries with exponential backoff and full jitter, limited by
+     * a retry budget shared by all requests.
+     */
+    @Data
+    public static class Retry {
+        
+        /**
+         * Retry transient Gmail failures
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum attempts per page, including the first one
+         */
+        private int maxAttempts = 5;
+        
+        /**
+         * Upper bound of the first backoff; doubled on every further attempt
+         */
+        private Duration initialBackoff = Duration.ofMillis(250);
+        
+        /**
+         * Upper bound of any single backoff; a longer Retry-After is not waited for
+         */
+        private Duration maxBackoff = Duration.ofSeconds(8);
+        
+        /**
+         * Retries earned per Gmail call, e.g. 0.1 allows one retry per ten calls
+         */
+        private double budgetRatio = 0.1;
+        
+        /**
+         * Retries always allowed per second, so low traffic can still retry
+         */
+        private double minRetriesPerSecond = 1;
+        
+        /**
+         * Maximum retries that can be saved up in the budget
+         */
+        private double budgetCapacity = 20;
+    }
+    
+    /**
+     * Circuit breaker that stops calling Gmail while it is failing or slow.
+     */
+    @Data
+    public static class CircuitBreaker {
+        
+        /**
+         * Guard Gmail calls with the circuit breaker
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Number of recent calls the failure and slow-call rates are computed over
+         */
+        private int windowSize = 20;
+        
+        /**
+         * Calls needed in the window before the breaker may open
+         */
+        private int minimumCalls = 10;
+        
+        /**
+         * Failure percentage at which the breaker opens
+         */
+        private int failureRateThreshold = 50;
+        
+        /**
+         * Slow-call percentage at which the breaker opens
+         */
+        private int slowCallRateThreshold = 80;
+        
+        /**
+         * Gmail requests (one page of a scan) taking longer than this count as slow
+         */
+        private Duration slowCallDuration = Duration.ofSeconds(15);
+        
+        /**
+         * How long the breaker stays open before trial calls are let through
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+        
+        /**
+         * Trial calls allowed while half-open
+         */
+        private int halfOpenCalls = 3;
+    }
+    
+    /**
+     * Bounded executor that runs Gmail scans off the request threads and sheds
+     * load once queued scans wait longer than the target delay.
+     */
+    @Data
+    public static class Bulkhead {
+        
+        /**
+         * Threads running Gmail scans
+         */
+        private int threads = 8;
+        
+        /**
+         * Scans that may wait for a thread
+         */
+        private int queueCapacity = 32;
+        
+        /**
+         * Acceptable time a scan waits in the queue
+         */
+        private Duration targetDelay = Duration.ofMillis(500);
+        
+        /**
+         * How long queue waits must stay above the target before new scans are shed
+         */
+        private Duration interval = Duration.ofSeconds(2);
+        
+        /**
+         * Retry-After suggested to clients whose scan was shed
+         */
+        private Duration retryAfter = Duration.ofSeconds(5);
+    }
+    
+    /**
+     * AIMD concurrency limit for outbound Gmail calls, driven by latency
+     * relative to a long-term baseline and by rate-limit responses.
+     */
+    @Data
+    public static class ConcurrencyLimit {
+        
+        /**
+         * Limit concurrent Gmail calls adaptively
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Limit before any latency has been measured
+         */
+        private int initialLimit = 8;
+        
+        /**
+         * Lowest limit the limiter backs off to
+         */
+        private int minLimit = 1;
+        
+        /**
+         * Highest limit the limiter grows to
+         */
+        private int maxLimit = 50;
+        
+        /**
+         * Latency above baseline times this factor counts as congestion
+         */
+        private double latencyTolerance = 2.0;
+        
+        /**
+         * Factor applied to the limit on congestion
+         */
+        private double latencyBackoffRatio = 0.9;
+        
+        /**
+         * Factor applied to the limit when Gmail rejects or fails a call
+         */
+        private double dropBackoffRatio = 0.5;
+        
+        /**
+         * Calls that wait longer than this for a slot are rejected
+         */
+        private Duration maxWait = Duration.ofSeconds(30);
+    }
+    
+    /**
+     * Splits an exact count into disjoint after:/before: windows that are
+     * scanned in parallel. Every page still goes through the quota budget and
+     * the concurrency limit.
+     */
+    @Data
+    public static class Partitioning {
+        
+        /**
+         * Count large senders over parallel date windows
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Windows scanned at the same time for one count
+         */
+        private int parallelism = 4;
+        
+        /**
+         * Where splitting starts; older messages are still counted in the first window
+         */
+        private Instant earliest = Instant.parse("2004-01-01T00:00:00Z");
+        
+        /**
+         * Pages a dense window is sized for when it is split
+         */
+        private int pagesPerWindow = 4;
+        
+        /**
+         * Most windows a single window is split into at once
+         */
+        private int maxSplit = 16;
+        
+        /**
+         * Windows this short are paginated instead of split further
+         */
+        private Duration minWindow = Duration.ofHours(1);
+    }
 }
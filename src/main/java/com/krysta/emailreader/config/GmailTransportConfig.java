@@ -0,0 +1,94 @@
+package com.krysta.emailreader.config;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the shared HTTP transport used for Gmail API calls.
+ */
+@Configuration
+public class GmailTransportConfig {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailTransportConfig.class);
+    
+    /**
+     * Builds the transport selected by gmail.transport.type.
+     * The Apache transport keeps connections alive in a bounded pool and
+     * publishes pool utilization as gmail.http.pool.* gauges.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public HttpTransport gmailHttpTransport(GmailConfig gmailConfig, MeterRegistry meterRegistry)
+            throws GeneralSecurityException, IOException {
+        GmailConfig.Transport settings = gmailConfig.getTransport();
+        
+        if (settings.getType() == GmailConfig.TransportType.NET) {
+            logger.info("Using JDK HTTP transport for Gmail API");
+            return GoogleNetHttpTransport.newTrustedTransport();
+        }
+        
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build());
+        connectionManager.setMaxTotal(settings.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+        // Re-check connections that sat idle before reuse instead of failing the request
+        connectionManager.setValidateAfterInactivity(2000);
+        
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) settings.getConnectTimeout().toMillis())
+                .setConnectionRequestTimeout((int) settings.getConnectTimeout().toMillis())
+                .setSocketTimeout((int) settings.getReadTimeout().toMillis())
+                .build();
+        
+        HttpClientBuilder clientBuilder = HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.getIdleEviction().toMillis(), TimeUnit.MILLISECONDS)
+                .disableRedirectHandling()
+                .disableAutomaticRetries();
+        
+        registerPoolMetrics(connectionManager, meterRegistry);
+        
+        logger.info("Using pooled Apache HTTP transport for Gmail API (max {} total, {} per route)",
+                settings.getMaxConnectionsTotal(), settings.getMaxConnectionsPerRoute());
+        return new ApacheHttpTransport(clientBuilder.build());
+    }
+    
+    private void registerPoolMetrics(PoolingHttpClientConnectionManager connectionManager,
+                                     MeterRegistry meterRegistry) {
+        Gauge.builder("gmail.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Gmail HTTP connections currently in use")
+                .register(meterRegistry);
+        Gauge.builder("gmail.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Idle Gmail HTTP connections kept alive in the pool")
+                .register(meterRegistry);
+        Gauge.builder("gmail.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .description("Requests waiting for a Gmail HTTP connection")
+                .register(meterRegistry);
+        Gauge.builder("gmail.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+                .description("Maximum Gmail HTTP connections in the pool")
+                .register(meterRegistry);
+    }
+}
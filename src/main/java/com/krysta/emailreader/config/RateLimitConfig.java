@@ -0,0 +1,31 @@
+package com.krysta.emailreader.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.krysta.emailreader.security.RateLimitFilter;
+import com.krysta.emailreader.service.AuditService;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Registers the rate limiting filter for the API endpoints.
+ */
+@Configuration
+public class RateLimitConfig {
+    
+    /**
+     * Runs ahead of the security filter chain so rejected requests do no further work.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(RateLimitProperties properties,
+                                                                   AuditService auditService,
+                                                                   ObjectMapper objectMapper) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(
+                new RateLimitFilter(properties, auditService, objectMapper));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        registration.setEnabled(properties.isEnabled());
+        return registration;
+    }
+}
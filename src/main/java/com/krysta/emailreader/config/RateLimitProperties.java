@@ -0,0 +1,43 @@
+package com.krysta.emailreader.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for per-client API rate limiting.
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    
+    /**
+     * Whether requests to /api/** are rate limited
+     */
+    private boolean enabled = true;
+    
+    /**
+     * Requests each client may make per minute
+     */
+    private long requestsPerMinute = 10;
+    
+    /**
+     * Maximum number of clients tracked at once; the least recently seen are dropped first
+     */
+    private long maxClients = 10_000;
+    
+    /**
+     * How long an idle client's bucket is kept before it is forgotten
+     */
+    private Duration idleExpiry = Duration.ofMinutes(10);
+    
+    /**
+     * Key clients by X-Forwarded-For / X-Real-IP instead of the remote address.
+     * Only enable behind a proxy that sets these headers, otherwise clients can
+     * pick their own key.
+     */
+    private boolean trustForwardedHeaders = false;
+}
@@ -4,30 +4,42 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.krysta.emailreader.config.GmailConfig;
 import com.krysta.emailreader.dto.EmailCountResponse;
 import com.krysta.emailreader.dto.ErrorResponse;
+import com.krysta.emailreader.dto.MessageSetCountResponse;
+import com.krysta.emailreader.exception.RequestTimeoutException;
 import com.krysta.emailreader.service.AuditService;
+import com.krysta.emailreader.service.AuthorizationFlowCache;
+import com.krysta.emailreader.service.CountQuery;
 import com.krysta.emailreader.service.CredentialsStorageService;
+import com.krysta.emailreader.service.EmailCountResult;
 import com.krysta.emailreader.service.EmailService;
+import com.krysta.emailreader.service.RequestDeadline;
 import com.krysta.emailreader.util.LogSanitizer;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -49,24 +61,34 @@ import jakarta.servlet.http.HttpServletRequest;
 public class EmailController {
     
     private static final Logger logger = LoggerFactory.getLogger(EmailController.class);
+    static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout-Ms";
     
     private final EmailService emailService;
     private final CacheManager cacheManager;
     private final AuditService auditService;
     private final CredentialsStorageService credentialsStorageService;
     private final GmailConfig gmailConfig;
+    private final AuthorizationFlowCache authorizationFlowCache;
+    
+    @Value("${request.timeout:30s}")
+    private Duration requestTimeout = Duration.ofSeconds(30);
+    
+    @Value("${request.max-timeout:120s}")
+    private Duration maxRequestTimeout = Duration.ofSeconds(120);
     
     public EmailController(
             EmailService emailService, 
             CacheManager cacheManager, 
             AuditService auditService,
             CredentialsStorageService credentialsStorageService,
-            GmailConfig gmailConfig) {
+            GmailConfig gmailConfig,
+            AuthorizationFlowCache authorizationFlowCache) {
         this.emailService = emailService;
         this.cacheManager = cacheManager;
         this.auditService = auditService;
         this.credentialsStorageService = credentialsStorageService;
         this.gmailConfig = gmailConfig;
+        this.authorizationFlowCache = authorizationFlowCache;
     }
     
     /**
@@ -79,7 +101,9 @@ public class EmailController {
     @Operation(
         summary = "Count emails from sender",
         description = "Returns the total number of emails received from a specific sender. " +
-                     "Results are cached for 5 minutes to reduce Gmail API calls."
+                     "Results are cached for 5 minutes to reduce Gmail API calls. " +
+                     "With mode=estimate Gmail's approximate count is returned from a single call; " +
+                     "mode=exists and atLeast=N stop paginating as soon as the answer is known."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -92,7 +116,7 @@ public class EmailController {
         ),
         @ApiResponse(
             responseCode = "400",
-            description = "Invalid email format",
+            description = "Invalid email format or count parameters",
             content = @Content(
                 mediaType = "application/json",
                 schema = @Schema(implementation = ErrorResponse.class)
@@ -114,6 +138,14 @@ public class EmailController {
                 schema = @Schema(implementation = ErrorResponse.class)
             )
         ),
+        @ApiResponse(
+            responseCode = "504",
+            description = "Request deadline exceeded",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ErrorResponse.class)
+            )
+        ),
         @ApiResponse(
             responseCode = "500",
             description = "Internal server error",
@@ -123,51 +155,176 @@ public class EmailController {
             )
         )
     })
-    public ResponseEntity<EmailCountResponse> countEmails(
+    public DeferredResult<ResponseEntity<EmailCountResponse>> countEmails(
             @Parameter(
                 description = "Email address of the sender to count emails from",
                 example = "superman@example.com",
                 required = true
             )
             @RequestParam String senderEmail,
+            @Parameter(
+                description = "exact (default) counts every message; estimate returns Gmail's approximate count " +
+                              "from a single call; exists and atLeast stop as soon as the answer is known",
+                example = "exact"
+            )
+            @RequestParam(required = false) String mode,
+            @Parameter(description = "Number of emails to look for; implies mode=atLeast", example = "1000")
+            @RequestParam(required = false) Long atLeast,
+            @Parameter(description = "Deadline for this request in milliseconds, capped by the server maximum")
+            @RequestHeader(value = REQUEST_TIMEOUT_HEADER, required = false) String requestTimeoutMs,
             HttpServletRequest request) {
         
         String clientIp = getClientIpAddress(request);
         logger.info("Received request to count emails from: {}", LogSanitizer.maskEmail(senderEmail));
         
-        // Check if result is in cache before calling service
-        boolean isCached = false;
-        if (cacheManager != null) {
-            var cache = cacheManager.getCache("emailCounts");
-            if (cache != null) {
-                isCached = cache.get(senderEmail) != null;
-            }
-        }
+        CountQuery query = CountQuery.fromParameters(mode, atLeast);
+        Duration timeout = resolveTimeout(requestTimeoutMs);
+        RequestDeadline deadline = RequestDeadline.after(timeout);
         
-        // Log cache operation
-        if (auditService != null) {
-            auditService.logCacheOperation("GET", senderEmail, isCached);
-        }
+        DeferredResult<ResponseEntity<EmailCountResponse>> deferred = new DeferredResult<>(timeout.toMillis());
+        deferred.onTimeout(() -> deferred.setErrorResult(new RequestTimeoutException("Request deadline exceeded")));
+        // Timeout, client disconnect or normal completion: stop waiting for the scan
+        deferred.onCompletion(deadline::cancel);
         
-        // Get email count (will use cache if available)
-        long count = emailService.getEmailCount(senderEmail);
+        // Get email count and its cache status from a single lookup
+        emailService.getEmailCountResultAsync(senderEmail, query, deadline).whenComplete((result, error) -> {
+            if (error != null) {
+                deferred.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+                return;
+            }
+            long count = result.count();
+            boolean isCached = result.cached();
+            
+            // Log cache operation
+            if (auditService != null) {
+                auditService.logCacheOperation("GET", result.sender(), isCached);
+            }
+            
+            // Audit log successful API access
+            if (auditService != null) {
+                auditService.logApiAccess("/api/v1/emails/count", clientIp, result.sender());
+            }
+            
+            // Build response
+            EmailCountResponse response = EmailCountResponse.builder()
+                    .senderEmail(senderEmail)
+                    .emailCount(count)
+                    .cachedResult(isCached)
+                    .ageSeconds(result.age().toSeconds())
+                    .remainingTtlSeconds(result.remainingTtl().toSeconds())
+                    .stale(result.stale())
+                    .exact(result.exact())
+                    .thresholdMet(query.stopsEarly() ? count >= query.threshold() : null)
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            
+            logger.info("Returning count for {}: {} (cached: {})", LogSanitizer.maskEmail(senderEmail), count, isCached);
+            
+            deferred.setResult(ResponseEntity.ok(response));
+        });
         
-        // Audit log successful API access
-        if (auditService != null) {
-            auditService.logApiAccess("/api/v1/emails/count", clientIp, senderEmail);
-        }
+        return deferred;
+    }
+    
+    /**
+     * Count emails from any of several senders, optionally leaving out labels.
+     * 
+     * @param senderEmail   The email addresses of the senders
+     * @param excludedLabel Label ids whose emails are not counted
+     * @return MessageSetCountResponse with the count
+     */
+    @GetMapping("/count/set")
+    @Operation(
+        summary = "Count emails across senders",
+        description = "Returns the number of emails from any of the given senders that carry none of the " +
+                     "excluded labels. Answered from local message bitmaps; senders and labels without a " +
+                     "recent bitmap are scanned in Gmail first. Requires MESSAGE_BITMAPS=true."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Successfully counted emails",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = MessageSetCountResponse.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Invalid email, label or disabled bitmaps",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ErrorResponse.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "504",
+            description = "Request deadline exceeded",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ErrorResponse.class)
+            )
+        )
+    })
+    public DeferredResult<ResponseEntity<MessageSetCountResponse>> countEmailSet(
+            @Parameter(description = "Email addresses of the senders", required = true)
+            @RequestParam List<String> senderEmail,
+            @Parameter(description = "Label ids whose emails are not counted, e.g. CATEGORY_PROMOTIONS")
+            @RequestParam(required = false) List<String> excludedLabel,
+            @Parameter(description = "Deadline for this request in milliseconds, capped by the server maximum")
+            @RequestHeader(value = REQUEST_TIMEOUT_HEADER, required = false) String requestTimeoutMs,
+            HttpServletRequest request) {
         
-        // Build response
-        EmailCountResponse response = EmailCountResponse.builder()
-                .senderEmail(senderEmail)
-                .emailCount(count)
-                .cachedResult(isCached)
-                .timestamp(LocalDateTime.now())
-                .build();
+        String clientIp = getClientIpAddress(request);
+        logger.info("Received request to count emails across {} senders", senderEmail.size());
+        Duration timeout = resolveTimeout(requestTimeoutMs);
+        RequestDeadline deadline = RequestDeadline.after(timeout);
+        List<String> labels = excludedLabel != null ? excludedLabel : List.of();
         
-        logger.info("Returning count for {}: {} (cached: {})", LogSanitizer.maskEmail(senderEmail), count, isCached);
+        DeferredResult<ResponseEntity<MessageSetCountResponse>> deferred = new DeferredResult<>(timeout.toMillis());
+        deferred.onTimeout(() -> deferred.setErrorResult(new RequestTimeoutException("Request deadline exceeded")));
+        // Timeout, client disconnect or normal completion: stop waiting for the scans
+        deferred.onCompletion(deadline::cancel);
         
-        return ResponseEntity.ok(response);
+        emailService.countMessageSetAsync(senderEmail, labels, deadline).whenComplete((result, error) -> {
+            if (error != null) {
+                deferred.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+                return;
+            }
+            if (auditService != null) {
+                senderEmail.forEach(email -> auditService.logApiAccess("/api/v1/emails/count/set", clientIp, email));
+            }
+            
+            MessageSetCountResponse response = MessageSetCountResponse.builder()
+                    .senderEmails(senderEmail)
+                    .excludedLabels(labels)
+                    .emailCount(result.count())
+                    .gmailScans(result.scanned())
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            deferred.setResult(ResponseEntity.ok(response));
+        });
+        
+        return deferred;
+    }
+    
+    /**
+     * Uses the client's requested timeout when it is a positive number of
+     * milliseconds, never more than the configured maximum.
+     */
+    private Duration resolveTimeout(String requestTimeoutMs) {
+        Duration timeout = requestTimeout;
+        if (requestTimeoutMs != null && !requestTimeoutMs.isBlank()) {
+            try {
+                long millis = Long.parseLong(requestTimeoutMs.trim());
+                if (millis > 0) {
+                    timeout = Duration.ofMillis(millis);
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring invalid {} header", REQUEST_TIMEOUT_HEADER);
+            }
+        }
+        return timeout.compareTo(maxRequestTimeout) > 0 ? maxRequestTimeout : timeout;
     }
     
     /**
@@ -245,8 +402,9 @@ public class EmailController {
                 throw new IllegalArgumentException("Credentials file is empty");
             }
             
-            // Store credentials
+            // Store credentials and drop the flow parsed from the previous ones
             credentialsStorageService.storeCredentials(credentialsJson);
+            authorizationFlowCache.invalidate();
             
             // Invalidate cache when new credentials are uploaded
             // This ensures fresh data is fetched with the new credentials
@@ -257,6 +415,7 @@ public class EmailController {
                     logger.info("Cache invalidated after credentials update");
                 }
             }
+            emailService.clearPersistedCounts();
             
             Map<String, String> response = new HashMap<>();
             response.put("status", "success");
@@ -329,6 +488,9 @@ public class EmailController {
         // Delete OAuth token files
         deleteTokenFiles();
         
+        // Drop the cached flow, which still holds the deleted encryption key
+        authorizationFlowCache.invalidate();
+        
         // Invalidate cache when credentials are deleted
         // This ensures cached data doesn't persist with old credentials
         if (cacheManager != null) {
@@ -338,6 +500,7 @@ public class EmailController {
                 logger.info("Cache invalidated after credentials deletion");
             }
         }
+        emailService.clearPersistedCounts();
         
         Map<String, String> response = new HashMap<>();
         response.put("status", "success");
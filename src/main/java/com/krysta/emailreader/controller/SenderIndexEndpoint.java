@@ -0,0 +1,59 @@
+package com.krysta.emailreader.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.krysta.emailreader.service.SenderIndex;
+import com.krysta.emailreader.service.SenderIndexSyncService;
+
+/**
+ * Actuator endpoint ({@code /actuator/senderindex}) reporting how far the
+ * sender index sync has got and how current the index is.
+ */
+@Component
+@Endpoint(id = "senderindex")
+public class SenderIndexEndpoint {
+    
+    private final SenderIndex senderIndex;
+    private final SenderIndexSyncService syncService;
+    
+    public SenderIndexEndpoint(SenderIndex senderIndex, SenderIndexSyncService syncService) {
+        this.senderIndex = senderIndex;
+        this.syncService = syncService;
+    }
+    
+    @ReadOperation
+    public Map<String, Object> senderIndex() {
+        SenderIndex.Status status = senderIndex.status();
+        SenderIndexSyncService.Progress progress = syncService.progress();
+        
+        Map<String, Object> index = new LinkedHashMap<>();
+        index.put("ready", status.ready());
+        index.put("serving", status.serving());
+        index.put("senders", status.senders());
+        index.put("messages", status.messages());
+        index.put("historyId", status.historyId() != null ? status.historyId().toString() : null);
+        index.put("builtAt", status.builtAt() != null ? status.builtAt().toString() : null);
+        index.put("updatedAt", status.updatedAt() != null ? status.updatedAt().toString() : null);
+        index.put("ageSeconds", senderIndex.ageMillis() >= 0 ? senderIndex.ageMillis() / 1000 : null);
+        
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("running", progress.running());
+        sync.put("messagesListed", progress.messagesListed());
+        sync.put("messagesIndexed", progress.messagesIndexed());
+        sync.put("messagesFailed", progress.messagesFailed());
+        sync.put("changesUnattributed", progress.changesUnattributed());
+        sync.put("startedAt", progress.startedAt() != null ? progress.startedAt().toString() : null);
+        sync.put("finishedAt", progress.finishedAt() != null ? progress.finishedAt().toString() : null);
+        sync.put("lastError", progress.lastError());
+        
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("index", index);
+        body.put("sync", sync);
+        return body;
+    }
+}
@@ -0,0 +1,24 @@
+package com.krysta.emailreader.dto;
+
+import com.krysta.emailreader.util.LogSanitizer;
+
+/**
+ * Validated sender email address, parsed once.
+ * The canonical form is used as the cache key and in Gmail queries so that
+ * equivalent spellings of one address share a single count.
+ * 
+ * @param address   The trimmed address as provided by the caller
+ * @param localPart Part before the '@'
+ * @param domain    Part after the '@'
+ * @param canonical Normalized address according to the configured rules
+ */
+public record EmailAddress(String address, String localPart, String domain, String canonical) {
+    
+    /**
+     * Masked form, so the address never ends up in logs by accident.
+     */
+    @Override
+    public String toString() {
+        return LogSanitizer.maskEmail(this);
+    }
+}
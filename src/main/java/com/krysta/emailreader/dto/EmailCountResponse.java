@@ -1,5 +1,6 @@
 package com.krysta.emailreader.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
@@ -31,6 +32,27 @@ public class EmailCountResponse {
     @Schema(description = "Indicates if the result was retrieved from cache", example = "false")
     private boolean cachedResult;
     
+    @JsonProperty("ageSeconds")
+    @Schema(description = "Seconds since the count was fetched from Gmail", example = "42")
+    private long ageSeconds;
+    
+    @JsonProperty("remainingTtlSeconds")
+    @Schema(description = "Seconds until the cached count expires", example = "258")
+    private long remainingTtlSeconds;
+    
+    @JsonProperty("stale")
+    @Schema(description = "Indicates the count is older than the cache freshness window and is being refreshed", example = "false")
+    private boolean stale;
+    
+    @JsonProperty("exact")
+    @Schema(description = "True for an exact count; false for Gmail's approximate estimate or a count capped at the atLeast threshold", example = "true")
+    private boolean exact;
+    
+    @JsonProperty("thresholdMet")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "For mode=exists and atLeast: whether at least that many emails exist", example = "true")
+    private Boolean thresholdMet;
+    
     @JsonProperty("timestamp")
     @Schema(description = "Timestamp when the response was generated")
     private LocalDateTime timestamp;
@@ -0,0 +1,42 @@
+package com.krysta.emailreader.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Response DTO for counts across several senders and labels.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Response containing the count of emails from any of several senders")
+public class MessageSetCountResponse {
+    
+    @JsonProperty("senderEmails")
+    @Schema(description = "Email addresses of the senders", example = "[\"superman@example.com\", \"batman@example.com\"]")
+    private List<String> senderEmails;
+    
+    @JsonProperty("excludedLabels")
+    @Schema(description = "Label ids whose emails are not counted", example = "[\"CATEGORY_PROMOTIONS\"]")
+    private List<String> excludedLabels;
+    
+    @JsonProperty("emailCount")
+    @Schema(description = "Number of emails from any of the senders without any of the excluded labels", example = "25")
+    private long emailCount;
+    
+    @JsonProperty("gmailScans")
+    @Schema(description = "Senders and labels that had to be scanned in Gmail; 0 when answered from local bitmaps", example = "0")
+    private int gmailScans;
+    
+    @JsonProperty("timestamp")
+    @Schema(description = "Timestamp when the response was generated")
+    private LocalDateTime timestamp;
+}
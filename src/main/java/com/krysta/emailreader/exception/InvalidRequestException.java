@@ -0,0 +1,11 @@
+package com.krysta.emailreader.exception;
+
+/**
+ * Exception thrown when a request parameter other than the email address is invalid.
+ */
+public class InvalidRequestException extends RuntimeException {
+    
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.krysta.emailreader.exception;
+
+/**
+ * Exception thrown when a request runs past its deadline.
+ */
+public class RequestTimeoutException extends RuntimeException {
+    
+    public RequestTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.krysta.emailreader.exception;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a request is rejected to protect the service or Gmail
+ * and can be retried later.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    
+    private final Duration retryAfter;
+    
+    public ServiceUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+    
+    /**
+     * Suggested wait before the client retries.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
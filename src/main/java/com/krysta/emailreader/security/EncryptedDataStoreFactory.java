@@ -42,7 +42,7 @@ public class EncryptedDataStoreFactory extends AbstractDataStoreFactory {
         }
         
         // Load or generate encryption key
-        this.encryptionKey = loadOrGenerateKey();
+        this.encryptionKey = loadOrGenerateKey(dataDirectory);
         logger.info("Initialized encrypted data store at: {}", dataDirectory.getAbsolutePath());
     }
     
@@ -53,8 +53,10 @@ public class EncryptedDataStoreFactory extends AbstractDataStoreFactory {
     
     /**
      * Load existing encryption key or generate a new one.
+     * Shared with other stores that keep user data next to the tokens, so
+     * concurrent callers must not generate competing keys.
      */
-    private SecretKey loadOrGenerateKey() throws IOException {
+    public static synchronized SecretKey loadOrGenerateKey(File dataDirectory) throws IOException {
         Path keyPath = Paths.get(dataDirectory.getAbsolutePath(), ".keystore");
         
         if (Files.exists(keyPath)) {
@@ -95,7 +97,7 @@ public class EncryptedDataStoreFactory extends AbstractDataStoreFactory {
     /**
      * Encrypt data using AES-256-GCM.
      */
-    static byte[] encrypt(byte[] data, SecretKey key) throws Exception {
+    public static byte[] encrypt(byte[] data, SecretKey key) throws Exception {
         Cipher cipher = Cipher.getInstance(TRANSFORMATION);
         
         // Generate random IV
@@ -118,7 +120,7 @@ public class EncryptedDataStoreFactory extends AbstractDataStoreFactory {
     /**
      * Decrypt data using AES-256-GCM.
      */
-    static byte[] decrypt(byte[] encryptedData, SecretKey key) throws Exception {
+    public static byte[] decrypt(byte[] encryptedData, SecretKey key) throws Exception {
         Cipher cipher = Cipher.getInstance(TRANSFORMATION);
         
         // Extract IV from encrypted data
@@ -0,0 +1,122 @@
+package com.krysta.emailreader.security;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.krysta.emailreader.config.RateLimitProperties;
+import com.krysta.emailreader.dto.ErrorResponse;
+import com.krysta.emailreader.service.AuditService;
+import com.krysta.emailreader.util.LogSanitizer;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Per-client token bucket rate limiting for the API.
+ * Buckets are held in a bounded cache that forgets idle clients, so memory
+ * does not grow with the number of distinct addresses seen.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+    
+    static final String REMAINING_HEADER = "X-Rate-Limit-Remaining";
+    
+    private final RateLimitProperties properties;
+    private final AuditService auditService;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Bucket> buckets;
+    
+    public RateLimitFilter(RateLimitProperties properties, AuditService auditService, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.auditService = auditService;
+        this.objectMapper = objectMapper;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .expireAfterAccess(properties.getIdleExpiry())
+                .build();
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String clientIp = resolveClientIp(request);
+        Bucket bucket = buckets.get(clientIp, key -> newBucket());
+        ConsumptionProbe probe = bucket.tryConsumeAndReturnRemaining(1);
+        
+        if (probe.isConsumed()) {
+            response.setHeader(REMAINING_HEADER, String.valueOf(probe.getRemainingTokens()));
+            chain.doFilter(request, response);
+            return;
+        }
+        
+        // Round up so clients never retry before a token is available
+        long retryAfterSeconds = Math.max(1,
+                TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill() + TimeUnit.SECONDS.toNanos(1) - 1));
+        logger.warn("Rate limit exceeded for {} on {}", LogSanitizer.maskIpAddress(clientIp), request.getRequestURI());
+        auditService.logRateLimitViolation(clientIp, request.getRequestURI());
+        
+        ErrorResponse errorResponse = ErrorResponse.builder()
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .message("Rate limit exceeded. Please retry later.")
+                .timestamp(LocalDateTime.now())
+                .path(request.getRequestURI())
+                .build();
+        
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setHeader(REMAINING_HEADER, "0");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+    
+    /**
+     * CORS preflight requests are not counted against the client.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return "OPTIONS".equalsIgnoreCase(request.getMethod());
+    }
+    
+    private Bucket newBucket() {
+        long capacity = properties.getRequestsPerMinute();
+        return Bucket.builder()
+                .addLimit(Bandwidth.builder()
+                        .capacity(capacity)
+                        .refillGreedy(capacity, Duration.ofMinutes(1))
+                        .build())
+                .build();
+    }
+    
+    private String resolveClientIp(HttpServletRequest request) {
+        if (properties.isTrustForwardedHeaders()) {
+            String xForwardedFor = request.getHeader("X-Forwarded-For");
+            if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
+                return xForwardedFor.split(",")[0].trim();
+            }
+            
+            String xRealIp = request.getHeader("X-Real-IP");
+            if (xRealIp != null && !xRealIp.isEmpty()) {
+                return xRealIp;
+            }
+        }
+        
+        return request.getRemoteAddr();
+    }
+}
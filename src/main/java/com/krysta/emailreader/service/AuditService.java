@@ -1,5 +1,6 @@
 package com.krysta.emailreader.service;
 
+import com.krysta.emailreader.dto.EmailAddress;
 import com.krysta.emailreader.util.LogSanitizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,13 @@ public class AuditService {
         );
     }
     
+    /**
+     * Log successful API access for an already validated sender address.
+     */
+    public void logApiAccess(String endpoint, String ipAddress, EmailAddress email) {
+        logApiAccess(endpoint, ipAddress, email.canonical());
+    }
+    
     /**
      * Log failed authentication attempt.
      */
@@ -108,4 +116,11 @@ public class AuditService {
             hit
         );
     }
+    
+    /**
+     * Log cache operations for an already validated sender address.
+     */
+    public void logCacheOperation(String operation, EmailAddress email, boolean hit) {
+        logCacheOperation(operation, email.canonical(), hit);
+    }
 }
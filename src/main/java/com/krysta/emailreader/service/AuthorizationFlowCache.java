@@ -0,0 +1,146 @@
+package com.krysta.emailreader.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.security.EncryptedDataStoreFactory;
+
+/**
+ * Caches the parsed client secrets, the encrypted token data store factory and
+ * the authorization code flow built from them. Entries are keyed by a
+ * fingerprint of the active credentials and dropped only when credentials are
+ * uploaded or cleared.
+ */
+@Component
+public class AuthorizationFlowCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AuthorizationFlowCache.class);
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    
+    private final GmailConfig gmailConfig;
+    private final CredentialsStorageService credentialsStorageService;
+    private final HttpTransport httpTransport;
+    private final Object buildLock = new Object();
+    
+    private volatile CachedFlow current;
+    
+    /**
+     * A flow together with the fingerprint of the credentials it was built from.
+     */
+    private record CachedFlow(String fingerprint, GoogleAuthorizationCodeFlow flow) {
+    }
+    
+    public AuthorizationFlowCache(GmailConfig gmailConfig,
+                                  CredentialsStorageService credentialsStorageService,
+                                  HttpTransport httpTransport) {
+        this.gmailConfig = gmailConfig;
+        this.credentialsStorageService = credentialsStorageService;
+        this.httpTransport = httpTransport;
+    }
+    
+    /**
+     * Returns the authorization flow for the active credentials, building it on
+     * first use or when the credentials fingerprint no longer matches.
+     */
+    public GoogleAuthorizationCodeFlow getFlow() throws IOException {
+        String credentialsJson = credentialsStorageService.getCredentials();
+        String fingerprint = fingerprint(credentialsJson);
+        
+        CachedFlow cached = current;
+        if (cached != null && cached.fingerprint().equals(fingerprint)) {
+            return cached.flow();
+        }
+        
+        synchronized (buildLock) {
+            cached = current;
+            if (cached != null && cached.fingerprint().equals(fingerprint)) {
+                return cached.flow();
+            }
+            cached = build(fingerprint, credentialsJson);
+            current = cached;
+            return cached.flow();
+        }
+    }
+    
+    /**
+     * Drops the cached flow. Called when credentials are uploaded or cleared.
+     */
+    public void invalidate() {
+        synchronized (buildLock) {
+            current = null;
+        }
+        logger.info("Authorization flow cache invalidated");
+    }
+    
+    private CachedFlow build(String fingerprint, String credentialsJson) throws IOException {
+        GoogleClientSecrets clientSecrets = loadClientSecrets(credentialsJson);
+        
+        File tokensDir = new File(gmailConfig.getTokensDirectory());
+        if (!tokensDir.exists()) {
+            tokensDir.mkdirs();
+        }
+        EncryptedDataStoreFactory dataStoreFactory = new EncryptedDataStoreFactory(tokensDir);
+        
+        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
+                httpTransport, JSON_FACTORY, clientSecrets, gmailConfig.getScopes())
+                .setDataStoreFactory(dataStoreFactory)
+                .setAccessType("offline")
+                .build();
+        
+        logger.info("Built authorization flow");
+        return new CachedFlow(fingerprint, flow);
+    }
+    
+    /**
+     * Loads client secrets from storage or file.
+     */
+    private GoogleClientSecrets loadClientSecrets(String credentialsJson) throws IOException {
+        if (credentialsJson != null && !credentialsJson.isEmpty()) {
+            logger.info("Using credentials from in-memory storage");
+            return GoogleClientSecrets.load(JSON_FACTORY, new StringReader(credentialsJson));
+        }
+        
+        logger.info("Using credentials from file: {}", gmailConfig.getCredentialsFile());
+        try (InputStream in = AuthorizationFlowCache.class.getResourceAsStream(gmailConfig.getCredentialsFile())) {
+            if (in == null) {
+                throw new GmailApiException(
+                    "Credentials not found. Please provide credentials via /api/v1/emails/credentials endpoint " +
+                    "or ensure credentials.json file exists at: " + gmailConfig.getCredentialsFile());
+            }
+            return GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+    
+    /**
+     * Identifies the active credentials without parsing them.
+     */
+    private String fingerprint(String credentialsJson) {
+        if (credentialsJson == null || credentialsJson.isEmpty()) {
+            return "file:" + gmailConfig.getCredentialsFile();
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return "memory:" + HexFormat.of().formatHex(digest.digest(credentialsJson.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.krysta.emailreader.service;
+
+/**
+ * Email count as stored in the emailCounts cache, with the time it was loaded.
+ */
+public record CachedCount(long count, long loadedAtMillis) {
+    
+    public static CachedCount loadedNow(long count) {
+        return new CachedCount(count, System.currentTimeMillis());
+    }
+    
+    public long ageMillis() {
+        return Math.max(0, System.currentTimeMillis() - loadedAtMillis);
+    }
+}
@@ -0,0 +1,37 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.exception.InvalidRequestException;
+
+/**
+ * How precisely an email count request should be answered.
+ */
+public enum CountMode {
+    
+    /** Walk every page of results and count the messages */
+    EXACT,
+    
+    /** Return Gmail's resultSizeEstimate from a single page */
+    ESTIMATE,
+    
+    /** Stop at the first message found */
+    EXISTS,
+    
+    /** Stop once the requested number of messages has been found */
+    AT_LEAST;
+    
+    /**
+     * Parses the {@code mode} request parameter, ignoring case, dashes and
+     * underscores (so {@code atLeast} and {@code at_least} both work).
+     * 
+     * @throws InvalidRequestException if the value is not a known mode
+     */
+    public static CountMode fromParameter(String value) {
+        String normalized = value.trim().replace("-", "").replace("_", "");
+        for (CountMode mode : values()) {
+            if (mode.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return mode;
+            }
+        }
+        throw new InvalidRequestException("Unsupported count mode: " + value);
+    }
+}
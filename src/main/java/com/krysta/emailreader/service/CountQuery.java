@@ -0,0 +1,62 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.exception.InvalidRequestException;
+
+/**
+ * What an email count request asks for: a count mode and, for the modes that
+ * stop paginating early, the number of messages after which the answer is known.
+ * 
+ * @param mode      How the count is computed
+ * @param threshold Messages to find before stopping; 0 when the mode does not stop early
+ */
+public record CountQuery(CountMode mode, long threshold) {
+    
+    public static final CountQuery EXACT = new CountQuery(CountMode.EXACT, 0);
+    public static final CountQuery ESTIMATE = new CountQuery(CountMode.ESTIMATE, 0);
+    public static final CountQuery EXISTS = new CountQuery(CountMode.EXISTS, 1);
+    
+    /**
+     * A query that stops once {@code threshold} messages have been found.
+     * 
+     * @throws InvalidRequestException if the threshold is not positive
+     */
+    public static CountQuery atLeast(long threshold) {
+        if (threshold < 1) {
+            throw new InvalidRequestException("atLeast must be a positive number");
+        }
+        return new CountQuery(CountMode.AT_LEAST, threshold);
+    }
+    
+    /**
+     * Builds the query from the {@code mode} and {@code atLeast} request
+     * parameters. {@code atLeast} on its own implies the at-least mode.
+     * 
+     * @throws InvalidRequestException if the parameters are unknown or do not fit together
+     */
+    public static CountQuery fromParameters(String mode, Long atLeast) {
+        CountMode countMode = mode == null || mode.isBlank()
+                ? (atLeast != null ? CountMode.AT_LEAST : CountMode.EXACT)
+                : CountMode.fromParameter(mode);
+        if (countMode == CountMode.AT_LEAST) {
+            if (atLeast == null) {
+                throw new InvalidRequestException("mode=atLeast requires the atLeast parameter");
+            }
+            return atLeast(atLeast);
+        }
+        if (atLeast != null) {
+            throw new InvalidRequestException("atLeast only applies to mode=atLeast");
+        }
+        return switch (countMode) {
+            case ESTIMATE -> ESTIMATE;
+            case EXISTS -> EXISTS;
+            default -> EXACT;
+        };
+    }
+    
+    /**
+     * Whether pagination stops as soon as the threshold is reached.
+     */
+    public boolean stopsEarly() {
+        return threshold > 0;
+    }
+}
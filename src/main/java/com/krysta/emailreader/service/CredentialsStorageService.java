@@ -3,6 +3,7 @@ package com.krysta.emailreader.service;
 import java.io.StringReader;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,9 @@ public class CredentialsStorageService {
     // Default key for single-user scenarios
     private static final String DEFAULT_KEY = "default";
     
+    // Incremented on every change so dependent clients know when to rebuild
+    private final AtomicLong version = new AtomicLong();
+    
     /**
      * Store credentials JSON for a given API key.
      * 
@@ -46,6 +50,7 @@ public class CredentialsStorageService {
             GoogleClientSecrets.load(JSON_FACTORY, new StringReader(credentialsJson));
             logger.info("Storing credentials for API key: {}", maskApiKey(apiKey));
             credentialsStore.put(apiKey, credentialsJson);
+            version.incrementAndGet();
         } catch (Exception e) {
             logger.error("Invalid credentials JSON format", e);
             throw new GmailApiException("Invalid credentials JSON format: " + e.getMessage());
@@ -98,6 +103,7 @@ public class CredentialsStorageService {
     public void removeCredentials(String apiKey) {
         logger.info("Removing credentials for API key: {}", maskApiKey(apiKey));
         credentialsStore.remove(apiKey);
+        version.incrementAndGet();
     }
     
     /**
@@ -106,6 +112,17 @@ public class CredentialsStorageService {
     public void clearAll() {
         logger.info("Clearing all stored credentials");
         credentialsStore.clear();
+        version.incrementAndGet();
+    }
+    
+    /**
+     * Current credentials version. Changes whenever credentials are stored,
+     * removed or cleared.
+     * 
+     * @return Monotonically increasing version number
+     */
+    public long getVersion() {
+        return version.get();
     }
     
     private String maskApiKey(String apiKey) {
@@ -0,0 +1,26 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.dto.EmailAddress;
+
+import java.time.Duration;
+
+/**
+ * Email count returned by {@link EmailService} together with cache metadata,
+ * all taken from the same cache lookup.
+ * 
+ * @param sender       The validated sender address the count belongs to
+ * @param count        Number of emails from the sender
+ * @param cached       Whether the count was served from cache without a Gmail scan
+ * @param age          How long ago the count was fetched from Gmail
+ * @param remainingTtl Time until the cache entry expires
+ * @param stale        Whether the count is past its freshness window and being refreshed
+ * @param exact        Whether the count is exact rather than Gmail's estimate
+ */
+public record EmailCountResult(EmailAddress sender,
+                               long count,
+                               boolean cached,
+                               Duration age,
+                               Duration remainingTtl,
+                               boolean stale,
+                               boolean exact) {
+}
@@ -1,13 +1,48 @@
 package com.krysta.emailreader.service;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.dto.EmailAddress;
+import com.krysta.emailreader.exception.GmailApiException;
 import com.krysta.emailreader.exception.InvalidEmailException;
+import com.krysta.emailreader.exception.InvalidRequestException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
 import com.krysta.emailreader.util.LogSanitizer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.Cacheable;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
 /**
  * Service class for email operations with caching support.
  * Provides business logic and validation for email counting.
@@ -18,15 +53,117 @@ public class EmailService {
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
     private static final int MAX_EMAIL_LENGTH = 254; // RFC 5321
     private static final EmailValidator EMAIL_VALIDATOR = EmailValidator.getInstance(false);
+    private static final Pattern IP_DOMAIN = Pattern.compile("^\\[?\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\]?$");
+    private static final Pattern LABEL_ID = Pattern.compile("^[A-Za-z0-9_-]{1,100}$");
+    private static final int MAX_SET_TERMS = 20;
     
     private final GmailService gmailService;
+    private final AsyncCache<String, CachedCount> emailCountsCache;
+    private final EmailCacheProperties cacheProperties;
+    private final PersistentCountStore persistentCountStore;
+    private final GmailCircuitBreaker circuitBreaker;
+    private final GmailBulkhead gmailBulkhead;
+    private final SenderIndex senderIndex;
+    private final MessageBitmapIndex messageBitmaps;
+    private final Cache<String, CachedCount> lastKnownCounts;
+    private final AsyncCache<String, CachedCount> queryCounts;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final Map<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final Map<String, SharedScan> inFlightScans = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<MessageBitmapIndex.MessageSet>> setScans = new ConcurrentHashMap<>();
+    private final Map<String, HistoryBaseline> historyBaselines = new ConcurrentHashMap<>();
+    private final Counter coalescedCounter;
+    private final Counter staleServedCounter;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter fallbackCounter;
+    
+    /**
+     * Deadline of an in-flight scan shared by the requests waiting for it.
+     */
+    private static final class SharedScan {
+        private final RequestDeadline deadline = RequestDeadline.after(Duration.ZERO);
+        private final AtomicInteger waiters = new AtomicInteger();
+        
+        private void attach(RequestDeadline request) {
+            waiters.incrementAndGet();
+            deadline.extendTo(request);
+            request.onCancel(() -> {
+                if (waiters.decrementAndGet() == 0) {
+                    deadline.cancel();
+                }
+            });
+        }
+    }
     
-    public EmailService(GmailService gmailService) {
+    /**
+     * Where the mailbox history of a cached exact count starts.
+     * 
+     * @param sender          The sender the count is for
+     * @param historyId       Mailbox history id the count is current as of
+     * @param count           The count at that history id
+     * @param scannedAtMillis When the count was last taken by a full scan
+     */
+    public record HistoryBaseline(EmailAddress sender, BigInteger historyId, long count, long scannedAtMillis) {
+    }
+    
+    /**
+     * Result of a count across senders and labels.
+     * 
+     * @param count   Messages from any of the senders that carry none of the excluded labels
+     * @param scanned Senders and labels that had to be scanned in Gmail; 0 if answered locally
+     */
+    public record MessageSetCount(long count, int scanned) {
+    }
+    
+    public EmailService(GmailService gmailService,
+                        AsyncCache<String, CachedCount> emailCountsCache,
+                        EmailCacheProperties cacheProperties,
+                        PersistentCountStore persistentCountStore,
+                        GmailCircuitBreaker circuitBreaker,
+                        GmailBulkhead gmailBulkhead,
+                        SenderIndex senderIndex,
+                        MessageBitmapIndex messageBitmaps,
+                        MeterRegistry meterRegistry) {
         this.gmailService = gmailService;
+        this.emailCountsCache = emailCountsCache;
+        this.cacheProperties = cacheProperties;
+        this.persistentCountStore = persistentCountStore;
+        this.circuitBreaker = circuitBreaker;
+        this.gmailBulkhead = gmailBulkhead;
+        this.senderIndex = senderIndex;
+        this.messageBitmaps = messageBitmaps;
+        // Outlives cache expiry so there is something to serve while Gmail is unavailable
+        this.lastKnownCounts = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .build();
+        this.queryCounts = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getMaximumSize())
+                .expireAfterWrite(cacheProperties.getExpireAfterWrite())
+                .buildAsync();
+        this.refreshExecutor = createRefreshExecutor(cacheProperties.getRefreshAhead());
+        this.coalescedCounter = Counter.builder("email.count.coalesced")
+                .description("Count requests that joined an in-flight Gmail scan for the same sender")
+                .register(meterRegistry);
+        this.staleServedCounter = Counter.builder("email.count.stale.served")
+                .description("Stale counts served while a background refresh was triggered")
+                .register(meterRegistry);
+        this.cacheHitCounter = Counter.builder("email.count.cache.lookups")
+                .tag("result", "hit")
+                .description("Email count lookups by cache outcome")
+                .register(meterRegistry);
+        this.cacheMissCounter = Counter.builder("email.count.cache.lookups")
+                .tag("result", "miss")
+                .description("Email count lookups by cache outcome")
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("email.count.fallback")
+                .description("Last known counts served because Gmail could not be asked")
+                .register(meterRegistry);
     }
     
     /**
-     * Validates email format using Apache Commons Validator.
+     * Validates email format using Apache Commons Validator and parses it once
+     * into an {@link EmailAddress}.
      * Implements comprehensive validation including:
      * - RFC 5321 compliance
      * - Length checks
@@ -34,14 +171,18 @@ public class EmailService {
      * - Special character sanitization
      * 
      * @param email The email address to validate
+     * @return The parsed address with its canonical form
      * @throws InvalidEmailException if the email format is invalid
      */
-    private void validateEmail(String email) {
-        if (email == null || email.trim().isEmpty()) {
+    private EmailAddress validateEmail(String email) {
+        if (email == null) {
             throw new InvalidEmailException("Email address cannot be empty");
         }
         
         String trimmedEmail = email.trim();
+        if (trimmedEmail.isEmpty()) {
+            throw new InvalidEmailException("Email address cannot be empty");
+        }
         
         // Check maximum length per RFC 5321
         if (trimmedEmail.length() > MAX_EMAIL_LENGTH) {
@@ -54,13 +195,16 @@ public class EmailService {
         }
         
         // Prevent homograph attacks - check for non-ASCII characters
-        if (!trimmedEmail.matches("^[\\x00-\\x7F]+$")) {
-            throw new InvalidEmailException("Email address contains invalid characters");
+        for (int i = 0; i < trimmedEmail.length(); i++) {
+            if (trimmedEmail.charAt(i) > 0x7F) {
+                throw new InvalidEmailException("Email address contains invalid characters");
+            }
         }
         
         // Additional security checks
-        String localPart = trimmedEmail.substring(0, trimmedEmail.indexOf('@'));
-        String domain = trimmedEmail.substring(trimmedEmail.indexOf('@') + 1);
+        int at = trimmedEmail.lastIndexOf('@');
+        String localPart = trimmedEmail.substring(0, at);
+        String domain = trimmedEmail.substring(at + 1);
         
         // Check for suspicious patterns in local part
         if (localPart.startsWith(".") || localPart.endsWith(".") || localPart.contains("..")) {
@@ -68,50 +212,737 @@ public class EmailService {
         }
         
         // Validate domain has at least one dot
-        if (!domain.contains(".")) {
+        if (domain.indexOf('.') < 0) {
             throw new InvalidEmailException("Email domain is invalid");
         }
         
         // Check for IP addresses in domain (potential security risk)
-        if (domain.matches("^\\[?\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\]?$")) {
+        if (IP_DOMAIN.matcher(domain).matches()) {
             throw new InvalidEmailException("Email addresses with IP domains are not supported");
         }
+        
+        return new EmailAddress(trimmedEmail, localPart, domain, canonicalize(localPart, domain));
+    }
+    
+    /**
+     * Applies the configured canonicalization rules. The domain is always
+     * lower-cased; local-part rules are opt-in because Gmail search does not
+     * necessarily treat every variant of an address as the same sender.
+     */
+    private String canonicalize(String localPart, String domain) {
+        EmailCacheProperties.Canonicalization rules = cacheProperties.getCanonicalization();
+        String canonicalDomain = domain.toLowerCase(Locale.ROOT);
+        String canonicalLocal = localPart;
+        
+        if (rules.isLowercaseLocalPart()) {
+            canonicalLocal = canonicalLocal.toLowerCase(Locale.ROOT);
+        }
+        if (rules.isStripPlusTags()) {
+            int plus = canonicalLocal.indexOf('+');
+            if (plus > 0) {
+                canonicalLocal = canonicalLocal.substring(0, plus);
+            }
+        }
+        if (rules.isIgnoreGmailDots() && rules.getGmailDomains().contains(canonicalDomain)) {
+            canonicalLocal = canonicalLocal.replace(".", "");
+        }
+        return canonicalLocal + "@" + canonicalDomain;
     }
     
     /**
      * Gets the count of emails from a specific sender.
-     * Results are cached to reduce Gmail API calls.
      * 
      * @param senderEmail The email address of the sender
      * @return The count of emails from the sender
      * @throws InvalidEmailException if the email format is invalid
      */
-    @Cacheable(value = "emailCounts", key = "#senderEmail")
     public long getEmailCount(String senderEmail) {
+        return getEmailCountResult(senderEmail).count();
+    }
+    
+    /**
+     * Gets the count of emails from a specific sender together with its age,
+     * without a deadline.
+     * 
+     * @param senderEmail The email address of the sender
+     * @return The count of emails from the sender with cache metadata
+     * @throws InvalidEmailException if the email format is invalid
+     */
+    public EmailCountResult getEmailCountResult(String senderEmail) {
+        return getEmailCountResult(senderEmail, RequestDeadline.none());
+    }
+    
+    /**
+     * Gets the count of emails from a specific sender, waiting at most until
+     * the deadline.
+     * 
+     * @param senderEmail The email address of the sender
+     * @param deadline    When the caller stops waiting
+     * @return The count of emails from the sender with cache metadata
+     * @throws InvalidEmailException   if the email format is invalid
+     * @throws RequestTimeoutException if the deadline passes first
+     */
+    public EmailCountResult getEmailCountResult(String senderEmail, RequestDeadline deadline) {
+        return await(getEmailCountResultAsync(senderEmail, deadline), deadline, "Failed to count emails from sender");
+    }
+    
+    /**
+     * Waits for the result until the deadline, cancelling the deadline if the
+     * caller gives up first.
+     */
+    private static <T> T await(CompletableFuture<T> result, RequestDeadline deadline, String failureMessage) {
+        try {
+            return result.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            deadline.cancel();
+            throw new RequestTimeoutException("Request deadline exceeded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            deadline.cancel();
+            throw new GmailApiException("Request was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new GmailApiException(failureMessage, e.getCause());
+        }
+    }
+    
+    /**
+     * Looks up the count of emails from a specific sender.
+     * Results are cached to reduce Gmail API calls, and concurrent requests for
+     * the same uncached sender wait on a single Gmail scan. In refresh-ahead
+     * mode a stale count is returned immediately while it is reloaded in the
+     * background. Cached counts complete the returned future on the calling
+     * thread.
+     * <p>
+     * The scan runs until the latest deadline of the requests waiting for it.
+     * Cancelling a request's deadline (e.g. on client disconnect) detaches it,
+     * and the scan is cancelled once no request is waiting any more.
+     * 
+     * @param senderEmail The email address of the sender
+     * @param deadline    When the caller stops waiting; cancel it to abandon the request
+     * @return Future of the count with cache metadata
+     * @throws InvalidEmailException if the email format is invalid
+     */
+    public CompletableFuture<EmailCountResult> getEmailCountResultAsync(String senderEmail, RequestDeadline deadline) {
         logger.debug("Getting email count for sender: {}", LogSanitizer.maskEmail(senderEmail));
         
         // Validate email format
-        validateEmail(senderEmail);
+        EmailAddress sender = validateEmail(senderEmail);
+        String key = sender.canonical();
+        
+        EmailCountResult indexed = indexedResult(sender);
+        if (indexed != null) {
+            return CompletableFuture.completedFuture(indexed);
+        }
+        
+        // Either start the scan ourselves or join the one already in flight
+        long startedAtMillis = System.currentTimeMillis();
+        CompletableFuture<CachedCount> scan = new CompletableFuture<>();
+        SharedScan created = new SharedScan();
+        CompletableFuture<CachedCount> result = emailCountsCache.get(key, (k, executor) -> {
+            // Registered before the entry becomes visible so joiners always find it
+            inFlightScans.put(k, created);
+            return scan;
+        });
+        
+        boolean joinedCompleted = result != scan && result.isDone();
+        if (result == scan) {
+            scan.whenComplete((count, error) -> inFlightScans.remove(key, created));
+            created.attach(deadline);
+            loadCount(sender, scan, created.deadline);
+        } else if (!joinedCompleted) {
+            coalescedCounter.increment();
+            logger.debug("Joining in-flight count for sender: {}", LogSanitizer.maskEmail(sender));
+            SharedScan shared = inFlightScans.get(key);
+            if (shared != null) {
+                shared.attach(deadline);
+            }
+        }
+        
+        return result.thenApply(cached -> {
+            // Our own lookup is a hit when it was answered by a count loaded earlier
+            // (persistent tier or last known) rather than by a new Gmail scan
+            boolean hit = result == scan ? cached.loadedAtMillis() < startedAtMillis : joinedCompleted;
+            (hit ? cacheHitCounter : cacheMissCounter).increment();
+            
+            long ageMillis = cached.ageMillis();
+            boolean stale = ageMillis > cacheProperties.getExpireAfterWrite().toMillis();
+            if (stale && cacheProperties.getRefreshAhead().isEnabled()) {
+                staleServedCounter.increment();
+                refreshInBackground(sender);
+            }
+            
+            Duration remainingTtl = Duration.ofMillis(Math.max(0, cacheProperties.maxEntryAge().toMillis() - ageMillis));
+            return new EmailCountResult(sender, cached.count(), hit, Duration.ofMillis(ageMillis), remainingTtl, stale, true);
+        });
+    }
+    
+    /**
+     * Looks up the count of emails from a specific sender as asked by the query.
+     * 
+     * @param senderEmail The email address of the sender
+     * @param query       Whether an exact count, Gmail's estimate or only a lower bound is wanted
+     * @param deadline    When the caller stops waiting; cancel it to abandon the request
+     * @return Future of the count with cache metadata
+     * @throws InvalidEmailException if the email format is invalid
+     */
+    public CompletableFuture<EmailCountResult> getEmailCountResultAsync(String senderEmail, CountQuery query,
+                                                                        RequestDeadline deadline) {
+        if (query.mode() == CountMode.EXACT) {
+            return getEmailCountResultAsync(senderEmail, deadline);
+        }
+        logger.debug("Getting {} email count for sender: {}", query.mode(), LogSanitizer.maskEmail(senderEmail));
+        EmailAddress sender = validateEmail(senderEmail);
+        
+        // A fresh exact count answers every other kind of query
+        EmailCountResult indexed = indexedResult(sender);
+        if (indexed != null) {
+            return CompletableFuture.completedFuture(indexed);
+        }
+        CachedCount exact = freshExactCount(sender.canonical());
+        if (exact != null) {
+            return CompletableFuture.completedFuture(toQueryResult(sender, exact, true, true));
+        }
+        
+        if (query.stopsEarly()) {
+            return getCappedResultAsync(sender, query, deadline);
+        }
+        return getEstimateResultAsync(sender, deadline);
+    }
+    
+    /**
+     * Counts the messages from any of the senders that carry none of the
+     * excluded labels, waiting at most until the deadline.
+     * 
+     * @see #countMessageSetAsync
+     * @throws RequestTimeoutException if the deadline passes first
+     */
+    public MessageSetCount countMessageSet(List<String> senderEmails, List<String> excludedLabels,
+                                           RequestDeadline deadline) {
+        return await(countMessageSetAsync(senderEmails, excludedLabels, deadline), deadline,
+                "Failed to count emails across senders");
+    }
+    
+    /**
+     * Counts the messages from any of the senders that carry none of the
+     * excluded labels, by union and difference of message bitmaps. Senders
+     * and labels without a fresh bitmap are scanned in Gmail first, on the
+     * bulkhead; concurrent requests share a scan of the same sender or label,
+     * which is cancelled once none of them is waiting. The exact counts of
+     * scanned senders are cached like those of single-sender requests.
+     * 
+     * @param senderEmails   Senders whose messages are counted
+     * @param excludedLabels Label ids, e.g. INBOX or Label_12, whose messages are left out
+     * @param deadline       When the caller stops waiting; cancel it to abandon the request
+     * @return Future of the count
+     * @throws InvalidEmailException   if an email format is invalid
+     * @throws InvalidRequestException if bitmaps are disabled or the terms are invalid
+     */
+    public CompletableFuture<MessageSetCount> countMessageSetAsync(List<String> senderEmails,
+                                                                   List<String> excludedLabels,
+                                                                   RequestDeadline deadline) {
+        if (!messageBitmaps.isEnabled()) {
+            throw new InvalidRequestException("Counts across senders are not enabled");
+        }
+        List<String> labels = excludedLabels != null ? excludedLabels : List.of();
+        if (senderEmails == null || senderEmails.isEmpty()) {
+            throw new InvalidRequestException("At least one sender is required");
+        }
+        if (senderEmails.size() + labels.size() > MAX_SET_TERMS) {
+            throw new InvalidRequestException("At most " + MAX_SET_TERMS + " senders and labels are allowed");
+        }
+        Set<EmailAddress> senders = new LinkedHashSet<>();
+        for (String senderEmail : senderEmails) {
+            senders.add(validateEmail(senderEmail));
+        }
+        for (String label : labels) {
+            if (label == null || !LABEL_ID.matcher(label).matches()) {
+                throw new InvalidRequestException("Invalid label id");
+            }
+        }
+        
+        long generation = messageBitmaps.generation();
+        int scans = 0;
+        List<CompletableFuture<MessageBitmapIndex.MessageSet>> included = new ArrayList<>();
+        for (EmailAddress sender : senders) {
+            MessageBitmapIndex.MessageSet set = messageBitmaps.sender(sender.canonical());
+            if (set != null) {
+                included.add(CompletableFuture.completedFuture(set));
+            } else {
+                included.add(scanSetAsync("sender:" + sender.canonical(), deadline,
+                        scanDeadline -> scanSenderSet(sender, scanDeadline)));
+                scans++;
+            }
+        }
+        List<CompletableFuture<MessageBitmapIndex.MessageSet>> excluded = new ArrayList<>();
+        for (String label : new LinkedHashSet<>(labels)) {
+            MessageBitmapIndex.MessageSet set = messageBitmaps.label(label);
+            if (set != null) {
+                excluded.add(CompletableFuture.completedFuture(set));
+            } else {
+                excluded.add(scanSetAsync("label:" + label, deadline, scanDeadline -> scanLabelSet(label, scanDeadline)));
+                scans++;
+            }
+        }
+        
+        int scanned = scans;
+        List<CompletableFuture<MessageBitmapIndex.MessageSet>> all = new ArrayList<>(included);
+        all.addAll(excluded);
+        return CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<MessageBitmapIndex.MessageSet> includedSets = included.stream().map(CompletableFuture::join).toList();
+            List<MessageBitmapIndex.MessageSet> excludedSets = excluded.stream().map(CompletableFuture::join).toList();
+            // Sets recorded across a clear or ordinal reclaim use different ordinals
+            if (includedSets.contains(null) || excludedSets.contains(null)
+                    || messageBitmaps.generation() != generation) {
+                throw new GmailApiException("The mailbox index changed during the count, please retry");
+            }
+            long count = MessageBitmapIndex.countUnionExcept(includedSets, excludedSets);
+            logger.info("Message set count over {} senders and {} labels: {} ({} scanned)",
+                    includedSets.size(), excludedSets.size(), count, scanned);
+            return new MessageSetCount(count, scanned);
+        });
+    }
+    
+    /**
+     * Runs the scan of one bitmap on the bulkhead, or joins the scan of the
+     * same key that is already in flight. The entry is dropped once the scan
+     * completes, since the bitmap index itself keeps the result.
+     */
+    private CompletableFuture<MessageBitmapIndex.MessageSet> scanSetAsync(
+            String key, RequestDeadline deadline, Function<RequestDeadline, MessageBitmapIndex.MessageSet> scan) {
+        String scanKey = "set:" + key;
+        CompletableFuture<MessageBitmapIndex.MessageSet> created = new CompletableFuture<>();
+        SharedScan shared = new SharedScan();
+        CompletableFuture<MessageBitmapIndex.MessageSet> result = setScans.computeIfAbsent(scanKey, k -> {
+            // Registered before the entry becomes visible so joiners always find it
+            inFlightScans.put(k, shared);
+            return created;
+        });
+        
+        if (result != created) {
+            coalescedCounter.increment();
+            SharedScan running = inFlightScans.get(scanKey);
+            if (running != null) {
+                running.attach(deadline);
+            }
+            return result;
+        }
+        created.whenComplete((set, error) -> {
+            setScans.remove(scanKey, created);
+            inFlightScans.remove(scanKey, shared);
+        });
+        shared.attach(deadline);
+        try {
+            gmailBulkhead.execute(() -> {
+                try {
+                    // Abandoned while queued
+                    shared.deadline.check();
+                    created.complete(scan.apply(shared.deadline));
+                } catch (RuntimeException e) {
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (ServiceUnavailableException e) {
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+    
+    /**
+     * Counts the sender in full, which also records its bitmap, and caches
+     * the exact count.
+     */
+    private MessageBitmapIndex.MessageSet scanSenderSet(EmailAddress sender, RequestDeadline deadline) {
+        CachedCount loaded = scanAndStore(sender, deadline);
+        emailCountsCache.put(sender.canonical(), CompletableFuture.completedFuture(loaded));
+        return messageBitmaps.sender(sender.canonical());
+    }
+    
+    private MessageBitmapIndex.MessageSet scanLabelSet(String label, RequestDeadline deadline) {
+        MessageBitmapIndex.Collector ids = messageBitmaps.collector();
+        callGmail(() -> gmailService.listLabelMessageIds(label, ids, deadline));
+        return messageBitmaps.recordLabel(label, ids);
+    }
+    
+    /**
+     * Answers from the local sender index while it is caught up with the mailbox.
+     * 
+     * @return the exact count, or null if the index cannot answer
+     */
+    private EmailCountResult indexedResult(EmailAddress sender) {
+        OptionalLong count = senderIndex.lookup(sender.canonical());
+        if (count.isEmpty()) {
+            return null;
+        }
+        cacheHitCounter.increment();
+        long ageMillis = Math.max(0, senderIndex.ageMillis());
+        Duration remainingTtl = Duration.ofMillis(
+                Math.max(0, cacheProperties.getIndex().getMaxStaleness().toMillis() - ageMillis));
+        return new EmailCountResult(sender, count.getAsLong(), true, Duration.ofMillis(ageMillis), remainingTtl,
+                false, true);
+    }
+    
+    /**
+     * Returns the exact count for the key if it is cached and within the freshness window.
+     */
+    private CachedCount freshExactCount(String key) {
+        CompletableFuture<CachedCount> exact = emailCountsCache.getIfPresent(key);
+        if (exact == null || !exact.isDone() || exact.isCompletedExceptionally()) {
+            return null;
+        }
+        CachedCount cached = exact.join();
+        return cached.ageMillis() <= cacheProperties.getExpireAfterWrite().toMillis() ? cached : null;
+    }
+    
+    /**
+     * Answers from Gmail's resultSizeEstimate. The call is a single page, but
+     * it can still wait on the quota budget and the concurrency limit, so it
+     * runs on the bulkhead like every other scan.
+     */
+    private CompletableFuture<EmailCountResult> getEstimateResultAsync(EmailAddress sender, RequestDeadline deadline) {
+        return runQueryAsync(sender, CountQuery.ESTIMATE, deadline,
+                scanDeadline -> gmailService.estimateEmailsFromSender(sender, scanDeadline), count -> false);
+    }
+    
+    /**
+     * Counts up to the query's threshold on the bulkhead. The result is exact
+     * when fewer messages than the threshold exist, otherwise it is the
+     * threshold itself.
+     */
+    private CompletableFuture<EmailCountResult> getCappedResultAsync(EmailAddress sender, CountQuery query,
+                                                                     RequestDeadline deadline) {
+        return runQueryAsync(sender, query, deadline,
+                scanDeadline -> gmailService.countEmailsFromSender(sender, query.threshold(), scanDeadline),
+                count -> count < query.threshold());
+    }
+    
+    /**
+     * Runs a non-exact query on the bulkhead and caches its answer.
+     * Concurrent requests for the same sender and query share one call, which
+     * is cancelled once none of them is waiting.
+     * 
+     * @param exact Whether a count answers the query exactly
+     */
+    private CompletableFuture<EmailCountResult> runQueryAsync(EmailAddress sender, CountQuery query,
+                                                              RequestDeadline deadline,
+                                                              ToLongFunction<RequestDeadline> call,
+                                                              LongPredicate exact) {
+        String key = queryKey(query, sender);
+        CompletableFuture<CachedCount> scan = new CompletableFuture<>();
+        SharedScan created = new SharedScan();
+        CompletableFuture<CachedCount> result = queryCounts.get(key, (k, executor) -> {
+            inFlightScans.put(k, created);
+            return scan;
+        });
         
-        // Fetch count from Gmail API
-        long count = gmailService.countEmailsFromSender(senderEmail);
+        boolean hit = result != scan;
+        if (!hit) {
+            scan.whenComplete((count, error) -> inFlightScans.remove(key, created));
+            created.attach(deadline);
+            try {
+                gmailBulkhead.execute(() -> {
+                    try {
+                        created.deadline.check();
+                        long count = callGmail(() -> call.applyAsLong(created.deadline));
+                        scan.complete(CachedCount.loadedNow(count));
+                    } catch (RuntimeException e) {
+                        // Failed futures are evicted by the cache, so the next request retries
+                        scan.completeExceptionally(e);
+                    }
+                });
+            } catch (ServiceUnavailableException e) {
+                scan.completeExceptionally(e);
+            }
+        } else if (!result.isDone()) {
+            SharedScan shared = inFlightScans.get(key);
+            if (shared != null) {
+                shared.attach(deadline);
+            }
+        }
         
-        logger.info("Email count for {}: {}", LogSanitizer.maskEmail(senderEmail), count);
+        return result.thenApply(cached -> toQueryResult(sender, cached, hit, exact.test(cached.count())));
+    }
+    
+    private static String queryKey(CountQuery query, EmailAddress sender) {
+        return query.mode() + ":" + query.threshold() + ":" + sender.canonical();
+    }
+    
+    private EmailCountResult toQueryResult(EmailAddress sender, CachedCount cached, boolean hit, boolean exact) {
+        long ageMillis = cached.ageMillis();
+        Duration remainingTtl = Duration.ofMillis(
+                Math.max(0, cacheProperties.getExpireAfterWrite().toMillis() - ageMillis));
+        return new EmailCountResult(sender, cached.count(), hit, Duration.ofMillis(ageMillis), remainingTtl, false, exact);
+    }
+    
+    /**
+     * Completes the shared future from the persistent tier when its entry is
+     * still servable, otherwise queues a Gmail scan on the bulkhead. Only the
+     * scan leaves the request thread; the caller waits for the future.
+     */
+    private void loadCount(EmailAddress sender, CompletableFuture<CachedCount> scan, RequestDeadline deadline) {
+        String key = sender.canonical();
+        CachedCount persisted = persistentCountStore.get(key);
+        if (persisted != null && isServable(persisted)) {
+            logger.debug("Using persisted email count for {}", LogSanitizer.maskEmail(sender));
+            lastKnownCounts.put(key, persisted);
+            scan.complete(persisted);
+            return;
+        }
+        
+        try {
+            gmailBulkhead.execute(() -> scanGmail(sender, scan, deadline));
+        } catch (ServiceUnavailableException e) {
+            completeWithLastKnown(sender, scan, e);
+        }
+    }
+    
+    private void scanGmail(EmailAddress sender, CompletableFuture<CachedCount> scan, RequestDeadline deadline) {
+        try {
+            // Abandoned while queued
+            deadline.check();
+            CachedCount loaded = scanAndStore(sender, deadline);
+            logger.info("Email count for {}: {}", LogSanitizer.maskEmail(sender), loaded.count());
+            scan.complete(loaded);
+        } catch (ServiceUnavailableException e) {
+            completeWithLastKnown(sender, scan, e);
+        } catch (RuntimeException e) {
+            // Failed futures are evicted by the cache, so the next request retries
+            scan.completeExceptionally(e);
+        }
+    }
+    
+    /**
+     * Counts the sender in full and stores the count in the persistent and
+     * last known tiers; the caller puts it in the cache.
+     */
+    private CachedCount scanAndStore(EmailAddress sender, RequestDeadline deadline) {
+        BigInteger historyId = historyIdBeforeScan(deadline);
+        CachedCount loaded = CachedCount.loadedNow(countFromGmail(sender, deadline));
+        store(sender.canonical(), loaded);
+        trackHistory(sender, historyId, loaded);
+        return loaded;
+    }
+    
+    /**
+     * While Gmail cannot be asked (circuit open or load shed) the last known
+     * count is served, however old it is.
+     */
+    private void completeWithLastKnown(EmailAddress sender, CompletableFuture<CachedCount> scan,
+                                       ServiceUnavailableException cause) {
+        CachedCount lastKnown = lastKnownCounts.getIfPresent(sender.canonical());
+        if (lastKnown == null) {
+            scan.completeExceptionally(cause);
+            return;
+        }
+        fallbackCounter.increment();
+        logger.debug("Gmail unavailable, serving last known count for {}", LogSanitizer.maskEmail(sender));
+        scan.complete(lastKnown);
+    }
+    
+    /**
+     * Counts through the circuit breaker.
+     * 
+     * @throws ServiceUnavailableException if the circuit is open
+     */
+    private long countFromGmail(EmailAddress sender, RequestDeadline deadline) {
+        if (!messageBitmaps.isEnabled()) {
+            return callGmail(() -> gmailService.countEmailsFromSender(sender, deadline));
+        }
+        // The full scan also records which messages matched
+        MessageBitmapIndex.Collector ids = messageBitmaps.collector();
+        long count = callGmail(() -> gmailService.countEmailsFromSender(sender, Long.MAX_VALUE, ids, deadline));
+        messageBitmaps.recordSender(sender.canonical(), ids);
         return count;
     }
     
     /**
-     * Checks if a result is from cache (used by controller for response metadata).
-     * This is a simple implementation - in production you might want to use
-     * cache statistics from CacheManager.
+     * Runs a Gmail call unless the circuit is open. The breaker records the
+     * outcome of each Gmail request inside the call; this only avoids
+     * starting a scan that would be rejected at its first page.
+     * 
+     * @throws ServiceUnavailableException if the circuit is open
+     */
+    private long callGmail(LongSupplier call) {
+        if (circuitBreaker.isOpen()) {
+            throw new ServiceUnavailableException("Gmail is temporarily unavailable, please retry later",
+                    circuitBreaker.remainingOpenTime());
+        }
+        return call.getAsLong();
+    }
+    
+    private void store(String key, CachedCount loaded) {
+        persistentCountStore.put(key, loaded);
+        lastKnownCounts.put(key, loaded);
+    }
+    
+    /**
+     * Reloads a stale entry on the refresh executor, at most once per sender at a time.
+     * The stale value stays in the cache until the reload succeeds.
+     */
+    private void refreshInBackground(EmailAddress sender) {
+        String key = sender.canonical();
+        if (refreshing.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    RequestDeadline deadline = RequestDeadline.after(cacheProperties.getRefreshAhead().getTimeout());
+                    CachedCount loaded = scanAndStore(sender, deadline);
+                    emailCountsCache.put(key, CompletableFuture.completedFuture(loaded));
+                    logger.debug("Refreshed email count for {}: {}", LogSanitizer.maskEmail(sender), loaded.count());
+                } catch (ServiceUnavailableException e) {
+                    logger.debug("Gmail circuit open, keeping stale count for {}", LogSanitizer.maskEmail(sender));
+                } catch (RuntimeException e) {
+                    logger.warn("Background refresh failed for {}: {}", LogSanitizer.maskEmail(sender), e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            logger.debug("Refresh queue full, serving stale count for {}", LogSanitizer.maskEmail(sender));
+        }
+    }
+    
+    /**
+     * In incremental mode, reads the mailbox history id before a full scan so
+     * that later changes can be applied to its count. Changes made while the
+     * scan runs may already be part of it; the periodic full rescan corrects
+     * the rare double count.
      * 
-     * @param senderEmail The email address to check
-     * @return true if likely cached (this is called after getEmailCount)
+     * @return the history id, or null if the count is not maintained incrementally
+     */
+    private BigInteger historyIdBeforeScan(RequestDeadline deadline) {
+        if (!cacheProperties.getIncremental().isEnabled()) {
+            return null;
+        }
+        try {
+            return gmailService.currentHistoryId(deadline);
+        } catch (RuntimeException e) {
+            logger.debug("No history id for incremental counting: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private void trackHistory(EmailAddress sender, BigInteger historyId, CachedCount loaded) {
+        if (historyId != null) {
+            historyBaselines.put(sender.canonical(),
+                    new HistoryBaseline(sender, historyId, loaded.count(), loaded.loadedAtMillis()));
+        }
+    }
+    
+    /**
+     * Returns the history baselines of the cached exact counts that are
+     * maintained incrementally. Senders evicted from the cache are dropped.
+     */
+    public Map<String, HistoryBaseline> historyBaselines() {
+        historyBaselines.keySet().removeIf(key -> emailCountsCache.getIfPresent(key) == null);
+        return Map.copyOf(historyBaselines);
+    }
+    
+    /**
+     * Moves a sender's cached count forward by the changes between its
+     * baseline and {@code historyId}. Nothing is applied if the sender was
+     * rescanned or cleared since the baseline was read.
+     * 
+     * @return true if the count was updated
+     */
+    public boolean applyHistory(HistoryBaseline expected, long delta, BigInteger historyId) {
+        String key = expected.sender().canonical();
+        boolean[] applied = {false};
+        historyBaselines.computeIfPresent(key, (k, current) -> {
+            if (!current.equals(expected)) {
+                return current;
+            }
+            CachedCount loaded = CachedCount.loadedNow(Math.max(0, current.count() + delta));
+            store(k, loaded);
+            emailCountsCache.put(k, CompletableFuture.completedFuture(loaded));
+            applied[0] = true;
+            return new HistoryBaseline(current.sender(), historyId, loaded.count(), current.scannedAtMillis());
+        });
+        if (applied[0] && delta != 0) {
+            logger.debug("Applied {} mailbox changes to count for {}", delta, LogSanitizer.maskEmail(expected.sender()));
+        }
+        return applied[0];
+    }
+    
+    /**
+     * Stops maintaining a sender's count incrementally and reloads it with a
+     * full scan in the background.
+     */
+    public void rescan(HistoryBaseline baseline) {
+        if (historyBaselines.remove(baseline.sender().canonical(), baseline)) {
+            refreshInBackground(baseline.sender());
+        }
+    }
+    
+    /**
+     * Returns the canonical sender of a From header such as
+     * {@code "Name" <user@example.com>}, or null if it holds no valid address.
+     */
+    public String canonicalSender(String fromHeader) {
+        if (fromHeader == null) {
+            return null;
+        }
+        int open = fromHeader.lastIndexOf('<');
+        int close = fromHeader.lastIndexOf('>');
+        String address = open >= 0 && close > open ? fromHeader.substring(open + 1, close) : fromHeader;
+        try {
+            return validateEmail(address).canonical();
+        } catch (InvalidEmailException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * A persisted count is trusted while fresh; in refresh-ahead mode it may
+     * also be served stale (and is then revalidated in the background).
+     */
+    private boolean isServable(CachedCount persisted) {
+        long age = persisted.ageMillis();
+        if (age <= cacheProperties.getExpireAfterWrite().toMillis()) {
+            return true;
+        }
+        EmailCacheProperties.RefreshAhead refreshAhead = cacheProperties.getRefreshAhead();
+        return refreshAhead.isEnabled() && age <= refreshAhead.getMaxStaleness().toMillis();
+    }
+    
+    private static ThreadPoolExecutor createRefreshExecutor(EmailCacheProperties.RefreshAhead settings) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                settings.getThreads(), settings.getThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "email-count-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+    
+    /**
+     * Drops counts held in the persistent tier, the last known counts, the
+     * estimated or capped counts, the history baselines, the sender index and
+     * the message bitmaps (the in-memory tier is cleared through the CacheManager).
      */
-    public boolean isCached(String senderEmail) {
-        // This is a simplified approach - the first call will set cache,
-        // subsequent calls within TTL will be cached
-        // In a real scenario, you'd check cache statistics
-        return false; // Controller will handle this logic
+    public void clearPersistedCounts() {
+        persistentCountStore.clear();
+        lastKnownCounts.invalidateAll();
+        historyBaselines.clear();
+        senderIndex.clear();
+        messageBitmaps.clear();
+        queryCounts.synchronous().invalidateAll();
     }
 }
@@ -0,0 +1,132 @@
+package com.krysta.emailreader.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs Gmail scans on a dedicated, bounded executor so that a burst of
+ * uncached counts cannot take over the servlet threads.
+ * Admission follows CoDel: once the time scans spend in the queue has stayed
+ * above the target delay for a whole interval, new scans are rejected
+ * straight away until the queue drains or waits drop below the target again.
+ */
+@Component
+public class GmailBulkhead {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailBulkhead.class);
+    
+    private final GmailConfig gmailConfig;
+    private final ThreadPoolExecutor executor;
+    private final Timer queueWaitTimer;
+    private final Counter queueFullCounter;
+    private final Counter shedCounter;
+    
+    private volatile boolean shedding;
+    private long aboveTargetSinceNanos;
+    
+    public GmailBulkhead(GmailConfig gmailConfig, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        GmailConfig.Bulkhead settings = gmailConfig.getBulkhead();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                settings.getThreads(), settings.getThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gmail-scan-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        
+        this.queueWaitTimer = Timer.builder("gmail.bulkhead.queue.wait")
+                .description("Time Gmail scans waited for a bulkhead thread")
+                .register(meterRegistry);
+        this.queueFullCounter = Counter.builder("gmail.bulkhead.rejected")
+                .tag("reason", "queue_full")
+                .description("Gmail scans rejected by the bulkhead")
+                .register(meterRegistry);
+        this.shedCounter = Counter.builder("gmail.bulkhead.rejected")
+                .tag("reason", "queue_delay")
+                .description("Gmail scans rejected by the bulkhead")
+                .register(meterRegistry);
+        Gauge.builder("gmail.bulkhead.queued", executor, e -> e.getQueue().size())
+                .description("Gmail scans waiting for a bulkhead thread")
+                .register(meterRegistry);
+        Gauge.builder("gmail.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Gmail scans currently running")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Queues a Gmail scan.
+     *
+     * @throws ServiceUnavailableException if the queue is full or the bulkhead is shedding load
+     */
+    public void execute(Runnable task) {
+        if (shedding) {
+            if (!executor.getQueue().isEmpty()) {
+                shedCounter.increment();
+                throw overloaded();
+            }
+            shedding = false;
+        }
+        
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                onDequeue(System.nanoTime() - enqueuedAt);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            queueFullCounter.increment();
+            throw overloaded();
+        }
+    }
+    
+    private synchronized void onDequeue(long waitNanos) {
+        queueWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        GmailConfig.Bulkhead settings = gmailConfig.getBulkhead();
+        
+        if (waitNanos < settings.getTargetDelay().toNanos()) {
+            aboveTargetSinceNanos = 0;
+            shedding = false;
+            return;
+        }
+        long now = System.nanoTime();
+        if (aboveTargetSinceNanos == 0) {
+            aboveTargetSinceNanos = now;
+        } else if (!shedding && now - aboveTargetSinceNanos >= settings.getInterval().toNanos()) {
+            shedding = true;
+            logger.warn("Gmail scans waited over {} ms for {} ms, shedding new scans",
+                    settings.getTargetDelay().toMillis(), settings.getInterval().toMillis());
+        }
+    }
+    
+    private ServiceUnavailableException overloaded() {
+        return new ServiceUnavailableException("Too many Gmail requests in progress, please retry later",
+                gmailConfig.getBulkhead().getRetryAfter());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
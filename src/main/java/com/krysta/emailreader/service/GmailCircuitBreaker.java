@@ -0,0 +1,211 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.api.client.http.HttpResponseException;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Circuit breaker for Gmail calls. Opens when the failure or slow-call rate
+ * over the most recent calls crosses its threshold, rejects calls while open,
+ * and lets a few trial calls through after the open duration to decide
+ * whether to close again. A call is a single Gmail request (one page of a
+ * scan), so long scans of large senders are not mistaken for slow calls.
+ */
+@Component
+public class GmailCircuitBreaker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailCircuitBreaker.class);
+    
+    /**
+     * Breaker states; the ordinal is published as the gmail.circuit.state gauge.
+     */
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+    
+    private static final byte OUTCOME_FAILURE = 1;
+    private static final byte OUTCOME_SLOW = 2;
+    
+    private final GmailConfig gmailConfig;
+    private final AuditService auditService;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejectedCounter;
+    private final byte[] window;
+    
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int windowIndex;
+    private int windowCount;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    
+    public GmailCircuitBreaker(GmailConfig gmailConfig, AuditService auditService, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        this.auditService = auditService;
+        this.meterRegistry = meterRegistry;
+        this.window = new byte[Math.max(1, gmailConfig.getCircuitBreaker().getWindowSize())];
+        this.rejectedCounter = Counter.builder("gmail.circuit.rejected")
+                .description("Gmail calls not attempted because the circuit was open")
+                .register(meterRegistry);
+        Gauge.builder("gmail.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Gmail circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Whether a Gmail call may be attempted now. A permitted call must be
+     * followed by exactly one of the on* callbacks.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        GmailConfig.CircuitBreaker settings = gmailConfig.getCircuitBreaker();
+        if (!settings.isEnabled()) {
+            return true;
+        }
+        
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= settings.getOpenDuration().toNanos()) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && halfOpenPermits < settings.getHalfOpenCalls()) {
+            halfOpenPermits++;
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+    
+    /**
+     * Whether calls are rejected right now, without taking a trial permit.
+     */
+    public synchronized boolean isOpen() {
+        GmailConfig.CircuitBreaker settings = gmailConfig.getCircuitBreaker();
+        return settings.isEnabled() && state == State.OPEN
+                && System.nanoTime() - openedAtNanos < settings.getOpenDuration().toNanos();
+    }
+    
+    /**
+     * Records a completed call.
+     */
+    public synchronized void onSuccess(long durationNanos) {
+        GmailConfig.CircuitBreaker settings = gmailConfig.getCircuitBreaker();
+        boolean slow = durationNanos > settings.getSlowCallDuration().toNanos();
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                transition(State.OPEN);
+            } else if (++halfOpenSuccesses >= settings.getHalfOpenCalls()) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        record(slow ? OUTCOME_SLOW : 0);
+    }
+    
+    /**
+     * Records a failed call. Server errors, rate limits and network failures
+     * count as failed and calls cut off by the request deadline as slow, so a
+     * brownout that only shows up as timeouts still opens the breaker. Other
+     * Gmail responses (a 404 for a deleted message, 400, 401, 403), local
+     * rejections, cancellations and configuration errors just release the permit.
+     */
+    public synchronized void onError(long durationNanos, Throwable error) {
+        boolean timedOut = error instanceof RequestTimeoutException;
+        if (!timedOut && !isGmailFailure(error)) {
+            if (state == State.HALF_OPEN) {
+                halfOpenPermits--;
+            }
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+            return;
+        }
+        record(timedOut ? OUTCOME_SLOW : OUTCOME_FAILURE);
+    }
+    
+    private static boolean isGmailFailure(Throwable error) {
+        Throwable failure = error instanceof IOException ? error : error.getCause();
+        if (!(failure instanceof IOException io)) {
+            return false;
+        }
+        if (failure instanceof HttpResponseException response) {
+            return response.getStatusCode() >= 500 || GmailRetryPolicy.isRateLimitResponse(io);
+        }
+        return true;
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    /**
+     * Time until trial calls are let through again; zero unless open.
+     */
+    public synchronized Duration remainingOpenTime() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        long elapsed = System.nanoTime() - openedAtNanos;
+        return Duration.ofNanos(Math.max(0, gmailConfig.getCircuitBreaker().getOpenDuration().toNanos() - elapsed));
+    }
+    
+    private void record(byte outcome) {
+        if (state != State.CLOSED) {
+            return;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        windowCount = Math.min(windowCount + 1, window.length);
+        
+        GmailConfig.CircuitBreaker settings = gmailConfig.getCircuitBreaker();
+        if (windowCount < settings.getMinimumCalls()) {
+            return;
+        }
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (window[i] == OUTCOME_FAILURE) {
+                failures++;
+            } else if (window[i] == OUTCOME_SLOW) {
+                slowCalls++;
+            }
+        }
+        if (failures * 100 >= settings.getFailureRateThreshold() * windowCount
+                || slowCalls * 100 >= settings.getSlowCallRateThreshold() * windowCount) {
+            transition(State.OPEN);
+        }
+    }
+    
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        windowIndex = 0;
+        windowCount = 0;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        }
+        
+        Counter.builder("gmail.circuit.transitions")
+                .tag("from", from.name())
+                .tag("to", to.name())
+                .description("Gmail circuit breaker state changes")
+                .register(meterRegistry)
+                .increment();
+        logger.warn("Gmail circuit breaker {} -> {}", from, to);
+        auditService.logGmailApiError(null, "CIRCUIT_" + to.name());
+    }
+}
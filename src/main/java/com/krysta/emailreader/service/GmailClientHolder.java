@@ -0,0 +1,104 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.services.gmail.Gmail;
+import com.krysta.emailreader.exception.GmailApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Holds a long-lived Gmail client, built on the shared HTTP transport, for all requests.
+ * The client is rebuilt only when stored credentials change; readers of the
+ * current client never block.
+ */
+@Component
+public class GmailClientHolder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailClientHolder.class);
+    
+    private final CredentialsStorageService credentialsStorageService;
+    private final HttpTransport httpTransport;
+    private final Counter rebuildCounter;
+    private final Timer rebuildTimer;
+    private final Object rebuildLock = new Object();
+    
+    private volatile ClientSnapshot current;
+    
+    /**
+     * Builds a Gmail client on top of the shared transport.
+     */
+    @FunctionalInterface
+    public interface ClientFactory {
+        Gmail build(HttpTransport httpTransport) throws IOException;
+    }
+    
+    private record ClientSnapshot(Gmail gmail, long credentialsVersion) {
+    }
+    
+    public GmailClientHolder(CredentialsStorageService credentialsStorageService,
+                             HttpTransport httpTransport,
+                             MeterRegistry meterRegistry) {
+        this.credentialsStorageService = credentialsStorageService;
+        this.httpTransport = httpTransport;
+        this.rebuildCounter = Counter.builder("gmail.client.rebuilds")
+                .description("Number of times the Gmail client was (re)built")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("gmail.client.rebuild.time")
+                .description("Time spent building the Gmail client")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Returns the current Gmail client, building it with the given factory
+     * if none exists yet or the credentials have changed since it was built.
+     */
+    public Gmail getClient(ClientFactory factory) {
+        ClientSnapshot snapshot = current;
+        if (snapshot != null && snapshot.credentialsVersion() == credentialsStorageService.getVersion()) {
+            return snapshot.gmail();
+        }
+        
+        synchronized (rebuildLock) {
+            long version = credentialsStorageService.getVersion();
+            snapshot = current;
+            if (snapshot != null && snapshot.credentialsVersion() == version) {
+                return snapshot.gmail();
+            }
+            return rebuild(factory, version);
+        }
+    }
+    
+    /**
+     * Drops the current client so the next call rebuilds it
+     * (e.g. after the stored token was revoked).
+     */
+    public void invalidate() {
+        current = null;
+        logger.info("Gmail client invalidated");
+    }
+    
+    private Gmail rebuild(ClientFactory factory, long version) {
+        long start = System.nanoTime();
+        try {
+            Gmail gmail = factory.build(httpTransport);
+            current = new ClientSnapshot(gmail, version);
+            rebuildCounter.increment();
+            logger.info("Gmail client built for credentials version {}", version);
+            return gmail;
+        } catch (IOException e) {
+            logger.error("Failed to initialize Gmail client", e);
+            throw new GmailApiException("Failed to initialize Gmail client: " + e.getMessage(), e);
+        } finally {
+            rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.krysta.emailreader.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Adaptive limit on concurrent Gmail calls.
+ * The limit grows additively (about one slot per limit's worth of calls)
+ * while call latency stays close to its long-term baseline, and shrinks
+ * multiplicatively when latency rises past the tolerance or Gmail rejects or
+ * fails a call. Callers above the limit wait for a slot.
+ */
+@Component
+public class GmailConcurrencyLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailConcurrencyLimiter.class);
+    
+    /** Weight of a new sample in the long-term RTT baseline */
+    private static final double BASELINE_SMOOTHING = 0.05;
+    
+    private final GmailConfig gmailConfig;
+    private final Timer rttTimer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    
+    private double limit;
+    private double baselineRttNanos;
+    private int inFlight;
+    
+    /**
+     * Handle for one admitted call; exactly one of its methods must be called.
+     */
+    public final class Listener {
+        private final long startNanos = System.nanoTime();
+        
+        private Listener() {
+        }
+        
+        /**
+         * The call completed normally.
+         */
+        public void onSuccess() {
+            long rtt = System.nanoTime() - startNanos;
+            rttTimer.record(rtt, TimeUnit.NANOSECONDS);
+            release(rtt, false);
+        }
+        
+        /**
+         * Gmail rejected or failed the call (rate limit, server error, timeout).
+         */
+        public void onDropped() {
+            release(0, true);
+        }
+        
+        /**
+         * The call failed for a reason that says nothing about Gmail's capacity.
+         */
+        public void onIgnore() {
+            release(-1, false);
+        }
+    }
+    
+    public GmailConcurrencyLimiter(GmailConfig gmailConfig, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        this.limit = gmailConfig.getConcurrencyLimit().getInitialLimit();
+        this.rttTimer = Timer.builder("gmail.concurrency.rtt")
+                .description("Round-trip time of Gmail calls admitted by the concurrency limiter")
+                .register(meterRegistry);
+        Gauge.builder("gmail.concurrency.limit", this, GmailConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent Gmail calls")
+                .register(meterRegistry);
+        Gauge.builder("gmail.concurrency.inflight", this, GmailConcurrencyLimiter::getInFlight)
+                .description("Gmail calls currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("gmail.concurrency.rtt.baseline", this, l -> l.getBaselineRttNanos() / 1e6)
+                .description("Long-term Gmail call latency baseline in milliseconds")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Waits for a free slot under the current limit, but never past the deadline.
+     *
+     * @throws ServiceUnavailableException if no slot frees up within the maximum wait
+     * @throws RequestTimeoutException     if the deadline passes while waiting
+     */
+    public Listener acquire(RequestDeadline deadline) {
+        GmailConfig.ConcurrencyLimit settings = gmailConfig.getConcurrencyLimit();
+        lock.lock();
+        try {
+            if (settings.isEnabled()) {
+                long maxWaitNanos = settings.getMaxWait().toNanos();
+                boolean deadlineFirst = deadline.remaining().toNanos() < maxWaitNanos;
+                long remainingNanos = Math.min(maxWaitNanos, deadline.remaining().toNanos());
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) {
+                        if (deadlineFirst) {
+                            throw new RequestTimeoutException(
+                                    "Request deadline exceeded while waiting for a Gmail call slot");
+                        }
+                        throw new ServiceUnavailableException("Too many concurrent Gmail calls, please retry later",
+                                settings.getMaxWait());
+                    }
+                    remainingNanos = slotFreed.awaitNanos(remainingNanos);
+                }
+            }
+            inFlight++;
+            return new Listener();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GmailApiException("Request was cancelled");
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public double getBaselineRttNanos() {
+        lock.lock();
+        try {
+            return baselineRttNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @param rttNanos measured latency, or negative if the sample is ignored
+     */
+    private void release(long rttNanos, boolean dropped) {
+        GmailConfig.ConcurrencyLimit settings = gmailConfig.getConcurrencyLimit();
+        lock.lock();
+        try {
+            // Only calls made while the limit was nearly used tell us whether more would fit
+            boolean limitBound = inFlight * 2 >= limit;
+            inFlight--;
+            
+            double previous = limit;
+            if (dropped) {
+                limit = limit * settings.getDropBackoffRatio();
+            } else if (rttNanos >= 0) {
+                if (baselineRttNanos == 0) {
+                    baselineRttNanos = rttNanos;
+                }
+                if (rttNanos > baselineRttNanos * settings.getLatencyTolerance()) {
+                    limit = limit * settings.getLatencyBackoffRatio();
+                } else if (limitBound) {
+                    limit = limit + 1.0 / limit;
+                }
+                baselineRttNanos += BASELINE_SMOOTHING * (rttNanos - baselineRttNanos);
+            }
+            limit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), limit));
+            
+            if ((int) limit != (int) previous) {
+                logger.debug("Gmail concurrency limit {} -> {}", (int) previous, (int) limit);
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The parts of a messages.list page that counting needs, read straight from
+ * the response stream. Message entries are only counted and skipped, so a
+ * page costs a handful of objects instead of one {@code Message} per entry.
+ * 
+ * @param messageCount       Number of entries in {@code messages}
+ * @param nextPageToken      Token of the next page, null on the last page
+ * @param resultSizeEstimate Gmail's estimate of the total, null if not requested
+ */
+public record GmailListPage(int messageCount, String nextPageToken, Long resultSizeEstimate) {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    
+    /**
+     * Parses a messages.list response body. Unknown fields are skipped.
+     * The stream is closed once the page has been read.
+     * 
+     * @throws IOException if the body is not a JSON object
+     */
+    public static GmailListPage parse(InputStream content) throws IOException {
+        return parse(content, null);
+    }
+    
+    /**
+     * Parses a messages.list response body and hands the id of every message
+     * on the page to {@code ids}, if given.
+     * 
+     * @throws IOException if the body is not a JSON object
+     */
+    public static GmailListPage parse(InputStream content, Consumer<String> ids) throws IOException {
+        int messageCount = 0;
+        String nextPageToken = null;
+        Long resultSizeEstimate = null;
+        
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object in messages.list response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "messages" -> messageCount = countEntries(parser, value, ids);
+                    case "nextPageToken" -> nextPageToken = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case "resultSizeEstimate" -> resultSizeEstimate =
+                            value == JsonToken.VALUE_NULL ? null : parser.getValueAsLong();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new GmailListPage(messageCount, nextPageToken, resultSizeEstimate);
+    }
+    
+    private static int countEntries(JsonParser parser, JsonToken value, Consumer<String> ids) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return 0;
+        }
+        int count = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("Truncated messages.list response");
+            }
+            count++;
+            if (ids != null && token == JsonToken.START_OBJECT) {
+                readId(parser, ids);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+    
+    private static void readId(JsonParser parser, Consumer<String> ids) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                ids.accept(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
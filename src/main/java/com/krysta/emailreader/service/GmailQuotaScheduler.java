@@ -0,0 +1,180 @@
+package com.krysta.emailreader.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Paces Gmail API calls so each account stays within its quota units per
+ * second. Every call reserves its cost from a per-account budget before it
+ * is sent; when the budget is spent the caller waits for its turn instead of
+ * being rejected by Gmail. Reservations are taken under a fair lock, so
+ * callers are served in arrival order and a long scan that reserves one page
+ * at a time interleaves with other requests rather than starving them.
+ */
+@Service
+public class GmailQuotaScheduler {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailQuotaScheduler.class);
+    
+    private final GmailConfig gmailConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter unitsCounter;
+    private final Counter throttledCounter;
+    private final Counter rejectedCounter;
+    private final Timer waitTimer;
+    
+    /**
+     * Token bucket that may go into debt: a negative balance is the backlog of
+     * reserved units that later callers have to queue behind.
+     */
+    private static final class Budget {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private double available;
+        private long refilledAtNanos;
+        private long pausedUntilNanos;
+        
+        private Budget(double burst, long now) {
+            this.available = burst;
+            this.refilledAtNanos = now;
+        }
+        
+        private double availableUnits() {
+            lock.lock();
+            try {
+                return available;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    public GmailQuotaScheduler(GmailConfig gmailConfig, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        this.meterRegistry = meterRegistry;
+        this.unitsCounter = Counter.builder("gmail.quota.units")
+                .description("Gmail quota units charged to outgoing calls")
+                .register(meterRegistry);
+        this.throttledCounter = Counter.builder("gmail.quota.throttled")
+                .description("Gmail calls rejected with a rate limit error")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("gmail.quota.rejected")
+                .description("Gmail calls not sent because the quota wait exceeded the limit or the request deadline")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("gmail.quota.wait")
+                .description("Time Gmail calls waited for quota budget")
+                .register(meterRegistry);
+        Gauge.builder("gmail.quota.queued", waiting, AtomicInteger::get)
+                .description("Gmail calls currently waiting for quota budget")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Reserves the given quota units for the account, blocking until the call
+     * may be sent. A call that could not be sent before its deadline is
+     * rejected without reserving anything, so it does not spend budget that
+     * later callers would have to queue behind.
+     *
+     * @throws ServiceUnavailableException if the wait would exceed the configured maximum
+     * @throws RequestTimeoutException     if the wait would run past the deadline
+     * @throws GmailApiException           if the thread is interrupted while waiting
+     */
+    public void acquire(String accountId, int units, RequestDeadline deadline) {
+        GmailConfig.Quota settings = gmailConfig.getQuota();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        
+        Budget budget = budgets.computeIfAbsent(accountId, this::newBudget);
+        long waitNanos = reserve(budget, units, settings, deadline);
+        unitsCounter.increment(units);
+        if (waitNanos <= 0) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        
+        waiting.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, deadline.remaining().toNanos()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GmailApiException("Request was cancelled");
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    /**
+     * Stops spending the account's budget for a while after Gmail reported a
+     * rate limit, so queued calls back off together.
+     */
+    public void penalize(String accountId, Duration pause) {
+        throttledCounter.increment();
+        Budget budget = budgets.computeIfAbsent(accountId, this::newBudget);
+        budget.lock.lock();
+        try {
+            budget.pausedUntilNanos = Math.max(budget.pausedUntilNanos, System.nanoTime() + pause.toNanos());
+            budget.available = Math.min(budget.available, 0);
+        } finally {
+            budget.lock.unlock();
+        }
+        logger.warn("Gmail rate limit reported, pausing quota budget for {} ms", pause.toMillis());
+    }
+    
+    private long reserve(Budget budget, int units, GmailConfig.Quota settings, RequestDeadline deadline) {
+        budget.lock.lock();
+        try {
+            long now = System.nanoTime();
+            double elapsedSeconds = (now - budget.refilledAtNanos) / 1e9;
+            budget.available = Math.min(settings.getBurst(),
+                    budget.available + elapsedSeconds * settings.getUnitsPerSecond());
+            budget.refilledAtNanos = now;
+            
+            double balance = budget.available - units;
+            long debtNanos = balance >= 0 ? 0 : (long) (-balance / settings.getUnitsPerSecond() * 1e9);
+            long waitNanos = Math.max(debtNanos, budget.pausedUntilNanos - now);
+            if (waitNanos > settings.getMaxWait().toNanos()) {
+                rejectedCounter.increment();
+                throw new ServiceUnavailableException("Gmail quota budget exhausted, please retry later",
+                        Duration.ofNanos(waitNanos));
+            }
+            if (waitNanos > deadline.remaining().toNanos()) {
+                rejectedCounter.increment();
+                throw new RequestTimeoutException("Request deadline exceeded while waiting for Gmail quota");
+            }
+            budget.available = balance;
+            return waitNanos;
+        } finally {
+            budget.lock.unlock();
+        }
+    }
+    
+    private Budget newBudget(String accountId) {
+        Budget budget = new Budget(gmailConfig.getQuota().getBurst(), System.nanoTime());
+        Gauge.builder("gmail.quota.available", budget, Budget::availableUnits)
+                .tag("account", accountId)
+                .description("Quota units currently available (negative when calls are queued)")
+                .register(meterRegistry);
+        return budget;
+    }
+}
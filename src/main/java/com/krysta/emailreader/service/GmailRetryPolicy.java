@@ -0,0 +1,162 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.stereotype.Component;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.krysta.emailreader.config.GmailConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decides whether and when a failed Gmail call is retried.
+ * Backoff is exponential with full jitter, a Retry-After header from Gmail
+ * takes precedence, and all retries draw from one shared budget so that
+ * retries cannot multiply the load on Gmail during an outage.
+ */
+@Component
+public class GmailRetryPolicy {
+    
+    private final GmailConfig gmailConfig;
+    private final Counter retryCounter;
+    private final Counter budgetExhaustedCounter;
+    private final Object budgetLock = new Object();
+    
+    private double budget;
+    private long budgetUpdatedAtNanos = System.nanoTime();
+    
+    public GmailRetryPolicy(GmailConfig gmailConfig, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        this.budget = gmailConfig.getRetry().getBudgetCapacity();
+        this.retryCounter = Counter.builder("gmail.retries")
+                .tag("result", "retried")
+                .description("Failed Gmail calls by retry decision")
+                .register(meterRegistry);
+        this.budgetExhaustedCounter = Counter.builder("gmail.retries")
+                .tag("result", "budget_exhausted")
+                .description("Failed Gmail calls by retry decision")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Records a first attempt, which earns a fraction of a retry.
+     */
+    public void recordCall() {
+        GmailConfig.Retry settings = gmailConfig.getRetry();
+        synchronized (budgetLock) {
+            budget = Math.min(settings.getBudgetCapacity(), budget + settings.getBudgetRatio());
+        }
+    }
+    
+    /**
+     * Returns how long to wait before retrying the failed attempt, or null if
+     * the call should not be retried.
+     *
+     * @param attempt the attempt that failed, starting at 1
+     */
+    public Duration nextDelay(int attempt, IOException failure) {
+        GmailConfig.Retry settings = gmailConfig.getRetry();
+        if (!settings.isEnabled() || attempt >= settings.getMaxAttempts() || !isRetryable(failure)) {
+            return null;
+        }
+        
+        Duration retryAfter = retryAfter(failure);
+        if (retryAfter != null && retryAfter.compareTo(settings.getMaxBackoff()) > 0) {
+            return null;
+        }
+        if (!withdrawRetry(settings)) {
+            budgetExhaustedCounter.increment();
+            return null;
+        }
+        retryCounter.increment();
+        
+        if (retryAfter != null) {
+            return retryAfter;
+        }
+        long ceilingMillis = Math.min(settings.getMaxBackoff().toMillis(),
+                settings.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceilingMillis + 1));
+    }
+    
+    /**
+     * Gmail signals rate limiting with 429, or with 403 and a rate limit reason.
+     */
+    public boolean isRateLimited(IOException failure) {
+        return isRateLimitResponse(failure);
+    }
+    
+    static boolean isRateLimitResponse(IOException failure) {
+        if (!(failure instanceof HttpResponseException response)) {
+            return false;
+        }
+        if (response.getStatusCode() == 429) {
+            return true;
+        }
+        if (response.getStatusCode() != 403 || !(failure instanceof GoogleJsonResponseException json)
+                || json.getDetails() == null || json.getDetails().getErrors() == null) {
+            return false;
+        }
+        return json.getDetails().getErrors().stream()
+                .anyMatch(error -> "rateLimitExceeded".equals(error.getReason())
+                        || "userRateLimitExceeded".equals(error.getReason()));
+    }
+    
+    /**
+     * Whether the failure is transient: rate limits, server errors and network errors.
+     */
+    public boolean isRetryable(IOException failure) {
+        if (failure instanceof HttpResponseException response) {
+            int status = response.getStatusCode();
+            return status == 500 || status == 502 || status == 503 || status == 504 || isRateLimited(failure);
+        }
+        return failure instanceof SocketTimeoutException || failure instanceof SocketException;
+    }
+    
+    /**
+     * Reads Retry-After as delta seconds or an HTTP date.
+     */
+    private Duration retryAfter(IOException failure) {
+        if (!(failure instanceof HttpResponseException response) || response.getHeaders() == null) {
+            return null;
+        }
+        String value = response.getHeaders().getFirstHeaderStringValue("Retry-After");
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+    
+    private boolean withdrawRetry(GmailConfig.Retry settings) {
+        synchronized (budgetLock) {
+            long now = System.nanoTime();
+            double elapsedSeconds = (now - budgetUpdatedAtNanos) / 1e9;
+            budget = Math.min(settings.getBudgetCapacity(), budget + elapsedSeconds * settings.getMinRetriesPerSecond());
+            budgetUpdatedAtNanos = now;
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+            return true;
+        }
+    }
+}
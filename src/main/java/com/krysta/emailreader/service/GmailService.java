@@ -3,12 +3,25 @@ package com.krysta.emailreader.service;
 import java.awt.Desktop;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
+import java.math.BigInteger;
 import java.net.URI;
 import java.nio.file.Files;
-import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,18 +31,33 @@ import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.gmail.Gmail;
-import com.google.api.services.gmail.model.ListMessagesResponse;
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.ListHistoryResponse;
+import com.google.api.services.gmail.model.Message;
+import com.google.api.services.gmail.model.MessagePartHeader;
+import com.google.api.services.gmail.model.Profile;
 import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
 import com.krysta.emailreader.exception.GmailApiException;
-import com.krysta.emailreader.security.EncryptedDataStoreFactory;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
 import com.krysta.emailreader.util.LogSanitizer;
 
+import jakarta.annotation.PreDestroy;
+
 /**
  * Service class for Gmail API integration.
  * Handles OAuth 2.0 authentication and email counting operations.
@@ -40,22 +68,74 @@ public class GmailService {
     private static final Logger logger = LoggerFactory.getLogger(GmailService.class);
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
     private static final String USER_ID = "me";
+    private static final String CREDENTIAL_USER = "user";
+    private static final long MIN_TOKEN_VALIDITY_SECONDS = 60;
+    private static final long MAX_PAGE_SIZE = 500;
+    static final String LIST_FIELDS = "nextPageToken,messages/id";
+    private static final String WINDOW_PROBE_FIELDS = LIST_FIELDS + ",resultSizeEstimate";
+    private static final List<String> HISTORY_TYPES =
+            List.of("messageAdded", "messageDeleted", "labelAdded", "labelRemoved");
+    private static final String HISTORY_FIELDS = "historyId,nextPageToken,history(id,"
+            + "messagesAdded/message(id,labelIds),messagesDeleted/message(id,labelIds),"
+            + "labelsAdded(labelIds,message(id,labelIds)),labelsRemoved(labelIds,message(id,labelIds)))";
+    
+    /** Deadline of the call being executed on this thread, used to cap read timeouts */
+    private static final ThreadLocal<RequestDeadline> CURRENT_DEADLINE = new ThreadLocal<>();
     
     private final GmailConfig gmailConfig;
-    private final CredentialsStorageService credentialsStorageService;
+    private final AuthorizationFlowCache authorizationFlowCache;
+    private final GmailClientHolder gmailClientHolder;
+    private final TokenRefreshService tokenRefreshService;
+    private final GmailQuotaScheduler quotaScheduler;
+    private final GmailRetryPolicy retryPolicy;
+    private final GmailConcurrencyLimiter concurrencyLimiter;
+    private final GmailCircuitBreaker circuitBreaker;
+    private final ExecutorService partitionExecutor;
     
     public GmailService(GmailConfig gmailConfig, 
-                        CredentialsStorageService credentialsStorageService) {
+                        AuthorizationFlowCache authorizationFlowCache,
+                        GmailClientHolder gmailClientHolder,
+                        TokenRefreshService tokenRefreshService,
+                        GmailQuotaScheduler quotaScheduler,
+                        GmailRetryPolicy retryPolicy,
+                        GmailConcurrencyLimiter concurrencyLimiter,
+                        GmailCircuitBreaker circuitBreaker) {
         this.gmailConfig = gmailConfig;
-        this.credentialsStorageService = credentialsStorageService;
+        this.authorizationFlowCache = authorizationFlowCache;
+        this.gmailClientHolder = gmailClientHolder;
+        this.tokenRefreshService = tokenRefreshService;
+        this.quotaScheduler = quotaScheduler;
+        this.retryPolicy = retryPolicy;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.partitionExecutor = createPartitionExecutor(gmailConfig.getPartitioning());
+    }
+    
+    private static ExecutorService createPartitionExecutor(GmailConfig.Partitioning settings) {
+        if (!settings.isEnabled()) {
+            return null;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, settings.getParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "gmail-partition-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (partitionExecutor != null) {
+            partitionExecutor.shutdownNow();
+        }
     }
     
     /**
      * Creates and returns an authorized Credential object.
      * Checks for in-memory credentials first, then falls back to file.
      */
-    private Credential getCredentials(final NetHttpTransport httpTransport) throws IOException {
-        GoogleAuthorizationCodeFlow flow = buildAuthorizationFlow(httpTransport);
+    private Credential getCredentials() throws IOException {
+        GoogleAuthorizationCodeFlow flow = authorizationFlowCache.getFlow();
         Credential credential = loadExistingCredential(flow);
         
         if (credential == null || credential.getAccessToken() == null || !refreshTokenIfNeeded(credential)) {
@@ -65,48 +145,12 @@ public class GmailService {
         return credential;
     }
     
-    /**
-     * Loads client secrets from storage or file.
-     */
-    private GoogleClientSecrets loadClientSecrets() throws IOException {
-        String credentialsJson = credentialsStorageService.getCredentials();
-        if (credentialsJson != null && !credentialsJson.isEmpty()) {
-            logger.info("Using credentials from in-memory storage");
-            return GoogleClientSecrets.load(JSON_FACTORY, new StringReader(credentialsJson));
-        }
-        
-        logger.info("Using credentials from file: {}", gmailConfig.getCredentialsFile());
-        InputStream in = GmailService.class.getResourceAsStream(gmailConfig.getCredentialsFile());
-        if (in == null) {
-            throw new GmailApiException(
-                "Credentials not found. Please provide credentials via /api/v1/emails/credentials endpoint " +
-                "or ensure credentials.json file exists at: " + gmailConfig.getCredentialsFile());
-        }
-        return GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
-    }
-    
-    /**
-     * Builds the Google Authorization Code Flow.
-     */
-    private GoogleAuthorizationCodeFlow buildAuthorizationFlow(final NetHttpTransport httpTransport) throws IOException {
-        File tokensDir = new File(gmailConfig.getTokensDirectory());
-        if (!tokensDir.exists()) {
-            tokensDir.mkdirs();
-        }
-        
-        return new GoogleAuthorizationCodeFlow.Builder(
-                httpTransport, JSON_FACTORY, loadClientSecrets(), gmailConfig.getScopes())
-                .setDataStoreFactory(new EncryptedDataStoreFactory(tokensDir))
-                .setAccessType("offline")
-                .build();
-    }
-    
     /**
      * Loads existing credential, handling decryption failures.
      */
     private Credential loadExistingCredential(GoogleAuthorizationCodeFlow flow) {
         try {
-            return flow.loadCredential("user");
+            return flow.loadCredential(CREDENTIAL_USER);
         } catch (IOException e) {
             String errorMsg = e.getMessage();
             if (errorMsg != null && (errorMsg.contains("decrypt") || errorMsg.contains("ArrayIndexOutOfBoundsException"))) {
@@ -123,7 +167,7 @@ public class GmailService {
      */
     private void deleteCorruptedTokenFile() {
         try {
-            File tokenFile = new File(gmailConfig.getTokensDirectory(), "user");
+            File tokenFile = new File(gmailConfig.getTokensDirectory(), CREDENTIAL_USER);
             if (tokenFile.exists()) {
                 Files.delete(tokenFile.toPath());
                 logger.info("Deleted corrupted token file");
@@ -135,10 +179,11 @@ public class GmailService {
     
     /**
      * Refreshes token if expired or about to expire. Returns false if OAuth is needed.
+     * Tokens with more than a minute left are renewed by {@link TokenRefreshService}.
      */
     private boolean refreshTokenIfNeeded(Credential credential) {
         Long expiresIn = credential.getExpiresInSeconds();
-        if (expiresIn != null && expiresIn > 300) {
+        if (expiresIn != null && expiresIn > MIN_TOKEN_VALIDITY_SECONDS) {
             logger.debug("Token is valid (expires in {} seconds)", expiresIn);
             return true;
         }
@@ -178,7 +223,7 @@ public class GmailService {
                         flow, receiver, this::openBrowser);
                 
                 logger.info("Waiting for OAuth authorization in browser (port {})...", port);
-                Credential credential = app.authorize("user");
+                Credential credential = app.authorize(CREDENTIAL_USER);
                 
                 if (credential == null || credential.getAccessToken() == null) {
                     throw new GmailApiException("OAuth authorization failed. Please ensure:\n" +
@@ -197,7 +242,7 @@ public class GmailService {
                 }
                 
                 return credential;
-                
+            
             } catch (java.net.BindException e) {
                 handlePortConflict(e, attempt, port, receiver);
                 port++;
@@ -274,31 +319,243 @@ public class GmailService {
     }
     
     /**
-     * Initializes and returns a Gmail service instance.
+     * Returns the shared Gmail client, building it on first use or after credentials change.
      */
     private Gmail getGmailClient() {
+        return gmailClientHolder.getClient(this::buildGmailClient);
+    }
+    
+    /**
+     * Builds a Gmail service instance on top of the given transport.
+     */
+    private Gmail buildGmailClient(final HttpTransport httpTransport) throws IOException {
+        Credential credential = getCredentials();
+        GmailConfig.Transport transportSettings = gmailConfig.getTransport();
+        int connectTimeout = (int) transportSettings.getConnectTimeout().toMillis();
+        int readTimeout = (int) transportSettings.getReadTimeout().toMillis();
+        
+        HttpRequestInitializer authorizer = credential;
+        if (gmailConfig.getTokenRefresh().isEnabled()) {
+            tokenRefreshService.register(CREDENTIAL_USER, credential);
+            authorizer = this::authorizeWithCurrentToken;
+        }
+        
+        return gmailClientBuilder(httpTransport, authorizer, connectTimeout, readTimeout,
+                gmailConfig.getApplicationName()).build();
+    }
+    
+    /**
+     * Client builder whose requests are authorized, use the given timeouts
+     * and always ask for gzip encoded responses. Google also requires "gzip"
+     * in the user agent, which the HTTP client appends when executing.
+     */
+    static Gmail.Builder gmailClientBuilder(HttpTransport httpTransport, HttpRequestInitializer auth,
+                                            int connectTimeout, int readTimeout, String applicationName) {
+        return new Gmail.Builder(httpTransport, JSON_FACTORY, request -> {
+                    auth.initialize(request);
+                    request.setConnectTimeout(connectTimeout);
+                    request.setReadTimeout(cappedReadTimeout(readTimeout));
+                    request.getHeaders().setAcceptEncoding("gzip");
+                })
+                .setApplicationName(applicationName);
+    }
+    
+    /**
+     * Never waits for a response past the deadline of the current call.
+     */
+    private static int cappedReadTimeout(int readTimeout) {
+        RequestDeadline deadline = CURRENT_DEADLINE.get();
+        if (deadline == null) {
+            return readTimeout;
+        }
+        long remainingMillis = deadline.remaining().toMillis();
+        return (int) Math.max(1, Math.min(readTimeout, remainingMillis));
+    }
+    
+    /**
+     * Authorizes a request with the token kept fresh by the background refresher.
+     * A 401 triggers one shared refresh and a single retry.
+     */
+    private void authorizeWithCurrentToken(HttpRequest request) {
+        request.setInterceptor(r -> r.getHeaders()
+                .setAuthorization("Bearer " + tokenRefreshService.getAccessToken(CREDENTIAL_USER)));
+        request.setUnsuccessfulResponseHandler((r, response, supportsRetry) ->
+                response.getStatusCode() == 401 && supportsRetry
+                        && tokenRefreshService.refresh(CREDENTIAL_USER).join());
+    }
+    
+    /**
+     * Executes the call and reads the page with the streaming parser instead
+     * of binding it to {@code ListMessagesResponse}.
+     */
+    static GmailListPage executeListPage(Gmail.Users.Messages.List request) throws IOException {
+        return executeListPage(request, null);
+    }
+    
+    /**
+     * Same as {@link #executeListPage(Gmail.Users.Messages.List)}, also handing
+     * each message id on the page to {@code ids} if it is not null.
+     */
+    static GmailListPage executeListPage(Gmail.Users.Messages.List request, Consumer<String> ids)
+            throws IOException {
+        HttpResponse response = request.executeUnparsed();
         try {
-            final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-            Credential credential = getCredentials(httpTransport);
-            
-            return new Gmail.Builder(httpTransport, JSON_FACTORY, credential)
-                    .setApplicationName(gmailConfig.getApplicationName())
-                    .build();
-        } catch (GeneralSecurityException | IOException e) {
-            logger.error("Failed to initialize Gmail client", e);
-            throw new GmailApiException("Failed to initialize Gmail client: " + e.getMessage(), e);
+            return GmailListPage.parse(response.getContent(), ids);
+        } finally {
+            // Closes the content so the pooled connection is released
+            response.ignore();
         }
     }
     
+    /**
+     * Executes one messages.list call within the account's quota budget and
+     * the adaptive concurrency limit.
+     */
+    private GmailListPage listPage(Gmail.Users.Messages.List request, RequestDeadline deadline)
+            throws IOException {
+        return listPage(request, null, deadline);
+    }
+    
+    private GmailListPage listPage(Gmail.Users.Messages.List request, Consumer<String> ids,
+                                   RequestDeadline deadline) throws IOException {
+        return execute(gmailConfig.getQuota().getListCost(), () -> executeListPage(request, ids), deadline);
+    }
+    
+    /**
+     * A single Gmail API call.
+     */
+    @FunctionalInterface
+    private interface GmailCall<T> {
+        T execute() throws IOException;
+    }
+    
+    /**
+     * Executes one Gmail call within the account's quota budget and the
+     * adaptive concurrency limit. Each attempt is one call for the circuit
+     * breaker, timed on its own rather than as part of the whole scan.
+     * Transient failures are retried on the same request, so a scan resumes
+     * from the same page token and keeps the pages counted so far, unless the
+     * backoff would run past the deadline. A rate limit reported by Gmail also
+     * pauses the account's quota budget.
+     */
+    private <T> T execute(int cost, GmailCall<T> call, RequestDeadline deadline) throws IOException {
+        GmailConfig.Quota quota = gmailConfig.getQuota();
+        retryPolicy.recordCall();
+        for (int attempt = 1; ; attempt++) {
+            quotaScheduler.acquire(CREDENTIAL_USER, cost, deadline);
+            GmailConcurrencyLimiter.Listener slot = concurrencyLimiter.acquire(deadline);
+            CURRENT_DEADLINE.set(deadline);
+            try {
+                deadline.check();
+                T response = executeGuarded(call, deadline);
+                slot.onSuccess();
+                return response;
+            } catch (IOException e) {
+                if (retryPolicy.isRetryable(e)) {
+                    slot.onDropped();
+                } else {
+                    slot.onIgnore();
+                }
+                if (retryPolicy.isRateLimited(e)) {
+                    quotaScheduler.penalize(CREDENTIAL_USER, quota.getThrottlePause());
+                }
+                Duration delay = retryPolicy.nextDelay(attempt, e);
+                if (delay == null || Thread.currentThread().isInterrupted()
+                        || delay.compareTo(deadline.remaining()) >= 0) {
+                    throw e;
+                }
+                logger.debug("Gmail call failed (attempt {}), retrying in {} ms: {}",
+                        attempt, delay.toMillis(), e.getMessage());
+                sleep(delay);
+            } catch (RuntimeException e) {
+                slot.onIgnore();
+                throw e;
+            } finally {
+                CURRENT_DEADLINE.remove();
+            }
+        }
+    }
+    
+    /**
+     * Runs the call if the circuit breaker permits it and records the outcome.
+     * 
+     * @throws ServiceUnavailableException if the circuit is open
+     */
+    private <T> T executeGuarded(GmailCall<T> call, RequestDeadline deadline) throws IOException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ServiceUnavailableException("Gmail is temporarily unavailable, please retry later",
+                    circuitBreaker.remainingOpenTime());
+        }
+        long start = System.nanoTime();
+        try {
+            T response = call.execute();
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            // A read cut off by the deadline's timeout cap is a slow call, not a local error
+            circuitBreaker.onError(System.nanoTime() - start,
+                    deadline.isExpired() ? new RequestTimeoutException("Request deadline exceeded") : e);
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onError(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+    
+    private void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GmailApiException("Request was cancelled");
+        }
+    }
+    
+    /**
+     * Counts the number of emails from a specific sender without a deadline.
+     */
+    public long countEmailsFromSender(EmailAddress sender) {
+        return countEmailsFromSender(sender, RequestDeadline.none());
+    }
+    
     /**
      * Counts the number of emails from a specific sender.
      * Handles pagination for large result sets.
+     * The query uses the canonical form of the address. The deadline is
+     * checked before every page and caps the read timeout, so a cancelled or
+     * expired request stops within one page.
+     */
+    public long countEmailsFromSender(EmailAddress sender, RequestDeadline deadline) {
+        return countEmailsFromSender(sender, Long.MAX_VALUE, deadline);
+    }
+    
+    /**
+     * Counts the emails from a specific sender, but stops paginating once
+     * {@code limit} messages have been found. Pages are sized to what is still
+     * missing, so an existence check fetches a single id.
+     * 
+     * @return the number of emails found, at most {@code limit}; less than
+     *         {@code limit} only if that is the exact count
      */
-    public long countEmailsFromSender(String senderEmail) {
-        logger.debug("Counting emails from sender: {}", LogSanitizer.maskEmail(senderEmail));
+    public long countEmailsFromSender(EmailAddress sender, long limit, RequestDeadline deadline) {
+        return countEmailsFromSender(sender, limit, null, deadline);
+    }
+    
+    /**
+     * Counts the emails from a specific sender like
+     * {@link #countEmailsFromSender(EmailAddress, long, RequestDeadline)} and
+     * hands every matched message id to {@code ids}. With partitioning the ids
+     * arrive from several threads, and some may arrive twice.
+     */
+    public long countEmailsFromSender(EmailAddress sender, long limit, Consumer<String> ids,
+                                      RequestDeadline deadline) {
+        logger.debug("Counting emails from sender: {}", LogSanitizer.maskEmail(sender));
         
         try {
             Gmail service = getGmailClient();
+            if (limit == Long.MAX_VALUE && partitionExecutor != null) {
+                return countPartitioned(service, sender, ids, deadline);
+            }
             long totalCount = 0;
             String pageToken = null;
             
@@ -306,30 +563,405 @@ public class GmailService {
                 if (Thread.currentThread().isInterrupted()) {
                     throw new GmailApiException("Request was cancelled");
                 }
+                deadline.check();
                 
-                ListMessagesResponse response = service.users().messages().list(USER_ID)
-                        .setQ("from:" + senderEmail)
-                        .setMaxResults(500L)
-                        .setPageToken(pageToken)
-                        .execute();
+                GmailListPage response = listPage(
+                        newListRequest(service, sender, Math.min(MAX_PAGE_SIZE, limit - totalCount), pageToken),
+                        ids, deadline);
                 
-                if (response.getMessages() != null) {
-                    totalCount += response.getMessages().size();
+                totalCount += response.messageCount();
+                pageToken = response.nextPageToken();
+            } while (pageToken != null && totalCount < limit);
+            
+            logger.info("Total emails from {}: {}{}", LogSanitizer.maskEmail(sender), totalCount,
+                    totalCount < limit ? "" : " (limit reached)");
+            return Math.min(totalCount, limit);
+        
+        } catch (IOException e) {
+            throw translate(e, sender, deadline);
+        }
+    }
+    
+    /**
+     * Counts a sender by scanning disjoint date windows in parallel, starting
+     * with one window over the whole mailbox. The outermost windows are open
+     * ended, so messages dated before the configured earliest date or in the
+     * future are counted too. A window with more than one page
+     * is split according to Gmail's estimate so each part takes about
+     * {@code pagesPerWindow} pages; windows too short to split are paginated.
+     * The calling thread only hands out windows and sums the results.
+     */
+    private long countPartitioned(Gmail service, EmailAddress sender, Consumer<String> ids,
+                                  RequestDeadline deadline) throws IOException {
+        GmailConfig.Partitioning settings = gmailConfig.getPartitioning();
+        SearchWindow mailbox = SearchWindow.unbounded(settings.getEarliest().getEpochSecond(),
+                Instant.now().plus(Duration.ofDays(1)).getEpochSecond());
+        
+        CompletionService<WindowCount> completion = new ExecutorCompletionService<>(partitionExecutor);
+        List<Future<WindowCount>> submitted = new ArrayList<>();
+        submitted.add(completion.submit(() -> countWindow(service, sender, mailbox, ids, deadline)));
+        int outstanding = 1;
+        long totalCount = 0;
+        
+        try {
+            while (outstanding > 0) {
+                deadline.check();
+                long waitNanos = Math.min(deadline.remaining().toNanos(), TimeUnit.SECONDS.toNanos(1));
+                Future<WindowCount> done = completion.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    continue;
+                }
+                outstanding--;
+                WindowCount result = done.get();
+                totalCount += result.count();
+                for (SearchWindow window : result.splits()) {
+                    submitted.add(completion.submit(() -> countWindow(service, sender, window, ids, deadline)));
+                    outstanding++;
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GmailApiException("Request was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new GmailApiException("Failed to count emails from sender", e.getCause());
+        } finally {
+            // Stop the remaining windows once the count has failed
+            submitted.forEach(future -> future.cancel(true));
+        }
+        
+        logger.info("Total emails from {}: {} ({} windows)", LogSanitizer.maskEmail(sender), totalCount,
+                submitted.size());
+        return totalCount;
+    }
+    
+    /**
+     * Count of one window, or the windows it was split into instead.
+     */
+    private record WindowCount(long count, List<SearchWindow> splits) {
+    }
+    
+    private WindowCount countWindow(Gmail service, EmailAddress sender, SearchWindow window, Consumer<String> ids,
+                                    RequestDeadline deadline) throws IOException {
+        GmailConfig.Partitioning settings = gmailConfig.getPartitioning();
+        deadline.check();
+        // Ids of a probe that is then split are seen again in the parts
+        GmailListPage page = listPage(newListRequest(service, sender, window, MAX_PAGE_SIZE, null)
+                .setFields(WINDOW_PROBE_FIELDS), ids, deadline);
+        if (page.nextPageToken() == null) {
+            return new WindowCount(page.messageCount(), List.of());
+        }
+        
+        // Dense window: split it by the estimate (the probe page is dropped)
+        long estimate = Math.max(page.resultSizeEstimate() != null ? page.resultSizeEstimate() : 0, 2 * MAX_PAGE_SIZE);
+        long perWindow = Math.max(1, (long) settings.getPagesPerWindow() * MAX_PAGE_SIZE);
+        int parts = (int) Math.min(settings.getMaxSplit(), Math.max(2, (estimate + perWindow - 1) / perWindow));
+        List<SearchWindow> splits = window.split(parts, settings.getMinWindow().toSeconds());
+        if (splits.size() > 1) {
+            return new WindowCount(0, splits);
+        }
+        
+        long count = page.messageCount();
+        String pageToken = page.nextPageToken();
+        while (pageToken != null) {
+            deadline.check();
+            page = listPage(newListRequest(service, sender, window, MAX_PAGE_SIZE, pageToken), ids, deadline);
+            count += page.messageCount();
+            pageToken = page.nextPageToken();
+        }
+        return new WindowCount(count, List.of());
+    }
+    
+    /**
+     * Builds one page of the sender query. Only the message ids and the next
+     * page token are requested, which drops threadId and resultSizeEstimate
+     * from every page.
+     */
+    static Gmail.Users.Messages.List newListRequest(Gmail service, EmailAddress sender, long maxResults,
+                                                    String pageToken) throws IOException {
+        return newListRequest(service, sender, null, maxResults, pageToken);
+    }
+    
+    /**
+     * Builds one page of the sender query restricted to a date window.
+     */
+    static Gmail.Users.Messages.List newListRequest(Gmail service, EmailAddress sender, SearchWindow window,
+                                                    long maxResults, String pageToken) throws IOException {
+        String bounds = window != null ? window.query() : "";
+        String query = "from:" + sender.canonical() + (bounds.isEmpty() ? "" : " " + bounds);
+        return service.users().messages().list(USER_ID)
+                .setQ(query)
+                .setMaxResults(maxResults)
+                .setPageToken(pageToken)
+                .setFields(LIST_FIELDS);
+    }
+    
+    /**
+     * Returns Gmail's estimate of the number of emails from a specific sender
+     * from a single messages.list call. The estimate can be far off for large
+     * result sets but costs one page instead of all of them.
+     */
+    public long estimateEmailsFromSender(EmailAddress sender, RequestDeadline deadline) {
+        logger.debug("Estimating emails from sender: {}", LogSanitizer.maskEmail(sender));
+        
+        try {
+            Gmail service = getGmailClient();
+            deadline.check();
+            
+            // Only the estimate is needed, so skip the message ids
+            GmailListPage response = listPage(service.users().messages().list(USER_ID)
+                    .setQ("from:" + sender.canonical())
+                    .setMaxResults(1L)
+                    .setFields("resultSizeEstimate"), deadline);
+            
+            long estimate = response.resultSizeEstimate() != null ? response.resultSizeEstimate() : 0L;
+            logger.info("Estimated emails from {}: {}", LogSanitizer.maskEmail(sender), estimate);
+            return estimate;
+        
+        } catch (IOException e) {
+            throw translate(e, sender, deadline);
+        }
+    }
+    
+    /**
+     * Returns the mailbox's current history id, the point from which
+     * {@link #listHistory} reports later changes.
+     */
+    public BigInteger currentHistoryId(RequestDeadline deadline) {
+        try {
+            Gmail service = getGmailClient();
+            Profile profile = execute(gmailConfig.getQuota().getProfileCost(),
+                    () -> service.users().getProfile(USER_ID).setFields("historyId").execute(), deadline);
+            return profile.getHistoryId();
+        } catch (IOException e) {
+            throw translate(e, null, deadline);
+        }
+    }
+    
+    /**
+     * Lists the changes since {@code startHistoryId} that can change a
+     * {@code from:} count: messages added or deleted, and messages moved into
+     * or out of Trash and Spam, which searches leave out.
+     * 
+     * @param maxChanges stop and report the history as incomplete after this many changes
+     * @return the changes in history order; incomplete if Gmail no longer has
+     *         history that old or there were more than {@code maxChanges}
+     */
+    public MailboxHistory listHistory(BigInteger startHistoryId, int maxChanges, RequestDeadline deadline) {
+        try {
+            Gmail service = getGmailClient();
+            List<MailboxHistory.MessageChange> changes = new ArrayList<>();
+            BigInteger historyId = startHistoryId;
+            String pageToken = null;
+            
+            do {
+                deadline.check();
+                Gmail.Users.History.List request = service.users().history().list(USER_ID)
+                        .setStartHistoryId(startHistoryId)
+                        .setHistoryTypes(HISTORY_TYPES)
+                        .setMaxResults(MAX_PAGE_SIZE)
+                        .setPageToken(pageToken)
+                        .setFields(HISTORY_FIELDS);
+                ListHistoryResponse response = execute(gmailConfig.getQuota().getHistoryCost(),
+                        request::execute, deadline);
                 
+                if (response.getHistory() != null) {
+                    for (History record : response.getHistory()) {
+                        MailboxHistory.addChanges(record, changes);
+                    }
+                }
+                if (changes.size() > maxChanges) {
+                    logger.info("More than {} mailbox changes since history id {}", maxChanges, startHistoryId);
+                    return MailboxHistory.incomplete(startHistoryId);
+                }
+                if (response.getHistoryId() != null) {
+                    historyId = response.getHistoryId();
+                }
                 pageToken = response.getNextPageToken();
             } while (pageToken != null);
             
-            logger.info("Total emails from {}: {}", LogSanitizer.maskEmail(senderEmail), totalCount);
-            return totalCount;
+            logger.debug("{} mailbox changes since history id {}", changes.size(), startHistoryId);
+            return new MailboxHistory(historyId, changes, true);
             
+        } catch (GoogleJsonResponseException e) {
+            if (e.getStatusCode() == 404) {
+                // Gmail keeps history for about a week; older ids are rejected
+                logger.info("History id {} has expired", startHistoryId);
+                return MailboxHistory.incomplete(startHistoryId);
+            }
+            throw translate(e, null, deadline);
         } catch (IOException e) {
-            if (isClientDisconnection(e)) {
-                throw new GmailApiException("Request was cancelled");
+            throw translate(e, null, deadline);
+        }
+    }
+    
+    /**
+     * Reads the From headers of up to 100 messages in one batch call. Items
+     * that fail transiently are retried as a smaller batch with the usual
+     * backoff; items that still fail are reported as failed.
+     */
+    public MessageSenders fromHeaders(List<String> messageIds, RequestDeadline deadline) {
+        try {
+            Gmail service = getGmailClient();
+            Map<String, String> fromById = new HashMap<>();
+            List<String> pending = messageIds;
+            int failed = 0;
+            
+            for (int attempt = 1; !pending.isEmpty(); attempt++) {
+                List<String> batchIds = pending;
+                List<String> retry = new ArrayList<>();
+                AtomicInteger rejected = new AtomicInteger();
+                AtomicReference<HttpResponseException> lastFailure = new AtomicReference<>();
+                execute(gmailConfig.getQuota().getMessageCost() * batchIds.size(), () -> {
+                    retry.clear();
+                    rejected.set(0);
+                    BatchRequest batch = service.batch();
+                    for (String id : batchIds) {
+                        newFromRequest(service, id).queue(batch, new JsonBatchCallback<Message>() {
+                            @Override
+                            public void onSuccess(Message message, HttpHeaders headers) {
+                                fromById.put(id, fromHeader(message));
+                            }
+                            
+                            @Override
+                            public void onFailure(GoogleJsonError error, HttpHeaders headers) {
+                                if (error.getCode() == 404) {
+                                    return;
+                                }
+                                HttpResponseException failure = new HttpResponseException.Builder(
+                                        error.getCode(), error.getMessage(), headers).build();
+                                if (retryPolicy.isRetryable(failure)) {
+                                    retry.add(id);
+                                    lastFailure.set(failure);
+                                } else {
+                                    rejected.incrementAndGet();
+                                }
+                            }
+                        });
+                    }
+                    batch.execute();
+                    return null;
+                }, deadline);
+                failed += rejected.get();
+                
+                if (retry.isEmpty()) {
+                    break;
+                }
+                if (retryPolicy.isRateLimited(lastFailure.get())) {
+                    quotaScheduler.penalize(CREDENTIAL_USER, gmailConfig.getQuota().getThrottlePause());
+                }
+                Duration delay = retryPolicy.nextDelay(attempt, lastFailure.get());
+                if (delay == null || delay.compareTo(deadline.remaining()) >= 0) {
+                    failed += retry.size();
+                    break;
+                }
+                sleep(delay);
+                pending = List.copyOf(retry);
             }
-            logger.error("Gmail API error while counting emails from {}", LogSanitizer.maskEmail(senderEmail), e);
-            throw new GmailApiException("Failed to count emails from sender", e);
+            return new MessageSenders(fromById, failed);
+        } catch (IOException e) {
+            throw translate(e, null, deadline);
+        }
+    }
+    
+    /**
+     * Lists one page of all message ids in the mailbox, Trash and Spam excluded.
+     * 
+     * @param ids receives the ids on the page
+     */
+    public GmailListPage listMessageIds(String pageToken, Consumer<String> ids, RequestDeadline deadline) {
+        try {
+            Gmail service = getGmailClient();
+            Gmail.Users.Messages.List request = service.users().messages().list(USER_ID)
+                    .setMaxResults(MAX_PAGE_SIZE)
+                    .setPageToken(pageToken)
+                    .setFields(LIST_FIELDS);
+            return execute(gmailConfig.getQuota().getListCost(), () -> {
+                HttpResponse response = request.executeUnparsed();
+                try {
+                    return GmailListPage.parse(response.getContent(), ids);
+                } finally {
+                    response.ignore();
+                }
+            }, deadline);
+        } catch (IOException e) {
+            throw translate(e, null, deadline);
+        }
+    }
+    
+    /**
+     * Lists every message carrying the label, Trash and Spam excluded.
+     * 
+     * @param labelId the label id, e.g. INBOX or Label_12
+     * @param ids     receives the id of every message
+     * @return the number of messages
+     */
+    public long listLabelMessageIds(String labelId, Consumer<String> ids, RequestDeadline deadline) {
+        try {
+            Gmail service = getGmailClient();
+            long totalCount = 0;
+            String pageToken = null;
+            do {
+                deadline.check();
+                GmailListPage page = listPage(service.users().messages().list(USER_ID)
+                        .setLabelIds(List.of(labelId))
+                        .setMaxResults(MAX_PAGE_SIZE)
+                        .setPageToken(pageToken)
+                        .setFields(LIST_FIELDS), ids, deadline);
+                totalCount += page.messageCount();
+                pageToken = page.nextPageToken();
+            } while (pageToken != null);
+            logger.debug("Listed {} messages with label {}", totalCount, labelId);
+            return totalCount;
+        } catch (IOException e) {
+            throw translate(e, null, deadline);
+        }
+    }
+    
+    private static Gmail.Users.Messages.Get newFromRequest(Gmail service, String messageId) throws IOException {
+        return service.users().messages().get(USER_ID, messageId)
+                .setFormat("metadata")
+                .setMetadataHeaders(List.of("From"))
+                .setFields("payload/headers");
+    }
+    
+    private static String fromHeader(Message message) {
+        if (message.getPayload() == null || message.getPayload().getHeaders() == null) {
+            return "";
+        }
+        for (MessagePartHeader header : message.getPayload().getHeaders()) {
+            if ("From".equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return "";
+    }
+    
+    /**
+     * Maps a failed Gmail call to the exception reported to callers.
+     */
+    private RuntimeException translate(IOException e, EmailAddress sender, RequestDeadline deadline) {
+        if (e instanceof GoogleJsonResponseException jsonError && jsonError.getStatusCode() == 401) {
+            // Stored token is no longer accepted; rebuild (and re-authorize) on next call
+            gmailClientHolder.invalidate();
+        }
+        if (isClientDisconnection(e) || deadline.isCancelled()) {
+            return new GmailApiException("Request was cancelled");
+        }
+        if (deadline.isExpired()) {
+            return new RequestTimeoutException("Request deadline exceeded while counting emails");
+        }
+        if (sender == null) {
+            logger.error("Gmail API error while reading the mailbox", e);
+            return new GmailApiException("Failed to read the mailbox", e);
         }
+        logger.error("Gmail API error while counting emails from {}", LogSanitizer.maskEmail(sender), e);
+        return new GmailApiException("Failed to count emails from sender", e);
     }
     
     /**
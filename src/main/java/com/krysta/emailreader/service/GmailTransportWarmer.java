@@ -0,0 +1,54 @@
+package com.krysta.emailreader.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.krysta.emailreader.config.GmailConfig;
+
+/**
+ * Opens a connection to the Gmail API at startup so the first count does not
+ * pay for DNS, TCP and TLS setup. Enabled with gmail.transport.prewarm.
+ */
+@Component
+public class GmailTransportWarmer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(GmailTransportWarmer.class);
+    
+    private final HttpTransport httpTransport;
+    private final GmailConfig gmailConfig;
+    
+    public GmailTransportWarmer(HttpTransport httpTransport, GmailConfig gmailConfig) {
+        this.httpTransport = httpTransport;
+        this.gmailConfig = gmailConfig;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        GmailConfig.Transport settings = gmailConfig.getTransport();
+        if (!settings.isPrewarm()) {
+            return;
+        }
+        
+        try {
+            HttpRequest request = httpTransport.createRequestFactory()
+                    .buildHeadRequest(new GenericUrl(settings.getPrewarmUrl()));
+            request.setConnectTimeout((int) settings.getConnectTimeout().toMillis());
+            request.setReadTimeout((int) settings.getReadTimeout().toMillis());
+            request.setThrowExceptionOnExecuteError(false);
+            
+            HttpResponse response = request.execute();
+            // Consumes the response so the connection goes back to the pool
+            response.ignore();
+            logger.info("Pre-warmed Gmail API connection (status {})", response.getStatusCode());
+        } catch (Exception e) {
+            logger.warn("Failed to pre-warm Gmail API connection: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.krysta.emailreader.service;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.exception.GmailApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps cached exact counts current from the Gmail History API. Every
+ * interval it lists the changes since the oldest baseline of the counts it
+ * maintains, looks up the sender of each message that entered or left the
+ * searchable mailbox and moves the affected counts forward. When the history
+ * is gone or too long, the counts are rescanned in full instead.
+ * Enabled with email-cache.incremental.enabled.
+ */
+@Service
+public class HistorySyncService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HistorySyncService.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    
+    private final EmailService emailService;
+    private final GmailService gmailService;
+    private final EmailCacheProperties cacheProperties;
+    private final ScheduledExecutorService scheduler;
+    private final Counter appliedCounter;
+    private final Counter rescanCounter;
+    private final Counter failureCounter;
+    
+    public HistorySyncService(EmailService emailService,
+                              GmailService gmailService,
+                              EmailCacheProperties cacheProperties,
+                              MeterRegistry meterRegistry) {
+        this.emailService = emailService;
+        this.gmailService = gmailService;
+        this.cacheProperties = cacheProperties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-count-history-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.appliedCounter = Counter.builder("email.count.history.syncs")
+                .tag("result", "applied")
+                .description("Incremental count syncs from the mailbox history")
+                .register(meterRegistry);
+        this.rescanCounter = Counter.builder("email.count.history.syncs")
+                .tag("result", "rescan")
+                .description("Incremental count syncs from the mailbox history")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("email.count.history.syncs")
+                .tag("result", "failure")
+                .description("Incremental count syncs from the mailbox history")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        EmailCacheProperties.Incremental settings = cacheProperties.getIncremental();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long intervalMillis = settings.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Incremental email counts enabled, syncing mailbox history every {} ms", intervalMillis);
+    }
+    
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            failureCounter.increment();
+            logger.warn("Mailbox history sync failed: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Runs one sync of the maintained counts against the mailbox history.
+     */
+    public void sync() {
+        EmailCacheProperties.Incremental settings = cacheProperties.getIncremental();
+        Map<String, EmailService.HistoryBaseline> baselines = new HashMap<>(emailService.historyBaselines());
+        
+        // Counts not fully rescanned for a while are reloaded to correct any drift
+        long rescanBefore = System.currentTimeMillis() - settings.getFullRescanInterval().toMillis();
+        baselines.values().removeIf(baseline -> {
+            if (baseline.scannedAtMillis() < rescanBefore) {
+                emailService.rescan(baseline);
+                return true;
+            }
+            return false;
+        });
+        if (baselines.isEmpty()) {
+            return;
+        }
+        
+        // The account's checkpoint is the oldest baseline still maintained
+        BigInteger checkpoint = baselines.values().stream()
+                .map(EmailService.HistoryBaseline::historyId)
+                .min(Comparator.naturalOrder())
+                .orElseThrow();
+        RequestDeadline deadline = RequestDeadline.after(settings.getTimeout());
+        MailboxHistory history = gmailService.listHistory(checkpoint, settings.getMaxChanges(), deadline);
+        Map<String, Long> deltas = history.complete() ? senderDeltas(history, baselines, deadline) : null;
+        
+        if (deltas == null) {
+            rescanCounter.increment();
+            logger.info("Mailbox history since {} is not usable, rescanning {} counts", checkpoint, baselines.size());
+            baselines.values().forEach(emailService::rescan);
+            return;
+        }
+        
+        for (Map.Entry<String, EmailService.HistoryBaseline> entry : baselines.entrySet()) {
+            emailService.applyHistory(entry.getValue(), deltas.getOrDefault(entry.getKey(), 0L), history.historyId());
+        }
+        appliedCounter.increment();
+        logger.debug("Synced {} counts to history id {} ({} changes)",
+                baselines.size(), history.historyId(), history.changes().size());
+    }
+    
+    /**
+     * Sums the changes per maintained sender. A change only applies to counts
+     * whose baseline precedes it, so messages whose changes cancel out for
+     * every baseline are not looked up; the others are looked up in batches.
+     * 
+     * @return the deltas, or null if a change cannot be attributed to a sender
+     * @throws GmailApiException if some messages could not be read, so the sync is retried
+     */
+    private Map<String, Long> senderDeltas(MailboxHistory history, Map<String, EmailService.HistoryBaseline> baselines,
+                                           RequestDeadline deadline) {
+        Map<String, List<MailboxHistory.MessageChange>> byMessage = new LinkedHashMap<>();
+        for (MailboxHistory.MessageChange change : history.changes()) {
+            byMessage.computeIfAbsent(change.messageId(), id -> new ArrayList<>()).add(change);
+        }
+        
+        byMessage.values().removeIf(changes -> baselines.values().stream()
+                .allMatch(baseline -> sum(changes, baseline.historyId()) == 0));
+        
+        Map<String, Long> deltas = new HashMap<>();
+        List<String> ids = new ArrayList<>(byMessage.keySet());
+        for (int from = 0; from < ids.size(); from += MAX_BATCH_SIZE) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + MAX_BATCH_SIZE));
+            MessageSenders senders = gmailService.fromHeaders(batch, deadline);
+            if (senders.failed() > 0) {
+                throw new GmailApiException("Could not read " + senders.failed() + " changed messages");
+            }
+            for (String id : batch) {
+                String fromHeader = senders.fromById().get(id);
+                if (fromHeader == null) {
+                    // Deleted for good, so there is no telling whose count it was in
+                    logger.debug("Cannot attribute mailbox change of message {}", id);
+                    return null;
+                }
+                String sender = emailService.canonicalSender(fromHeader);
+                EmailService.HistoryBaseline baseline = sender != null ? baselines.get(sender) : null;
+                if (baseline != null) {
+                    deltas.merge(sender, sum(byMessage.get(id), baseline.historyId()), Long::sum);
+                }
+            }
+        }
+        return deltas;
+    }
+    
+    private static long sum(List<MailboxHistory.MessageChange> changes, BigInteger after) {
+        return changes.stream()
+                .filter(change -> change.historyId() == null || change.historyId().compareTo(after) > 0)
+                .mapToLong(MailboxHistory.MessageChange::delta)
+                .sum();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
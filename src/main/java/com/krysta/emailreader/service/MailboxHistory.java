@@ -0,0 +1,105 @@
+package com.krysta.emailreader.service;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.HistoryLabelAdded;
+import com.google.api.services.gmail.model.HistoryLabelRemoved;
+import com.google.api.services.gmail.model.HistoryMessageAdded;
+import com.google.api.services.gmail.model.HistoryMessageDeleted;
+import com.google.api.services.gmail.model.Message;
+
+/**
+ * Changes to the mailbox since a history id, reduced to how each one moves
+ * a {@code from:} count. Searches leave out Trash and Spam, so moving a
+ * message into either counts as a removal and moving it back as an addition.
+ * 
+ * @param historyId History id the changes run up to, the next checkpoint
+ * @param changes   Changes that move a count, in history order
+ * @param complete  False if the changes could not all be listed and counts
+ *                  have to be rescanned instead
+ */
+public record MailboxHistory(BigInteger historyId, List<MessageChange> changes, boolean complete) {
+    
+    private static final Set<String> HIDDEN_LABELS = Set.of("TRASH", "SPAM");
+    
+    /**
+     * One message entering (+1) or leaving (-1) the searchable mailbox.
+     * 
+     * @param historyId History id of the change
+     * @param messageId Gmail id of the message
+     * @param delta     +1 or -1
+     */
+    public record MessageChange(BigInteger historyId, String messageId, int delta) {
+    }
+    
+    public static MailboxHistory incomplete(BigInteger historyId) {
+        return new MailboxHistory(historyId, List.of(), false);
+    }
+    
+    /**
+     * Appends the count-relevant changes of one history record.
+     */
+    static void addChanges(History record, List<MessageChange> changes) {
+        BigInteger id = record.getId();
+        if (record.getMessagesAdded() != null) {
+            for (HistoryMessageAdded added : record.getMessagesAdded()) {
+                if (isSearchable(labels(added.getMessage()))) {
+                    changes.add(new MessageChange(id, added.getMessage().getId(), 1));
+                }
+            }
+        }
+        if (record.getMessagesDeleted() != null) {
+            for (HistoryMessageDeleted deleted : record.getMessagesDeleted()) {
+                if (isSearchable(labels(deleted.getMessage()))) {
+                    changes.add(new MessageChange(id, deleted.getMessage().getId(), -1));
+                }
+            }
+        }
+        if (record.getLabelsAdded() != null) {
+            for (HistoryLabelAdded added : record.getLabelsAdded()) {
+                Set<String> after = labels(added.getMessage());
+                if (added.getLabelIds() != null) {
+                    after.addAll(added.getLabelIds());
+                }
+                Set<String> before = new HashSet<>(after);
+                if (added.getLabelIds() != null) {
+                    before.removeAll(added.getLabelIds());
+                }
+                addLabelChange(id, added.getMessage(), before, after, changes);
+            }
+        }
+        if (record.getLabelsRemoved() != null) {
+            for (HistoryLabelRemoved removed : record.getLabelsRemoved()) {
+                Set<String> after = labels(removed.getMessage());
+                if (removed.getLabelIds() != null) {
+                    after.removeAll(removed.getLabelIds());
+                }
+                Set<String> before = new HashSet<>(after);
+                if (removed.getLabelIds() != null) {
+                    before.addAll(removed.getLabelIds());
+                }
+                addLabelChange(id, removed.getMessage(), before, after, changes);
+            }
+        }
+    }
+    
+    private static void addLabelChange(BigInteger id, Message message, Set<String> before, Set<String> after,
+                                       List<MessageChange> changes) {
+        int delta = (isSearchable(after) ? 1 : 0) - (isSearchable(before) ? 1 : 0);
+        if (delta != 0) {
+            changes.add(new MessageChange(id, message.getId(), delta));
+        }
+    }
+    
+    private static Set<String> labels(Message message) {
+        return message.getLabelIds() != null ? new HashSet<>(message.getLabelIds()) : new HashSet<>();
+    }
+    
+    private static boolean isSearchable(Set<String> labels) {
+        return labels.stream().noneMatch(HIDDEN_LABELS::contains);
+    }
+}
@@ -0,0 +1,400 @@
+package com.krysta.emailreader.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.krysta.emailreader.config.EmailCacheProperties;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bitmaps of the messages matched by each exact sender scan and label
+ * listing. Message ids are mapped to dense ordinals, so each set is a
+ * {@link RoaringBitmap} and queries across senders and labels are answered
+ * by union and difference without calling Gmail. The ordinals and bitmaps
+ * are written to a file periodically and read back at startup. Ordinals of
+ * messages no longer in any set are reclaimed when a flush finds them to be
+ * the majority. Sender sets are keyed by {@link SenderTable#hash}, so the
+ * file holds no addresses. Enabled with email-cache.bitmaps.enabled.
+ */
+@Component
+public class MessageBitmapIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MessageBitmapIndex.class);
+    private static final long FILE_MAGIC = 0x4D53474249545332L; // "MSGBITS2"
+    private static final int MIN_RECLAIM_ORDINALS = 4096;
+    
+    private final EmailCacheProperties cacheProperties;
+    private final ScheduledExecutorService flusher;
+    
+    private MessageOrdinals ordinals = new MessageOrdinals();
+    private final Map<Long, MessageSet> senders = new HashMap<>();
+    private final Map<String, MessageSet> labels = new HashMap<>();
+    private long generation;
+    private boolean dirty;
+    private int reclaimCheckAt = MIN_RECLAIM_ORDINALS;
+    
+    /**
+     * Messages matched by one scan.
+     * 
+     * @param messages        Ordinals of the matched messages
+     * @param scannedAtMillis When the scan finished
+     */
+    public record MessageSet(RoaringBitmap messages, long scannedAtMillis) {
+        
+        long ageMillis() {
+            return Math.max(0, System.currentTimeMillis() - scannedAtMillis);
+        }
+    }
+    
+    /**
+     * Receives the message ids of one scan. Safe to feed from several threads,
+     * and ids seen twice are only counted once.
+     */
+    public final class Collector implements Consumer<String> {
+        
+        private final RoaringBitmap messages = new RoaringBitmap();
+        private final long collectorGeneration;
+        private boolean complete = true;
+        
+        private Collector(long collectorGeneration) {
+            this.collectorGeneration = collectorGeneration;
+        }
+        
+        @Override
+        public void accept(String messageId) {
+            synchronized (MessageBitmapIndex.this) {
+                int ordinal = ordinals.ordinal(messageId);
+                if (ordinal < 0) {
+                    complete = false;
+                } else {
+                    messages.add(ordinal);
+                }
+            }
+        }
+    }
+    
+    public MessageBitmapIndex(EmailCacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.cacheProperties = cacheProperties;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-bitmap-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("email.bitmaps.messages", this, MessageBitmapIndex::messageCount)
+                .description("Distinct messages with an ordinal in the message bitmap index")
+                .register(meterRegistry);
+        Gauge.builder("email.bitmaps.sets", this, MessageBitmapIndex::setCount)
+                .description("Sender and label bitmaps held by the message bitmap index")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        EmailCacheProperties.Bitmaps settings = cacheProperties.getBitmaps();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        load(Path.of(settings.getFile()));
+        long intervalMillis = settings.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    public boolean isEnabled() {
+        return cacheProperties.getBitmaps().isEnabled();
+    }
+    
+    /**
+     * Starts collecting the ids of a scan; record it once the scan is complete.
+     */
+    public synchronized Collector collector() {
+        return new Collector(generation);
+    }
+    
+    /**
+     * Keeps the messages of a complete exact scan of the sender.
+     * 
+     * @return the recorded set, or null if the scan cannot be used
+     */
+    public MessageSet recordSender(String canonicalSender, Collector collector) {
+        return record(senders, SenderTable.hash(canonicalSender), collector);
+    }
+    
+    /**
+     * Keeps the messages of a complete listing of the label.
+     * 
+     * @return the recorded set, or null if the listing cannot be used
+     */
+    public MessageSet recordLabel(String labelId, Collector collector) {
+        return record(labels, labelId, collector);
+    }
+    
+    private synchronized <K> MessageSet record(Map<K, MessageSet> sets, K key, Collector collector) {
+        if (collector.collectorGeneration != generation || !collector.complete) {
+            return null;
+        }
+        MessageSet set = new MessageSet(collector.messages, System.currentTimeMillis());
+        sets.put(key, set);
+        evictOldest();
+        dirty = true;
+        return set;
+    }
+    
+    /**
+     * Returns the sender's set if it is younger than the configured max age.
+     */
+    public synchronized MessageSet sender(String canonicalSender) {
+        return fresh(senders.get(SenderTable.hash(canonicalSender)));
+    }
+    
+    /**
+     * Returns the label's set if it is younger than the configured max age.
+     */
+    public synchronized MessageSet label(String labelId) {
+        return fresh(labels.get(labelId));
+    }
+    
+    private MessageSet fresh(MessageSet set) {
+        long maxAgeMillis = cacheProperties.getBitmaps().getMaxAge().toMillis();
+        return set != null && set.ageMillis() <= maxAgeMillis ? set : null;
+    }
+    
+    /**
+     * Counts the messages in any of {@code included} and in none of {@code excluded}.
+     */
+    public static long countUnionExcept(List<MessageSet> included, List<MessageSet> excluded) {
+        RoaringBitmap union = new RoaringBitmap();
+        for (MessageSet set : included) {
+            union = RoaringBitmap.or(union, set.messages());
+        }
+        for (MessageSet set : excluded) {
+            union = RoaringBitmap.andNot(union, set.messages());
+        }
+        return union.cardinality();
+    }
+    
+    /**
+     * Changes whenever the index is cleared or its ordinals are reclaimed;
+     * sets of different generations use different ordinals and must not be
+     * combined.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+    
+    /**
+     * Drops all bitmaps and ordinals, e.g. when credentials change.
+     */
+    public synchronized void clear() {
+        generation++;
+        ordinals = new MessageOrdinals();
+        senders.clear();
+        labels.clear();
+        dirty = true;
+        reclaimCheckAt = MIN_RECLAIM_ORDINALS;
+    }
+    
+    /**
+     * Renumbers the ordinals down to the messages still referenced by a set
+     * once most of them are orphaned by evicted or replaced sets. Only checked
+     * each time the ordinals double, so the union is amortized over growth.
+     * Bumps the generation, so collectors still running are discarded.
+     */
+    private void reclaimOrdinals() {
+        int total = ordinals.size();
+        if (total < reclaimCheckAt) {
+            return;
+        }
+        RoaringBitmap live = new RoaringBitmap();
+        for (MessageSet set : senders.values()) {
+            live = RoaringBitmap.or(live, set.messages());
+        }
+        for (MessageSet set : labels.values()) {
+            live = RoaringBitmap.or(live, set.messages());
+        }
+        if (live.cardinality() * 2 < total) {
+            int[] remap = ordinals.retainOnly(live);
+            senders.replaceAll((key, set) -> remapped(set, remap));
+            labels.replaceAll((key, set) -> remapped(set, remap));
+            generation++;
+            logger.info("Reclaimed {} orphaned message ordinals, {} remain", total - ordinals.size(), ordinals.size());
+        }
+        reclaimCheckAt = (int) Math.max(MIN_RECLAIM_ORDINALS, Math.min(Integer.MAX_VALUE, ordinals.size() * 2L));
+    }
+    
+    private static MessageSet remapped(MessageSet set, int[] remap) {
+        RoaringBitmap messages = new RoaringBitmap();
+        set.messages().forEach(ordinal -> messages.add(remap[ordinal]));
+        return new MessageSet(messages, set.scannedAtMillis());
+    }
+    
+    private void evictOldest() {
+        int excess = senders.size() + labels.size() - cacheProperties.getBitmaps().getMaxSets();
+        if (excess <= 0) {
+            return;
+        }
+        Comparator<MessageSet> byAge = Comparator.comparingLong(MessageSet::scannedAtMillis);
+        for (; excess > 0; excess--) {
+            Map.Entry<Long, MessageSet> oldestSender = senders.entrySet().stream()
+                    .min(Map.Entry.comparingByValue(byAge)).orElse(null);
+            Map.Entry<String, MessageSet> oldestLabel = labels.entrySet().stream()
+                    .min(Map.Entry.comparingByValue(byAge)).orElse(null);
+            if (oldestLabel == null
+                    || (oldestSender != null && byAge.compare(oldestSender.getValue(), oldestLabel.getValue()) <= 0)) {
+                senders.remove(oldestSender.getKey());
+            } else {
+                labels.remove(oldestLabel.getKey());
+            }
+        }
+    }
+    
+    private synchronized long messageCount() {
+        return ordinals.size();
+    }
+    
+    private synchronized long setCount() {
+        return senders.size() + labels.size();
+    }
+    
+    private synchronized void load(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != FILE_MAGIC) {
+                logger.warn("Ignoring message bitmaps in {}: unknown format", file);
+                return;
+            }
+            MessageOrdinals loadedOrdinals = MessageOrdinals.readFrom(in);
+            Map<Long, MessageSet> loadedSenders = readSenderSets(in);
+            Map<String, MessageSet> loadedLabels = readLabelSets(in);
+            ordinals = loadedOrdinals;
+            senders.putAll(loadedSenders);
+            labels.putAll(loadedLabels);
+            reclaimCheckAt = Math.max(MIN_RECLAIM_ORDINALS, ordinals.size());
+            logger.info("Loaded {} message bitmaps over {} messages from {}",
+                    senders.size() + labels.size(), ordinals.size(), file);
+        } catch (IOException e) {
+            logger.warn("Failed to load message bitmaps from {}: {}", file, e.getMessage());
+        }
+    }
+    
+    private static Map<Long, MessageSet> readSenderSets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<Long, MessageSet> sets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            long scannedAtMillis = in.readLong();
+            sets.put(key, new MessageSet(RoaringBitmap.readFrom(in), scannedAtMillis));
+        }
+        return sets;
+    }
+    
+    private static Map<String, MessageSet> readLabelSets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, MessageSet> sets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            long scannedAtMillis = in.readLong();
+            sets.put(key, new MessageSet(RoaringBitmap.readFrom(in), scannedAtMillis));
+        }
+        return sets;
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Failed to write message bitmaps: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Writes the ordinals and bitmaps to the file if anything changed,
+     * reclaiming orphaned ordinals first. Recorded bitmaps are never
+     * modified, so only the maps and ordinals are copied under the lock.
+     */
+    void flush() throws IOException {
+        MessageOrdinals ordinalsSnapshot;
+        Map<Long, MessageSet> sendersSnapshot;
+        Map<String, MessageSet> labelsSnapshot;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            reclaimOrdinals();
+            ordinalsSnapshot = ordinals.copy();
+            sendersSnapshot = Map.copyOf(senders);
+            labelsSnapshot = Map.copyOf(labels);
+        }
+        
+        Path file = Path.of(cacheProperties.getBitmaps().getFile());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(FILE_MAGIC);
+                ordinalsSnapshot.writeTo(out);
+                writeSenderSets(out, sendersSnapshot);
+                writeLabelSets(out, labelsSnapshot);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            throw e;
+        }
+    }
+    
+    private static void writeSenderSets(DataOutputStream out, Map<Long, MessageSet> sets) throws IOException {
+        out.writeInt(sets.size());
+        for (Map.Entry<Long, MessageSet> entry : sets.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue().scannedAtMillis());
+            entry.getValue().messages().writeTo(out);
+        }
+    }
+    
+    private static void writeLabelSets(DataOutputStream out, Map<String, MessageSet> sets) throws IOException {
+        out.writeInt(sets.size());
+        for (Map.Entry<String, MessageSet> entry : sets.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().scannedAtMillis());
+            entry.getValue().messages().writeTo(out);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        if (isEnabled()) {
+            flushQuietly();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.krysta.emailreader.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Dense ordinals for Gmail message ids, assigned in order of first sight.
+ * Ids are the 64-bit hex values Gmail hands out, stored as longs in an
+ * open-addressing table rather than as strings. Not thread-safe.
+ */
+public final class MessageOrdinals {
+    
+    private static final int MAX_ID_LENGTH = 16;
+    
+    private long[] ids = new long[1024];
+    private int[] slots = new int[2048];
+    private int size;
+    
+    /**
+     * Returns the ordinal of the message, assigning the next one to a new id.
+     * 
+     * @return the ordinal, or -1 if the id is not a 64-bit hex value
+     */
+    public int ordinal(String messageId) {
+        if (messageId == null || messageId.isEmpty() || messageId.length() > MAX_ID_LENGTH) {
+            return -1;
+        }
+        long id;
+        try {
+            id = Long.parseUnsignedLong(messageId, 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        
+        int mask = slots.length - 1;
+        int slot = slotOf(id, mask);
+        while (slots[slot] != 0) {
+            int ordinal = slots[slot] - 1;
+            if (ids[ordinal] == id) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == Integer.MAX_VALUE - 1) {
+            return -1;
+        }
+        int ordinal = size++;
+        if (ordinal == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[ordinal] = id;
+        slots[slot] = ordinal + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return ordinal;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Drops every id whose ordinal is not in {@code live} and renumbers the
+     * rest densely, keeping their relative order.
+     * 
+     * @return the new ordinal for each old one, or -1 for dropped ids
+     */
+    public int[] retainOnly(RoaringBitmap live) {
+        int[] remap = new int[size];
+        Arrays.fill(remap, -1);
+        long[] retained = new long[Math.max(1024, (int) Math.min(size, live.cardinality()))];
+        int[] next = {0};
+        live.forEach(ordinal -> {
+            if (ordinal < size) {
+                retained[next[0]] = ids[ordinal];
+                remap[ordinal] = next[0]++;
+            }
+        });
+        ids = retained;
+        size = next[0];
+        rehash(Math.max(2048, Integer.highestOneBit(Math.max(1, size)) * 4));
+        return remap;
+    }
+    
+    public MessageOrdinals copy() {
+        MessageOrdinals copy = new MessageOrdinals();
+        copy.ids = Arrays.copyOf(ids, ids.length);
+        copy.slots = slots.clone();
+        copy.size = size;
+        return copy;
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(ids[i]);
+        }
+    }
+    
+    public static MessageOrdinals readFrom(DataInput in) throws IOException {
+        MessageOrdinals ordinals = new MessageOrdinals();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid message ordinal count " + count);
+        }
+        ordinals.ids = new long[Math.max(1024, count)];
+        for (int i = 0; i < count; i++) {
+            ordinals.ids[i] = in.readLong();
+        }
+        ordinals.size = count;
+        ordinals.rehash(Math.max(2048, Integer.highestOneBit(Math.max(1, count)) * 4));
+        return ordinals;
+    }
+    
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = slotOf(ids[ordinal], mask);
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = ordinal + 1;
+        }
+        slots = rehashed;
+    }
+    
+    private static int slotOf(long id, int mask) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,13 @@
+package com.krysta.emailreader.service;
+
+import java.util.Map;
+
+/**
+ * From headers of a batch of messages.
+ * 
+ * @param fromById From header per message id, empty if the message has none;
+ *                 messages that no longer exist are left out
+ * @param failed   Messages that could not be read, even after retries
+ */
+public record MessageSenders(Map<String, String> fromById, int failed) {
+}
@@ -0,0 +1,315 @@
+package com.krysta.emailreader.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.krysta.emailreader.security.EncryptedDataStoreFactory;
+import com.krysta.emailreader.util.LogSanitizer;
+
+/**
+ * Second-level, disk-backed store for email counts that survives restarts.
+ * Entries are appended to a local log file by a write-behind thread and the
+ * file is read back in the background at startup. Every entry keeps its load
+ * time so callers can decide whether to trust or revalidate it.
+ * <p>
+ * Each entry is encrypted with the OAuth token key (AES-256-GCM), so sender
+ * addresses never reach the disk in plaintext. The key is read from the token
+ * directory for every load, write batch and compaction, so once credentials
+ * are cleared along with the key, later entries use the new key. The writer
+ * thread compacts the log once dead entries outnumber live ones or it passes
+ * a size limit.
+ */
+public class PersistentCountStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PersistentCountStore.class);
+    private static final String SEPARATOR = "\t";
+    private static final String CLEAR_MARKER = "#clear";
+    private static final int MIN_COMPACT_LINES = 1_000;
+    private static final long MAX_LOG_BYTES = 64L * 1024 * 1024;
+    
+    private final boolean enabled;
+    private final Path file;
+    private final long ttlMillis;
+    private final File keyDirectory;
+    private final Map<String, CachedCount> entries = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> pendingWrites = new LinkedBlockingQueue<>();
+    
+    private volatile long clearedAtMillis;
+    private volatile boolean loaded;
+    private volatile boolean closed;
+    private Thread loader;
+    private Thread writer;
+    
+    // Only touched by the loader and then the writer thread
+    private long logLines;
+    private long logBytes;
+    
+    public PersistentCountStore(boolean enabled, Path file, long ttlMillis, File keyDirectory) {
+        this.enabled = enabled;
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.keyDirectory = keyDirectory;
+    }
+    
+    /**
+     * Starts loading the file in the background and the write-behind thread.
+     * Lookups made before loading finishes are treated as misses.
+     */
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        
+        writer = new Thread(this::writeLoop, "email-count-store-writer");
+        writer.setDaemon(true);
+        
+        loader = new Thread(() -> {
+            load();
+            writer.start();
+        }, "email-count-store-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+    
+    /**
+     * Returns the stored count for the sender, or null if unknown, expired or not loaded yet.
+     */
+    public CachedCount get(String senderEmail) {
+        if (!enabled || !loaded) {
+            return null;
+        }
+        CachedCount cached = entries.get(senderEmail);
+        if (cached != null && (cached.ageMillis() > ttlMillis || cached.loadedAtMillis() < clearedAtMillis)) {
+            entries.remove(senderEmail, cached);
+            return null;
+        }
+        return cached;
+    }
+    
+    /**
+     * Whether the background load of the persisted file has finished.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Records a freshly loaded count; written to disk asynchronously.
+     */
+    public void put(String senderEmail, CachedCount count) {
+        if (!enabled) {
+            return;
+        }
+        entries.put(senderEmail, count);
+        pendingWrites.offer(senderEmail + SEPARATOR + count.count() + SEPARATOR + count.loadedAtMillis());
+    }
+    
+    /**
+     * Drops all stored counts, e.g. when credentials change.
+     */
+    public void clear() {
+        if (!enabled) {
+            return;
+        }
+        clearedAtMillis = System.currentTimeMillis();
+        entries.clear();
+        pendingWrites.offer(CLEAR_MARKER);
+    }
+    
+    private void load() {
+        try {
+            if (Files.exists(file)) {
+                SecretKey key = key();
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        applyLine(decryptLine(line, key));
+                    }
+                }
+                entries.values().removeIf(cached -> cached.ageMillis() > ttlMillis);
+                compact();
+            } else if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            logger.info("Loaded {} persisted email counts from {}", entries.size(), file);
+        } catch (IOException e) {
+            logger.warn("Failed to load persisted email counts from {}: {}", file, e.getMessage());
+        } finally {
+            loaded = true;
+        }
+    }
+    
+    private void applyLine(String line) {
+        if (line == null) {
+            return;
+        }
+        if (line.equals(CLEAR_MARKER)) {
+            entries.clear();
+            return;
+        }
+        String[] parts = line.split(SEPARATOR);
+        if (parts.length != 3) {
+            return;
+        }
+        try {
+            CachedCount cached = new CachedCount(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            // Keep the most recently loaded value per sender
+            entries.merge(parts[0], cached,
+                    (existing, incoming) -> incoming.loadedAtMillis() >= existing.loadedAtMillis() ? incoming : existing);
+        } catch (NumberFormatException e) {
+            logger.debug("Skipping malformed persisted entry for {}", LogSanitizer.maskEmail(parts[0]));
+        }
+    }
+    
+    /**
+     * Rewrites the log with only live entries so it does not grow without bound.
+     */
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        SecretKey key = key();
+        long lines = 0;
+        long bytes = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, CachedCount> entry : entries.entrySet()) {
+                CachedCount cached = entry.getValue();
+                if (cached.ageMillis() > ttlMillis || cached.loadedAtMillis() < clearedAtMillis) {
+                    continue;
+                }
+                String line = encryptLine(entry.getKey() + SEPARATOR + cached.count()
+                        + SEPARATOR + cached.loadedAtMillis(), key);
+                out.write(line);
+                out.newLine();
+                lines++;
+                bytes += line.length() + 1;
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = lines;
+        logBytes = bytes;
+    }
+    
+    /**
+     * Whether enough of the log is superseded, cleared or expired to be worth rewriting.
+     */
+    private boolean needsCompaction() {
+        return logBytes > MAX_LOG_BYTES
+                || (logLines > MIN_COMPACT_LINES && logLines > 2L * entries.size());
+    }
+    
+    private SecretKey key() throws IOException {
+        return EncryptedDataStoreFactory.loadOrGenerateKey(keyDirectory);
+    }
+    
+    private static String encryptLine(String line, SecretKey key) throws IOException {
+        if (line.equals(CLEAR_MARKER)) {
+            return line;
+        }
+        try {
+            byte[] encrypted = EncryptedDataStoreFactory.encrypt(line.getBytes(StandardCharsets.UTF_8), key);
+            return Base64.getEncoder().encodeToString(encrypted);
+        } catch (Exception e) {
+            throw new IOException("Failed to encrypt persisted email count", e);
+        }
+    }
+    
+    /**
+     * Returns the plaintext entry, or null if it cannot be decrypted (e.g. the key was replaced).
+     */
+    private static String decryptLine(String line, SecretKey key) {
+        if (line.equals(CLEAR_MARKER)) {
+            return line;
+        }
+        try {
+            byte[] decrypted = EncryptedDataStoreFactory.decrypt(Base64.getDecoder().decode(line), key);
+            return new String(decrypted, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            logger.debug("Skipping persisted entry that could not be decrypted");
+            return null;
+        }
+    }
+    
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>();
+        while (!closed || !pendingWrites.isEmpty()) {
+            try {
+                String first = pendingWrites.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingWrites.drainTo(batch);
+                append(batch);
+                if (needsCompaction()) {
+                    compactQuietly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void compactQuietly() {
+        try {
+            compact();
+            logger.debug("Compacted persisted email counts to {} entries", logLines);
+        } catch (IOException e) {
+            logger.warn("Failed to compact persisted email counts in {}: {}", file, e.getMessage());
+        }
+    }
+    
+    private void append(List<String> lines) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            SecretKey key = key();
+            for (String line : lines) {
+                String encrypted = encryptLine(line, key);
+                out.write(encrypted);
+                out.newLine();
+                logLines++;
+                logBytes += encrypted.length() + 1;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to persist {} email counts: {}", lines.size(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Flushes pending writes and stops the writer thread.
+     */
+    public void close() {
+        if (loader == null) {
+            return;
+        }
+        try {
+            // The writer only starts once loading has finished
+            loader.join(TimeUnit.SECONDS.toMillis(5));
+            closed = true;
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
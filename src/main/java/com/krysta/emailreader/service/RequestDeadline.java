@@ -0,0 +1,111 @@
+package com.krysta.emailreader.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+
+/**
+ * Point in time by which a request must finish, together with a flag that is
+ * raised when nobody is waiting for the result any more (for example because
+ * the client disconnected). Long-running work checks it between steps.
+ */
+public final class RequestDeadline {
+    
+    private volatile long deadlineNanos;
+    private volatile boolean cancelled;
+    private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
+    
+    private RequestDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+    
+    /**
+     * A deadline the given time from now.
+     */
+    public static RequestDeadline after(Duration timeout) {
+        return new RequestDeadline(System.nanoTime() + timeout.toNanos());
+    }
+    
+    /**
+     * A deadline that never expires; it can still be cancelled.
+     */
+    public static RequestDeadline none() {
+        return new RequestDeadline(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Time left before the deadline, zero once it has passed.
+     */
+    public Duration remaining() {
+        long deadline = deadlineNanos;
+        if (deadline == Long.MAX_VALUE) {
+            return Duration.ofNanos(Long.MAX_VALUE);
+        }
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+    
+    public boolean isExpired() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * Moves the deadline out to the other one if that is later.
+     */
+    public synchronized void extendTo(RequestDeadline other) {
+        if (other.deadlineNanos == Long.MAX_VALUE || deadlineNanos == Long.MAX_VALUE) {
+            deadlineNanos = Long.MAX_VALUE;
+        } else if (other.deadlineNanos - deadlineNanos > 0) {
+            deadlineNanos = other.deadlineNanos;
+        }
+    }
+    
+    /**
+     * Marks the work as abandoned and notifies listeners once.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+        }
+        for (Runnable action : cancelListeners) {
+            // Whoever removes a listener runs it, so it runs exactly once
+            if (cancelListeners.remove(action)) {
+                action.run();
+            }
+        }
+    }
+    
+    /**
+     * Runs the action when the deadline is cancelled (immediately if it already is).
+     */
+    public void onCancel(Runnable action) {
+        cancelListeners.add(action);
+        if (cancelled && cancelListeners.remove(action)) {
+            action.run();
+        }
+    }
+    
+    /**
+     * Throws if the work should stop.
+     *
+     * @throws GmailApiException       if the request was cancelled
+     * @throws RequestTimeoutException if the deadline has passed
+     */
+    public void check() {
+        if (cancelled) {
+            throw new GmailApiException("Request was cancelled");
+        }
+        if (isExpired()) {
+            throw new RequestTimeoutException("Request deadline exceeded");
+        }
+    }
+}
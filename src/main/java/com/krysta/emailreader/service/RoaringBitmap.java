@@ -0,0 +1,334 @@
+package com.krysta.emailreader.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Compressed set of non-negative ints in the Roaring layout: values are
+ * grouped by their upper 16 bits, and each group is kept either as a sorted
+ * array (up to 4096 values) or as a 65536-bit bitmap, whichever is smaller.
+ * Only the operations the message index needs are implemented.
+ */
+public final class RoaringBitmap {
+    
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+    
+    /**
+     * Values sharing the upper 16 bits; exactly one of {@code array} and {@code words} is set.
+     */
+    private static final class Container {
+        private char[] array;
+        private long[] words;
+        private int cardinality;
+        
+        private static Container ofArray(char[] array, int cardinality) {
+            Container container = new Container();
+            container.array = array;
+            container.cardinality = cardinality;
+            return container;
+        }
+        
+        private static Container ofWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                Container container = new Container();
+                container.words = words;
+                container.cardinality = cardinality;
+                return container;
+            }
+            char[] array = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    array[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return ofArray(array, cardinality);
+        }
+        
+        private boolean contains(char low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+        
+        private void add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    words[low >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            int index = Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                words = toWords();
+                array = null;
+                add(low);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(array, index, array, index + 1, cardinality - index);
+            array[index] = low;
+            cardinality++;
+        }
+        
+        private long[] toWords() {
+            if (words != null) {
+                return words.clone();
+            }
+            long[] bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            return bits;
+        }
+        
+        private Container copy() {
+            return words != null ? ofWords(words.clone()) : ofArray(Arrays.copyOf(array, cardinality), cardinality);
+        }
+    }
+    
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char high = (char) (value >>> 16);
+        int index = indexOf(high);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, high, Container.ofArray(new char[4], 0));
+        }
+        containers[index].add((char) value);
+    }
+    
+    public boolean contains(int value) {
+        int index = value >= 0 ? indexOf((char) (value >>> 16)) : -1;
+        return index >= 0 && containers[index].contains((char) value);
+    }
+    
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Passes every value to the action in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Container container = containers[i];
+            if (container.words != null) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    for (long word = container.words[w]; word != 0; word &= word - 1) {
+                        action.accept(high | (w * 64 + Long.numberOfTrailingZeros(word)));
+                    }
+                }
+            } else {
+                for (int j = 0; j < container.cardinality; j++) {
+                    action.accept(high | container.array[j]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Values in either bitmap.
+     */
+    public static RoaringBitmap or(RoaringBitmap left, RoaringBitmap right) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < left.size || j < right.size) {
+            if (j == right.size || (i < left.size && left.keys[i] < right.keys[j])) {
+                result.append(left.keys[i], left.containers[i++].copy());
+            } else if (i == left.size || right.keys[j] < left.keys[i]) {
+                result.append(right.keys[j], right.containers[j++].copy());
+            } else {
+                result.append(left.keys[i], combine(left.containers[i++], right.containers[j++], (a, b) -> a | b));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Values in both bitmaps.
+     */
+    public static RoaringBitmap and(RoaringBitmap left, RoaringBitmap right) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < left.size && j < right.size) {
+            if (left.keys[i] < right.keys[j]) {
+                i++;
+            } else if (right.keys[j] < left.keys[i]) {
+                j++;
+            } else {
+                result.append(left.keys[i], combine(left.containers[i++], right.containers[j++], (a, b) -> a & b));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Values in {@code left} but not in {@code right}.
+     */
+    public static RoaringBitmap andNot(RoaringBitmap left, RoaringBitmap right) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < left.size; i++) {
+            while (j < right.size && right.keys[j] < left.keys[i]) {
+                j++;
+            }
+            if (j < right.size && right.keys[j] == left.keys[i]) {
+                result.append(left.keys[i], combine(left.containers[i], right.containers[j], (a, b) -> a & ~b));
+            } else {
+                result.append(left.keys[i], left.containers[i].copy());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Applies the operation word by word; two small arrays are merged directly.
+     */
+    private static Container combine(Container left, Container right, LongBinaryOperator operation) {
+        if (left.words == null && right.words == null) {
+            return mergeArrays(left, right, operation);
+        }
+        long[] words = left.toWords();
+        long[] other = right.words != null ? right.words : right.toWords();
+        for (int k = 0; k < BITMAP_WORDS; k++) {
+            words[k] = operation.applyAsLong(words[k], other[k]);
+        }
+        return Container.ofWords(words);
+    }
+    
+    private static Container mergeArrays(Container left, Container right, LongBinaryOperator operation) {
+        boolean keepLeftOnly = operation.applyAsLong(1, 0) != 0;
+        boolean keepRightOnly = operation.applyAsLong(0, 1) != 0;
+        boolean keepBoth = operation.applyAsLong(1, 1) != 0;
+        char[] merged = new char[left.cardinality + right.cardinality];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.cardinality || j < right.cardinality) {
+            if (j == right.cardinality || (i < left.cardinality && left.array[i] < right.array[j])) {
+                char value = left.array[i++];
+                if (keepLeftOnly) {
+                    merged[n++] = value;
+                }
+            } else if (i == left.cardinality || right.array[j] < left.array[i]) {
+                char value = right.array[j++];
+                if (keepRightOnly) {
+                    merged[n++] = value;
+                }
+            } else {
+                char value = left.array[i++];
+                j++;
+                if (keepBoth) {
+                    merged[n++] = value;
+                }
+            }
+        }
+        if (n > ARRAY_MAX) {
+            Container container = Container.ofArray(merged, n);
+            return Container.ofWords(container.toWords());
+        }
+        return Container.ofArray(Arrays.copyOf(merged, n), n);
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            out.writeChar(keys[i]);
+            out.writeInt(container.cardinality);
+            if (container.words != null) {
+                for (long word : container.words) {
+                    out.writeLong(word);
+                }
+            } else {
+                for (int k = 0; k < container.cardinality; k++) {
+                    out.writeChar(container.array[k]);
+                }
+            }
+        }
+    }
+    
+    public static RoaringBitmap readFrom(DataInput in) throws IOException {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            char key = in.readChar();
+            int cardinality = in.readInt();
+            if (cardinality > ARRAY_MAX) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int k = 0; k < BITMAP_WORDS; k++) {
+                    words[k] = in.readLong();
+                }
+                bitmap.append(key, Container.ofWords(words));
+            } else {
+                char[] array = new char[cardinality];
+                for (int k = 0; k < cardinality; k++) {
+                    array[k] = in.readChar();
+                }
+                bitmap.append(key, Container.ofArray(array, cardinality));
+            }
+        }
+        return bitmap;
+    }
+    
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+    
+    private void insert(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+    
+    /**
+     * Adds a container after all existing ones; empty containers are dropped.
+     */
+    private void append(char high, Container container) {
+        if (container.cardinality > 0) {
+            insert(size, high, container);
+        }
+    }
+}
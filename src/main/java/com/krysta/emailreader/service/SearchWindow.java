@@ -0,0 +1,62 @@
+package com.krysta.emailreader.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A half-open range of time {@code [startSecond, endSecond)} used to split a
+ * Gmail search into disjoint parts. Gmail treats both {@code after:} and
+ * {@code before:} epoch-second bounds as exclusive, so the query starts one
+ * second before the window. An open start or end drops that bound from the
+ * query, so the outermost windows of a mailbox also match messages dated
+ * before its start or after its end.
+ */
+record SearchWindow(long startSecond, long endSecond, boolean openStart, boolean openEnd) {
+    
+    SearchWindow(long startSecond, long endSecond) {
+        this(startSecond, endSecond, false, false);
+    }
+    
+    /**
+     * A window over {@code [startSecond, endSecond)} for splitting whose query
+     * has no bounds at all.
+     */
+    static SearchWindow unbounded(long startSecond, long endSecond) {
+        return new SearchWindow(startSecond, endSecond, true, true);
+    }
+    
+    long seconds() {
+        return endSecond - startSecond;
+    }
+    
+    /**
+     * Search terms restricting a query to this window; empty if it is unbounded.
+     */
+    String query() {
+        List<String> terms = new ArrayList<>(2);
+        if (!openStart) {
+            terms.add("after:" + (startSecond - 1));
+        }
+        if (!openEnd) {
+            terms.add("before:" + endSecond);
+        }
+        return String.join(" ", terms);
+    }
+    
+    /**
+     * Splits the window into up to {@code parts} adjacent windows that cover
+     * it exactly, none shorter than {@code minSeconds}. The first part keeps
+     * an open start and the last an open end.
+     */
+    List<SearchWindow> split(int parts, long minSeconds) {
+        int count = (int) Math.max(1, Math.min(parts, seconds() / Math.max(1, minSeconds)));
+        List<SearchWindow> windows = new ArrayList<>(count);
+        long start = startSecond;
+        for (int i = 1; i <= count; i++) {
+            long end = i == count ? endSecond : startSecond + seconds() * i / count;
+            windows.add(new SearchWindow(start, end, i == 1 && openStart, i == count && openEnd));
+            start = end;
+        }
+        return windows;
+    }
+}
@@ -0,0 +1,210 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.krysta.emailreader.config.EmailCacheProperties;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Count of messages per canonical sender over the whole mailbox, built by
+ * {@link SenderIndexSyncService} and kept current from the mailbox history.
+ * While it is caught up, every sender can be answered locally, including
+ * senders that have no messages at all. The counts live off-heap in a
+ * {@link SenderTable} file, so a restart resumes from the last sync.
+ */
+@Component
+public class SenderIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SenderIndex.class);
+    
+    private final EmailCacheProperties cacheProperties;
+    
+    private volatile SenderTable table;
+    private volatile long generation;
+    
+    /**
+     * What the index holds and how current it is.
+     * 
+     * @param ready     Whether a full sync has completed
+     * @param serving   Whether counts are currently answered from the index
+     * @param senders   Distinct senders indexed
+     * @param messages  Messages indexed
+     * @param historyId Mailbox history id the index is current as of
+     * @param builtAt   End of the last full sync
+     * @param updatedAt Last time the index caught up with the mailbox
+     */
+    public record Status(boolean ready, boolean serving, long senders, long messages, BigInteger historyId,
+                         Instant builtAt, Instant updatedAt) {
+    }
+    
+    public SenderIndex(EmailCacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.cacheProperties = cacheProperties;
+        if (cacheProperties.getIndex().isEnabled()) {
+            try {
+                table();
+            } catch (UncheckedIOException e) {
+                logger.warn("Failed to open the sender index: {}", e.getMessage());
+            }
+        }
+        Gauge.builder("email.index.senders", this, index -> index.status().senders())
+                .description("Distinct senders in the local sender index")
+                .register(meterRegistry);
+        Gauge.builder("email.index.age", this, index -> index.ageMillis() / 1000.0)
+                .description("Seconds since the sender index last caught up with the mailbox")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Returns the sender's count if the index is enabled, built and has
+     * caught up within the configured staleness.
+     */
+    public OptionalLong lookup(String canonicalSender) {
+        SenderTable current = builtTable();
+        if (current == null || !isServing()) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(current.get(canonicalSender));
+    }
+    
+    /**
+     * Milliseconds since the index last caught up, or -1 before the first sync.
+     */
+    public long ageMillis() {
+        SenderTable current = builtTable();
+        return current != null ? Math.max(0, System.currentTimeMillis() - current.updatedAtMillis()) : -1;
+    }
+    
+    public Status status() {
+        SenderTable current = builtTable();
+        if (current == null) {
+            return new Status(false, false, 0, 0, null, null, null);
+        }
+        return new Status(true, isServing(), current.senders(), current.messages(),
+                BigInteger.valueOf(current.historyId()), Instant.ofEpochMilli(current.builtAtMillis()),
+                Instant.ofEpochMilli(current.updatedAtMillis()));
+    }
+    
+    private boolean isServing() {
+        EmailCacheProperties.Index settings = cacheProperties.getIndex();
+        long age = ageMillis();
+        return settings.isEnabled() && age >= 0 && age <= settings.getMaxStaleness().toMillis();
+    }
+    
+    private SenderTable builtTable() {
+        SenderTable current = table;
+        return current != null && current.isBuilt() ? current : null;
+    }
+    
+    /**
+     * The table, opened on first use.
+     */
+    private synchronized SenderTable table() {
+        if (table == null) {
+            try {
+                table = SenderTable.open(Path.of(cacheProperties.getIndex().getFile()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open sender index file", e);
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * Changes whenever the index is cleared, so that a sync started before
+     * does not write counts of the previous account.
+     */
+    long generation() {
+        return generation;
+    }
+    
+    /**
+     * Starts a full rebuild; the current index keeps serving until it is {@link #publish published}.
+     */
+    SenderTable.Build startBuild() {
+        try {
+            return table().build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start sender index build", e);
+        }
+    }
+    
+    /**
+     * Replaces the index with the result of a full sync.
+     */
+    synchronized void publish(SenderTable.Build build, BigInteger syncedHistoryId, long syncGeneration) {
+        if (syncGeneration != generation) {
+            return;
+        }
+        try {
+            build.commit(syncedHistoryId.longValueExact());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write sender index", e);
+        }
+    }
+    
+    /**
+     * Applies the net changes per sender up to {@code syncedHistoryId}.
+     */
+    synchronized void apply(Map<String, Long> deltas, BigInteger syncedHistoryId, long syncGeneration) {
+        SenderTable current = builtTable();
+        if (current == null || syncGeneration != generation) {
+            return;
+        }
+        try {
+            current.apply(deltas, syncedHistoryId.longValueExact());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to update sender index", e);
+        }
+    }
+    
+    /**
+     * Drops the index, e.g. when credentials change; it is rebuilt by the next sync.
+     */
+    public synchronized void clear() {
+        generation++;
+        SenderTable current = table;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.clear();
+        } catch (IOException e) {
+            logger.warn("Failed to clear the sender index file: {}", e.getMessage());
+        }
+    }
+    
+    Duration sinceBuilt() {
+        SenderTable current = builtTable();
+        return current != null ? Duration.ofMillis(System.currentTimeMillis() - current.builtAtMillis()) : null;
+    }
+    
+    /**
+     * Folds pending changes into the table file so the next start opens it without a replay.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (table == null) {
+            return;
+        }
+        try {
+            table.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the sender index file: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.krysta.emailreader.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.exception.GmailApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Builds the {@link SenderIndex} from a full pass over the mailbox: all
+ * message ids are listed and the From header of each is read with batched
+ * metadata calls. Afterwards the index catches up from the mailbox history
+ * every refresh interval and is rebuilt when the history is gone or the
+ * full sync interval has passed. Enabled with email-cache.index.enabled.
+ */
+@Service
+public class SenderIndexSyncService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SenderIndexSyncService.class);
+    private static final int MAX_BATCH_SIZE = 100;
+    
+    private final SenderIndex senderIndex;
+    private final GmailService gmailService;
+    private final EmailService emailService;
+    private final EmailCacheProperties cacheProperties;
+    private final ScheduledExecutorService scheduler;
+    private final Counter fullSyncCounter;
+    private final Counter catchUpCounter;
+    private final Counter failureCounter;
+    
+    private final AtomicLong messagesListed = new AtomicLong();
+    private final AtomicLong messagesIndexed = new AtomicLong();
+    private final AtomicLong messagesFailed = new AtomicLong();
+    private final AtomicLong changesUnattributed = new AtomicLong();
+    private volatile boolean running;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String lastError;
+    
+    /**
+     * Progress of the current or last full sync.
+     * 
+     * @param running             Whether a full sync is in progress
+     * @param messagesListed      Message ids listed so far
+     * @param messagesIndexed     Messages whose sender has been read so far
+     * @param messagesFailed      Messages whose sender could not be read
+     * @param changesUnattributed History changes whose message could no longer be read, each of
+     *                            which made its catch-up rebuild the index instead
+     * @param startedAt           Start of the current or last full sync
+     * @param finishedAt          End of the last full sync
+     * @param lastError           Why the last sync or catch-up failed, if it did
+     */
+    public record Progress(boolean running, long messagesListed, long messagesIndexed, long messagesFailed,
+                           long changesUnattributed, Instant startedAt, Instant finishedAt, String lastError) {
+    }
+    
+    public SenderIndexSyncService(SenderIndex senderIndex,
+                                  GmailService gmailService,
+                                  EmailService emailService,
+                                  EmailCacheProperties cacheProperties,
+                                  MeterRegistry meterRegistry) {
+        this.senderIndex = senderIndex;
+        this.gmailService = gmailService;
+        this.emailService = emailService;
+        this.cacheProperties = cacheProperties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sender-index-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fullSyncCounter = Counter.builder("email.index.syncs")
+                .tag("type", "full")
+                .description("Sender index syncs")
+                .register(meterRegistry);
+        this.catchUpCounter = Counter.builder("email.index.syncs")
+                .tag("type", "history")
+                .description("Sender index syncs")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("email.index.syncs")
+                .tag("type", "failure")
+                .description("Sender index syncs")
+                .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        EmailCacheProperties.Index settings = cacheProperties.getIndex();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long intervalMillis = settings.getRefreshInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Sender index enabled, catching up every {} ms", intervalMillis);
+    }
+    
+    private void refreshQuietly() {
+        try {
+            refresh();
+            lastError = null;
+        } catch (RuntimeException e) {
+            failureCounter.increment();
+            lastError = e.getMessage();
+            logger.warn("Sender index sync failed: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Brings the index up to date: a full sync if there is no index yet or it
+     * is older than the full sync interval, otherwise a history catch-up.
+     */
+    public void refresh() {
+        SenderIndex.Status status = senderIndex.status();
+        Duration sinceBuilt = senderIndex.sinceBuilt();
+        if (!status.ready() || status.historyId() == null
+                || sinceBuilt.compareTo(cacheProperties.getIndex().getFullSyncInterval()) > 0) {
+            fullSync();
+        } else {
+            catchUp(status.historyId());
+        }
+    }
+    
+    public Progress progress() {
+        return new Progress(running, messagesListed.get(), messagesIndexed.get(), messagesFailed.get(),
+                changesUnattributed.get(), startedAt, finishedAt, lastError);
+    }
+    
+    /**
+     * Reads the sender of every message in the mailbox into a new index.
+     * Queries keep using the previous index until the new one is complete.
+     * Batches with unreadable messages are read again at the end; if any
+     * message still cannot be read the index is not published, since it
+     * would serve an undercount (or an exact 0) for that message's sender.
+     * 
+     * @throws GmailApiException if some messages could not be read
+     */
+    void fullSync() {
+        EmailCacheProperties.Index settings = cacheProperties.getIndex();
+        long generation = senderIndex.generation();
+        RequestDeadline deadline = RequestDeadline.after(settings.getSyncTimeout());
+        int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, settings.getBatchSize()));
+        
+        messagesListed.set(0);
+        messagesIndexed.set(0);
+        messagesFailed.set(0);
+        startedAt = Instant.now();
+        running = true;
+        logger.info("Starting full sender index sync");
+        // Counts go straight into a staging table that is discarded unless published
+        try (SenderTable.Build build = senderIndex.startBuild()) {
+            // Changes after this point are picked up by the next catch-up
+            BigInteger historyId = gmailService.currentHistoryId(deadline);
+            List<String> unread = new ArrayList<>();
+            String pageToken = null;
+            
+            do {
+                List<String> ids = new ArrayList<>();
+                GmailListPage page = gmailService.listMessageIds(pageToken, ids::add, deadline);
+                messagesListed.addAndGet(ids.size());
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                    MessageSenders senders = gmailService.fromHeaders(batch, deadline);
+                    addSenders(senders.fromById().values(), build);
+                    messagesIndexed.addAndGet(batch.size() - senders.failed());
+                    messagesFailed.addAndGet(senders.failed());
+                    if (senders.failed() > 0) {
+                        // Failed and deleted messages both lack a header; the retry tells them apart
+                        batch.stream().filter(id -> !senders.fromById().containsKey(id)).forEach(unread::add);
+                    }
+                }
+                pageToken = page.nextPageToken();
+            } while (pageToken != null);
+            
+            if (!unread.isEmpty()) {
+                long stillFailed = 0;
+                for (int from = 0; from < unread.size(); from += batchSize) {
+                    List<String> batch = unread.subList(from, Math.min(unread.size(), from + batchSize));
+                    MessageSenders senders = gmailService.fromHeaders(batch, deadline);
+                    addSenders(senders.fromById().values(), build);
+                    stillFailed += senders.failed();
+                }
+                messagesIndexed.addAndGet(messagesFailed.get() - stillFailed);
+                messagesFailed.set(stillFailed);
+                if (stillFailed > 0) {
+                    throw new GmailApiException("Sender index not published: " + stillFailed
+                            + " messages could not be read");
+                }
+            }
+            
+            senderIndex.publish(build, historyId, generation);
+            fullSyncCounter.increment();
+            logger.info("Sender index built: {} senders, {} messages, {} unreadable",
+                    build.senders(), messagesIndexed.get(), messagesFailed.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to build sender index", e);
+        } finally {
+            running = false;
+            finishedAt = Instant.now();
+        }
+    }
+    
+    /**
+     * Applies the mailbox history since the index's history id, or rebuilds
+     * the index if that history is no longer available or a changed message
+     * can no longer be read. A message deleted for good cannot be attributed
+     * to a sender, so skipping it would leave that sender's count off forever.
+     */
+    void catchUp(BigInteger historyId) {
+        EmailCacheProperties.Index settings = cacheProperties.getIndex();
+        long generation = senderIndex.generation();
+        RequestDeadline deadline = RequestDeadline.after(settings.getSyncTimeout());
+        MailboxHistory history = gmailService.listHistory(historyId, settings.getMaxChanges(), deadline);
+        if (!history.complete()) {
+            logger.info("Mailbox history since {} is not usable, rebuilding the sender index", historyId);
+            fullSync();
+            return;
+        }
+        
+        // Net change per message, so a message added and removed again is not looked up
+        Map<String, Long> netByMessage = new LinkedHashMap<>();
+        for (MailboxHistory.MessageChange change : history.changes()) {
+            netByMessage.merge(change.messageId(), (long) change.delta(), Long::sum);
+        }
+        netByMessage.values().removeIf(net -> net == 0);
+        
+        Map<String, Long> deltas = new HashMap<>();
+        List<String> ids = new ArrayList<>(netByMessage.keySet());
+        int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, settings.getBatchSize()));
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            MessageSenders senders = gmailService.fromHeaders(batch, deadline);
+            for (String id : batch) {
+                String fromHeader = senders.fromById().get(id);
+                if (fromHeader == null) {
+                    changesUnattributed.incrementAndGet();
+                    logger.info("Cannot attribute mailbox change of message {}, rebuilding the sender index", id);
+                    fullSync();
+                    return;
+                }
+                String sender = emailService.canonicalSender(fromHeader);
+                if (sender != null) {
+                    deltas.merge(sender, netByMessage.get(id), Long::sum);
+                }
+            }
+        }
+        
+        senderIndex.apply(deltas, history.historyId(), generation);
+        catchUpCounter.increment();
+        logger.debug("Sender index caught up to history id {} ({} senders changed)", history.historyId(), deltas.size());
+    }
+    
+    private void addSenders(Iterable<String> fromHeaders, SenderTable.Build build) throws IOException {
+        for (String fromHeader : fromHeaders) {
+            String sender = emailService.canonicalSender(fromHeader);
+            if (sender != null) {
+                build.merge(sender, 1);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,718 @@
+package com.krysta.emailreader.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Off-heap message count per sender, stored in a memory-mapped open-addressing
+ * hash table keyed by a 64-bit hash of the canonical sender. Two senders with
+ * the same hash share a count, which is negligible at mailbox sizes.
+ * 
+ * <p>Every change is first appended to a checksummed log and forced to disk,
+ * then written to the mapped table. Log records hold the new counts rather
+ * than deltas, so after a crash the log is simply replayed over the table and
+ * a torn last record is dropped. Each table is stamped with an epoch that
+ * every log record carries, so records left behind by a table that has since
+ * been replaced in full are skipped rather than replayed. The log is folded into the table when it
+ * grows large and on close, so a cleanly closed table reopens without
+ * reading anything but its header.
+ * 
+ * <p>Senders whose count drops to zero keep their slot so that probing stays
+ * valid; the table is rewritten without them when it needs to grow.
+ * 
+ * <p>A full rebuild is filled through a {@link Build}, which writes straight
+ * into a mapped staging file, so not even a rebuild holds the senders on the heap.
+ */
+public class SenderTable implements Closeable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SenderTable.class);
+    
+    private static final long MAGIC = 0x53454E4454424C31L; // "SENDTBL1"
+    private static final int HEADER_BYTES = 80;
+    private static final int SLOT_BYTES = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int USED_OFFSET = 16;
+    private static final int SENDERS_OFFSET = 24;
+    private static final int MESSAGES_OFFSET = 32;
+    private static final int HISTORY_ID_OFFSET = 40;
+    private static final int BUILT_AT_OFFSET = 48;
+    private static final int UPDATED_AT_OFFSET = 56;
+    private static final int CLEAN_OFFSET = 64;
+    private static final int EPOCH_OFFSET = 72;
+    
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int FRAME_FIXED_BYTES = 32;
+    private static final long CHECKPOINT_LOG_BYTES = 16L * 1024 * 1024;
+    private static final String BUILD_SUFFIX = ".build-";
+    
+    private final Path tableFile;
+    private final Path logFile;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private FileChannel logChannel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private long used;
+    private long epoch;
+    private volatile long senders;
+    private volatile long messages;
+    private volatile long historyId;
+    private volatile long builtAtMillis;
+    private volatile long updatedAtMillis;
+    
+    /**
+     * One logged change: the new count of every sender it touches.
+     */
+    private record Frame(long historyId, long messages, long updatedAtMillis, long[] keys, long[] counts) {
+    }
+    
+    /**
+     * A replacement table filled in a staging file next to the live one, e.g.
+     * by a full sync, and swapped in by {@link #commit}. Queries keep reading
+     * the live table meanwhile. Closing a build that was not committed deletes
+     * its staging file. Not thread-safe.
+     */
+    public final class Build implements Closeable {
+        
+        private Path file;
+        private MappedByteBuffer buffer;
+        private int buildCapacity = MIN_CAPACITY;
+        private long buildUsed;
+        private long buildSenders;
+        private long buildMessages;
+        private boolean finished;
+        
+        private Build() throws IOException {
+            file = newBuildFile();
+            buffer = createTable(file, buildCapacity);
+        }
+        
+        public void merge(String sender, long delta) throws IOException {
+            merge(hash(sender), delta);
+        }
+        
+        /**
+         * Adds the delta to the count of the sender with the given hash; counts do not go below zero.
+         */
+        public void merge(long key, long delta) throws IOException {
+            if (tooFullFor(buildUsed + 1, buildCapacity)) {
+                grow();
+            }
+            int mask = buildCapacity - 1;
+            for (int slot = (int) (key & mask); ; slot = (slot + 1) & mask) {
+                int offset = slotOffset(slot);
+                long stored = buffer.getLong(offset);
+                if (stored == key) {
+                    long previous = buffer.getLong(offset + 8);
+                    long count = Math.max(0, previous + delta);
+                    buffer.putLong(offset + 8, count);
+                    buildMessages += count - previous;
+                    buildSenders += (count > 0 ? 1 : 0) - (previous > 0 ? 1 : 0);
+                    return;
+                }
+                if (stored == 0) {
+                    if (delta > 0) {
+                        buffer.putLong(offset + 8, delta);
+                        buffer.putLong(offset, key);
+                        buildUsed++;
+                        buildSenders++;
+                        buildMessages += delta;
+                    }
+                    return;
+                }
+            }
+        }
+        
+        public long senders() {
+            return buildSenders;
+        }
+        
+        public long messages() {
+            return buildMessages;
+        }
+        
+        /**
+         * Replaces the live table with this one. The new table gets a new
+         * epoch, so the log of the old one is never replayed over it.
+         */
+        public void commit(long syncedHistoryId) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("Sender table build already finished");
+            }
+            long now = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                writeHeader(buffer, buildCapacity, buildUsed, buildSenders, buildMessages, nextEpoch(),
+                        syncedHistoryId, now, now);
+                buffer.force();
+                Files.move(file, tableFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                finished = true;
+                map();
+                truncateLog();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                finished = true;
+                Files.deleteIfExists(file);
+            }
+        }
+        
+        private void grow() throws IOException {
+            if (buildCapacity == MAX_CAPACITY) {
+                throw new IOException("Sender table cannot hold " + buildUsed + " senders");
+            }
+            int grownCapacity = buildCapacity << 1;
+            Path grownFile = newBuildFile();
+            MappedByteBuffer grown = createTable(grownFile, grownCapacity);
+            buildUsed = copyLive(buffer, buildCapacity, grown, grownCapacity);
+            Files.deleteIfExists(file);
+            file = grownFile;
+            buffer = grown;
+            buildCapacity = grownCapacity;
+        }
+    }
+    
+    private SenderTable(Path base) {
+        this.tableFile = base.resolveSibling(base.getFileName() + ".tbl");
+        this.logFile = base.resolveSibling(base.getFileName() + ".log");
+    }
+    
+    /**
+     * Opens the table stored at {@code base}.tbl and {@code base}.log, creating
+     * an empty one if there is none, and replays changes not yet in the table.
+     */
+    public static SenderTable open(Path base) throws IOException {
+        SenderTable senderTable = new SenderTable(base.toAbsolutePath());
+        senderTable.load();
+        return senderTable;
+    }
+    
+    private void load() throws IOException {
+        if (tableFile.getParent() != null) {
+            Files.createDirectories(tableFile.getParent());
+        }
+        deleteAbandonedBuilds();
+        if (!isValidTable(tableFile)) {
+            writeEmptyTable(tableFile, System.currentTimeMillis());
+        }
+        map();
+        boolean clean = table.getLong(CLEAN_OFFSET) == 1;
+        if (!clean) {
+            // Slot writes may have reached the disk without the header
+            recount();
+        }
+        table.putLong(CLEAN_OFFSET, 0);
+        table.force();
+        
+        logChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        int replayed = replay();
+        if (logChannel.size() > 0) {
+            checkpoint();
+        }
+        if (replayed > 0) {
+            logger.info("Replayed {} sender table changes from {}", replayed, logFile);
+        }
+        logger.info("Opened sender table {} ({} senders, {} slots)", tableFile, senders, capacity);
+    }
+    
+    public long get(String sender) {
+        long key = hash(sender);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            return slot >= 0 ? table.getLong(slotOffset(slot) + 8) : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Mailbox history id the counts are current as of, or -1 if never built.
+     */
+    public long historyId() {
+        return historyId;
+    }
+    
+    /**
+     * Senders with at least one message.
+     */
+    public long senders() {
+        return senders;
+    }
+    
+    public long messages() {
+        return messages;
+    }
+    
+    /**
+     * When the table was last replaced in full, or 0 if never.
+     */
+    public long builtAtMillis() {
+        return builtAtMillis;
+    }
+    
+    public long updatedAtMillis() {
+        return updatedAtMillis;
+    }
+    
+    public boolean isBuilt() {
+        return builtAtMillis > 0;
+    }
+    
+    /**
+     * Starts a replacement of all counts, e.g. for a full sync.
+     */
+    public Build build() throws IOException {
+        return new Build();
+    }
+    
+    /**
+     * Adds the delta of each sender, durably, and moves the table to {@code syncedHistoryId}.
+     * Counts do not go below zero.
+     */
+    public void apply(Map<String, Long> deltas, long syncedHistoryId) throws IOException {
+        // Sum per hash in primitive arrays; senders sharing a hash share a count
+        long[] senderKeys = new long[deltas.size()];
+        long[] senderDeltas = new long[deltas.size()];
+        int n = 0;
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            senderKeys[n] = hash(delta.getKey());
+            senderDeltas[n++] = delta.getValue();
+        }
+        long[] keys = distinctSorted(senderKeys);
+        long[] counts = new long[keys.length];
+        for (int i = 0; i < n; i++) {
+            counts[Arrays.binarySearch(keys, senderKeys[i])] += senderDeltas[i];
+        }
+        
+        lock.writeLock().lock();
+        try {
+            long newSlots = 0;
+            long total = messages;
+            for (int i = 0; i < keys.length; i++) {
+                long current = currentCount(keys[i]);
+                counts[i] = Math.max(0, current + counts[i]);
+                total += counts[i] - current;
+                if (counts[i] > 0 && find(keys[i]) < 0) {
+                    newSlots++;
+                }
+            }
+            if (tooFull(used + newSlots)) {
+                // Grow before logging; the new table holds everything logged so far
+                grow(newSlots);
+                truncateLog();
+            }
+            
+            Frame frame = new Frame(syncedHistoryId, Math.max(0, total), System.currentTimeMillis(), keys, counts);
+            appendFrame(frame);
+            applyFrame(frame);
+            if (logChannel.size() > CHECKPOINT_LOG_BYTES) {
+                checkpoint();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Drops all counts; the table is not built until the next {@link #build} is committed.
+     */
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Path tmp = tableFile.resolveSibling(tableFile.getFileName() + ".tmp");
+            writeEmptyTable(tmp, nextEpoch());
+            Files.move(tmp, tableFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            map();
+            truncateLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Folds the log into the table and marks it cleanly closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (logChannel == null) {
+                return;
+            }
+            checkpoint();
+            table.putLong(CLEAN_OFFSET, 1);
+            table.force();
+            logChannel.close();
+            logChannel = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes with a final avalanche, never 0 (the empty slot).
+     */
+    static long hash(String sender) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : sender.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+    
+    private long nextEpoch() {
+        return Math.max(epoch + 1, System.currentTimeMillis());
+    }
+    
+    private int find(long key) {
+        int mask = capacity - 1;
+        for (int slot = (int) (key & mask); ; slot = (slot + 1) & mask) {
+            long stored = table.getLong(slotOffset(slot));
+            if (stored == key) {
+                return slot;
+            }
+            if (stored == 0) {
+                return -1;
+            }
+        }
+    }
+    
+    private long currentCount(long key) {
+        int slot = find(key);
+        return slot >= 0 ? table.getLong(slotOffset(slot) + 8) : 0;
+    }
+    
+    private void put(long key, long count) {
+        int mask = capacity - 1;
+        for (int slot = (int) (key & mask); ; slot = (slot + 1) & mask) {
+            int offset = slotOffset(slot);
+            long stored = table.getLong(offset);
+            if (stored == key) {
+                long previous = table.getLong(offset + 8);
+                table.putLong(offset + 8, count);
+                senders += (count > 0 ? 1 : 0) - (previous > 0 ? 1 : 0);
+                return;
+            }
+            if (stored == 0) {
+                if (count == 0) {
+                    return;
+                }
+                // Count before key, so a reader never sees a key without its count
+                table.putLong(offset + 8, count);
+                table.putLong(offset, key);
+                used++;
+                senders++;
+                return;
+            }
+        }
+    }
+    
+    private boolean tooFull(long slots) {
+        return slots * 10 > capacity * 7L;
+    }
+    
+    private static long[] distinctSorted(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+    
+    private void recount() {
+        used = 0;
+        senders = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            if (table.getLong(offset) != 0) {
+                used++;
+                if (table.getLong(offset + 8) > 0) {
+                    senders++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies the live senders slot by slot into a new table file with room
+     * for {@code reserve} more and swaps it in, which also drops zero counts.
+     */
+    private void grow(long reserve) throws IOException {
+        int newCapacity = MIN_CAPACITY;
+        while (tooFullFor(senders + reserve, newCapacity)) {
+            if (newCapacity == MAX_CAPACITY) {
+                throw new IOException("Sender table cannot hold " + (senders + reserve) + " senders");
+            }
+            newCapacity <<= 1;
+        }
+        Path tmp = tableFile.resolveSibling(tableFile.getFileName() + ".tmp");
+        MappedByteBuffer grown = createTable(tmp, newCapacity);
+        long copied = copyLive(table, capacity, grown, newCapacity);
+        writeHeader(grown, newCapacity, copied, copied, messages, epoch, historyId, builtAtMillis, updatedAtMillis);
+        grown.force();
+        Files.move(tmp, tableFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+    }
+    
+    private static boolean tooFullFor(long entries, int capacity) {
+        // Leave room to grow before the next rewrite
+        return entries * 2 > capacity;
+    }
+    
+    /**
+     * Inserts every slot with a positive count into the empty target table.
+     * 
+     * @return the number of slots copied
+     */
+    private static long copyLive(MappedByteBuffer from, int fromCapacity, MappedByteBuffer to, int toCapacity) {
+        int mask = toCapacity - 1;
+        long copied = 0;
+        for (int source = 0; source < fromCapacity; source++) {
+            long key = from.getLong(slotOffset(source));
+            long count = from.getLong(slotOffset(source) + 8);
+            if (key == 0 || count <= 0) {
+                continue;
+            }
+            int slot = (int) (key & mask);
+            while (to.getLong(slotOffset(slot)) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            to.putLong(slotOffset(slot) + 8, count);
+            to.putLong(slotOffset(slot), key);
+            copied++;
+        }
+        return copied;
+    }
+    
+    /**
+     * Creates a zero-filled table file of the given capacity without a valid header yet.
+     */
+    private static MappedByteBuffer createTable(Path file, int capacity) throws IOException {
+        long size = HEADER_BYTES + (long) capacity * SLOT_BYTES;
+        Files.deleteIfExists(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+    
+    private static void writeEmptyTable(Path file, long epoch) throws IOException {
+        MappedByteBuffer buffer = createTable(file, MIN_CAPACITY);
+        writeHeader(buffer, MIN_CAPACITY, 0, 0, 0, epoch, -1, 0, 0);
+        buffer.force();
+    }
+    
+    /**
+     * Writes the header, magic last, so a file is only valid once its slots are in place.
+     */
+    private static void writeHeader(MappedByteBuffer buffer, int capacity, long used, long senders, long messages,
+                                    long epoch, long historyId, long builtAt, long updatedAt) {
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(USED_OFFSET, used);
+        buffer.putLong(SENDERS_OFFSET, senders);
+        buffer.putLong(MESSAGES_OFFSET, messages);
+        buffer.putLong(HISTORY_ID_OFFSET, historyId);
+        buffer.putLong(BUILT_AT_OFFSET, builtAt);
+        buffer.putLong(UPDATED_AT_OFFSET, updatedAt);
+        buffer.putLong(CLEAN_OFFSET, 0);
+        buffer.putLong(EPOCH_OFFSET, epoch);
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+    }
+    
+    private Path newBuildFile() {
+        return tableFile.resolveSibling(tableFile.getFileName() + BUILD_SUFFIX + System.nanoTime());
+    }
+    
+    /**
+     * Deletes staging files of builds interrupted by a crash.
+     */
+    private void deleteAbandonedBuilds() throws IOException {
+        String prefix = tableFile.getFileName() + BUILD_SUFFIX;
+        try (Stream<Path> siblings = Files.list(tableFile.getParent())) {
+            for (Path sibling : (Iterable<Path>) siblings::iterator) {
+                if (sibling.getFileName().toString().startsWith(prefix)) {
+                    Files.deleteIfExists(sibling);
+                }
+            }
+        }
+    }
+    
+    private static boolean isValidTable(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            long capacity = header.getLong(CAPACITY_OFFSET);
+            boolean valid = header.getLong(MAGIC_OFFSET) == MAGIC
+                    && capacity >= MIN_CAPACITY && capacity <= MAX_CAPACITY && Long.bitCount(capacity) == 1
+                    && channel.size() == HEADER_BYTES + capacity * SLOT_BYTES;
+            if (!valid) {
+                logger.warn("Ignoring unreadable sender table {}", file);
+            }
+            return valid;
+        }
+    }
+    
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(tableFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            table = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        capacity = (int) table.getLong(CAPACITY_OFFSET);
+        used = table.getLong(USED_OFFSET);
+        epoch = table.getLong(EPOCH_OFFSET);
+        senders = table.getLong(SENDERS_OFFSET);
+        messages = table.getLong(MESSAGES_OFFSET);
+        historyId = table.getLong(HISTORY_ID_OFFSET);
+        builtAtMillis = table.getLong(BUILT_AT_OFFSET);
+        updatedAtMillis = table.getLong(UPDATED_AT_OFFSET);
+    }
+    
+    /**
+     * Forces the table to disk, after which the log can be dropped.
+     */
+    private void checkpoint() throws IOException {
+        table.force();
+        truncateLog();
+    }
+    
+    private void truncateLog() throws IOException {
+        logChannel.truncate(0);
+        logChannel.force(true);
+    }
+    
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+    
+    private void appendFrame(Frame frame) throws IOException {
+        int payloadBytes = FRAME_FIXED_BYTES + frame.keys().length * SLOT_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + payloadBytes);
+        buffer.position(FRAME_HEADER_BYTES);
+        buffer.putLong(epoch).putLong(frame.historyId()).putLong(frame.messages()).putLong(frame.updatedAtMillis());
+        for (int i = 0; i < frame.keys().length; i++) {
+            buffer.putLong(frame.keys()[i]).putLong(frame.counts()[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), FRAME_HEADER_BYTES, payloadBytes);
+        buffer.putInt(0, payloadBytes).putInt(4, (int) crc.getValue());
+        buffer.flip();
+        
+        long position = logChannel.size();
+        while (buffer.hasRemaining()) {
+            position += logChannel.write(buffer, position);
+        }
+        logChannel.force(false);
+    }
+    
+    private void applyFrame(Frame frame) {
+        for (int i = 0; i < frame.keys().length; i++) {
+            put(frame.keys()[i], frame.counts()[i]);
+        }
+        historyId = frame.historyId();
+        messages = frame.messages();
+        updatedAtMillis = frame.updatedAtMillis();
+        table.putLong(USED_OFFSET, used);
+        table.putLong(SENDERS_OFFSET, senders);
+        table.putLong(MESSAGES_OFFSET, messages);
+        table.putLong(HISTORY_ID_OFFSET, historyId);
+        table.putLong(UPDATED_AT_OFFSET, updatedAtMillis);
+    }
+    
+    /**
+     * Applies every intact frame of the table's epoch and cuts off a torn one
+     * at the end. Frames of another epoch were logged against a table that has
+     * since been replaced, e.g. by a crash between the swap and the truncation.
+     * 
+     * @return the number of frames applied
+     */
+    private int replay() throws IOException {
+        long position = 0;
+        long size = logChannel.size();
+        int frames = 0;
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+        while (position + FRAME_HEADER_BYTES <= size) {
+            header.clear();
+            logChannel.read(header, position);
+            int payloadBytes = header.getInt(0);
+            if (payloadBytes < FRAME_FIXED_BYTES || (payloadBytes - FRAME_FIXED_BYTES) % SLOT_BYTES != 0
+                    || position + FRAME_HEADER_BYTES + payloadBytes > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+            logChannel.read(payload, position + FRAME_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            
+            payload.flip();
+            long frameEpoch = payload.getLong();
+            long frameHistoryId = payload.getLong();
+            long frameMessages = payload.getLong();
+            long frameUpdatedAt = payload.getLong();
+            int entries = (payloadBytes - FRAME_FIXED_BYTES) / SLOT_BYTES;
+            long[] keys = new long[entries];
+            long[] counts = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                keys[i] = payload.getLong();
+                counts[i] = payload.getLong();
+            }
+            position += FRAME_HEADER_BYTES + payloadBytes;
+            if (frameEpoch != epoch) {
+                continue;
+            }
+            if (tooFull(used + entries)) {
+                // The log is kept, replaying earlier frames again is harmless
+                grow(entries);
+            }
+            applyFrame(new Frame(frameHistoryId, frameMessages, frameUpdatedAt, keys, counts));
+            frames++;
+        }
+        if (position < size) {
+            logger.warn("Dropping {} bytes of incomplete sender table changes from {}", size - position, logFile);
+            logChannel.truncate(position);
+        }
+        return frames;
+    }
+}
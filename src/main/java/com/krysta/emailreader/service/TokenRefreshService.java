@@ -0,0 +1,216 @@
+package com.krysta.emailreader.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Renews OAuth access tokens in the background before they expire.
+ * Request threads read the latest token from an in-memory snapshot; at most
+ * one refresh per account is in flight at any time.
+ */
+@Service
+public class TokenRefreshService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefreshService.class);
+    private static final long EXPIRY_SKEW_MILLIS = 30_000;
+    
+    private final GmailConfig gmailConfig;
+    private final ScheduledExecutorService scheduler;
+    private final Counter refreshSuccessCounter;
+    private final Counter refreshFailureCounter;
+    
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    
+    private record AccessToken(String value, long expiresAtMillis) {
+        boolean isUsable() {
+            return value != null && System.currentTimeMillis() + EXPIRY_SKEW_MILLIS < expiresAtMillis;
+        }
+    }
+    
+    private static final class Account {
+        private final Credential credential;
+        private volatile AccessToken token;
+        private volatile ScheduledFuture<?> nextRefresh;
+        
+        private Account(Credential credential) {
+            this.credential = credential;
+        }
+    }
+    
+    public TokenRefreshService(GmailConfig gmailConfig, MeterRegistry meterRegistry) {
+        this.gmailConfig = gmailConfig;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gmail-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refreshSuccessCounter = Counter.builder("gmail.token.refreshes")
+                .tag("result", "success")
+                .description("Background OAuth token refreshes")
+                .register(meterRegistry);
+        this.refreshFailureCounter = Counter.builder("gmail.token.refreshes")
+                .tag("result", "failure")
+                .description("Background OAuth token refreshes")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Starts managing the given credential, replacing any previous one for the account.
+     */
+    public void register(String accountId, Credential credential) {
+        Account account = new Account(credential);
+        account.token = snapshot(credential);
+        
+        Account previous = accounts.put(accountId, account);
+        if (previous != null) {
+            cancel(previous);
+        }
+        scheduleNext(accountId, account, false);
+    }
+    
+    /**
+     * Stops managing the account's credential.
+     */
+    public void unregister(String accountId) {
+        Account previous = accounts.remove(accountId);
+        if (previous != null) {
+            cancel(previous);
+        }
+    }
+    
+    /**
+     * Returns the current access token without any I/O. Only when the
+     * background refresh has fallen behind and the token is already expired
+     * does the caller wait for the (shared) in-flight refresh.
+     */
+    public String getAccessToken(String accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            throw new GmailApiException("No credential registered for account: " + accountId);
+        }
+        
+        AccessToken token = account.token;
+        if (token != null && token.isUsable()) {
+            return token.value();
+        }
+        
+        refresh(accountId).join();
+        return account.token != null ? account.token.value() : null;
+    }
+    
+    /**
+     * Refreshes the account's token, joining a refresh that is already in flight.
+     *
+     * @return future completing with true if the token was refreshed
+     */
+    public CompletableFuture<Boolean> refresh(String accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(accountId, created);
+        if (existing != null) {
+            return existing;
+        }
+        
+        scheduler.execute(() -> {
+            boolean refreshed = doRefresh(account);
+            inFlight.remove(accountId, created);
+            if (accounts.get(accountId) == account) {
+                scheduleNext(accountId, account, !refreshed);
+            }
+            created.complete(refreshed);
+        });
+        return created;
+    }
+    
+    private boolean doRefresh(Account account) {
+        Credential credential = account.credential;
+        if (credential.getRefreshToken() == null) {
+            logger.warn("No refresh token available");
+            return false;
+        }
+        
+        try {
+            if (!credential.refreshToken()) {
+                refreshFailureCounter.increment();
+                return false;
+            }
+            account.token = snapshot(credential);
+            refreshSuccessCounter.increment();
+            logger.info("Token refreshed in background. New expiration: {} seconds",
+                    credential.getExpiresInSeconds());
+            return true;
+        } catch (Exception e) {
+            refreshFailureCounter.increment();
+            logger.warn("Failed to refresh token: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Schedules the next refresh at expiry minus the lead time minus a random
+     * jitter, so that several instances do not refresh in lock-step. After a
+     * failed refresh the retry delay is used even if the old token is still
+     * usable; inside the lead window the computed delay would be zero.
+     */
+    private void scheduleNext(String accountId, Account account, boolean lastRefreshFailed) {
+        GmailConfig.TokenRefresh settings = gmailConfig.getTokenRefresh();
+        Credential credential = account.credential;
+        if (credential.getRefreshToken() == null) {
+            return;
+        }
+        
+        long delayMillis;
+        Long expiresIn = credential.getExpiresInSeconds();
+        if (lastRefreshFailed || account.token == null || !account.token.isUsable() || expiresIn == null) {
+            delayMillis = settings.getRetryDelay().toMillis();
+        } else {
+            long jitterMillis = settings.getJitter().toMillis();
+            long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis) : 0;
+            delayMillis = Math.max(0, TimeUnit.SECONDS.toMillis(expiresIn)
+                    - settings.getLeadTime().toMillis() - jitter);
+        }
+        
+        account.nextRefresh = scheduler.schedule(() -> refresh(accountId), delayMillis, TimeUnit.MILLISECONDS);
+        logger.debug("Next token refresh in {} ms", delayMillis);
+    }
+    
+    private void cancel(Account account) {
+        ScheduledFuture<?> next = account.nextRefresh;
+        if (next != null) {
+            next.cancel(false);
+        }
+    }
+    
+    private AccessToken snapshot(Credential credential) {
+        Long expiresAt = credential.getExpirationTimeMilliseconds();
+        return new AccessToken(credential.getAccessToken(), expiresAt != null ? expiresAt : Long.MAX_VALUE);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
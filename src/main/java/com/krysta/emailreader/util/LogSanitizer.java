@@ -1,5 +1,7 @@
 package com.krysta.emailreader.util;
 
+import com.krysta.emailreader.dto.EmailAddress;
+
 /**
  * Utility class for sanitizing sensitive information in logs.
  */
@@ -36,6 +38,19 @@ public class LogSanitizer {
         return localPart.substring(0, 2) + "****" + domain;
     }
     
+    /**
+     * Masks an already parsed email address using its canonical form.
+     * 
+     * @param email The parsed email address to mask
+     * @return Masked email address
+     */
+    public static String maskEmail(EmailAddress email) {
+        if (email == null) {
+            return "[EMPTY]";
+        }
+        return maskEmail(email.canonical());
+    }
+    
     /**
      * Masks an IP address to protect privacy in logs.
      * Example: 192.168.1.100 → 192.168.*.*
@@ -1,22 +1,35 @@
 package com.krysta.emailreader.controller;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cache.CacheManager;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
 import com.krysta.emailreader.exception.InvalidEmailException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
 import com.krysta.emailreader.service.AuditService;
+import com.krysta.emailreader.service.AuthorizationFlowCache;
+import com.krysta.emailreader.service.CountQuery;
 import com.krysta.emailreader.service.CredentialsStorageService;
+import com.krysta.emailreader.service.EmailCountResult;
 import com.krysta.emailreader.service.EmailService;
+import com.krysta.emailreader.service.RequestDeadline;
 
 /**
  * Unit tests for EmailController using MockMvc.
@@ -42,24 +55,34 @@ class EmailControllerTest {
     @MockBean
     private GmailConfig gmailConfig;
     
+    @MockBean
+    private AuthorizationFlowCache authorizationFlowCache;
+    
     @Test
     @WithMockUser
     void testCountEmails_ValidEmail_ReturnsOk() throws Exception {
         // Arrange
         String senderEmail = "superman@example.com";
         long emailCount = 10L;
-        when(emailService.getEmailCount(senderEmail)).thenReturn(emailCount);
-        when(cacheManager.getCache("emailCounts")).thenReturn(null);
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailCountResult(sender(senderEmail),
+                                emailCount, false, Duration.ZERO, Duration.ofMinutes(5), false, true)));
         
-        // Act & Assert
-        mockMvc.perform(get("/api/v1/emails/count")
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
                 .param("senderEmail", senderEmail))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.senderEmail").value(senderEmail))
                 .andExpect(jsonPath("$.emailCount").value(emailCount))
                 .andExpect(jsonPath("$.cachedResult").isBoolean())
+                .andExpect(jsonPath("$.stale").value(false))
                 .andExpect(jsonPath("$.timestamp").exists());
-        verify(emailService, times(1)).getEmailCount(senderEmail);
+        verify(emailService, times(1)).getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), any());
     }
     
     @Test
@@ -67,7 +90,7 @@ class EmailControllerTest {
     void testCountEmails_InvalidEmail_ReturnsBadRequest() throws Exception {
         // Arrange
         String invalidEmail = "not-an-email";
-        when(emailService.getEmailCount(invalidEmail))
+        when(emailService.getEmailCountResultAsync(eq(invalidEmail), any(), any()))
                 .thenThrow(new InvalidEmailException("Invalid email format: " + invalidEmail));
         
         // Act & Assert
@@ -103,15 +126,156 @@ class EmailControllerTest {
         // Arrange
         String senderEmail = "noone@example.com";
         long emailCount = 0L;
-        when(emailService.getEmailCount(senderEmail)).thenReturn(emailCount);
-        when(cacheManager.getCache("emailCounts")).thenReturn(null);
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailCountResult(sender(senderEmail),
+                                emailCount, false, Duration.ZERO, Duration.ofMinutes(5), false, true)));
         
-        // Act & Assert
-        mockMvc.perform(get("/api/v1/emails/count")
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
                 .param("senderEmail", senderEmail))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.senderEmail").value(senderEmail))
                 .andExpect(jsonPath("$.emailCount").value(0));
-        verify(emailService, times(1)).getEmailCount(senderEmail);
+        verify(emailService, times(1)).getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), any());
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmails_StaleResult_ReportsAge() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailCountResult(sender(senderEmail),
+                                3L, true, Duration.ofSeconds(400), Duration.ofSeconds(500), true, true)));
+        
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
+                .param("senderEmail", senderEmail))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.emailCount").value(3))
+                .andExpect(jsonPath("$.cachedResult").value(true))
+                .andExpect(jsonPath("$.ageSeconds").value(400))
+                .andExpect(jsonPath("$.remainingTtlSeconds").value(500))
+                .andExpect(jsonPath("$.stale").value(true));
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmails_EstimateMode_ReportsApproximate() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.ESTIMATE), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailCountResult(sender(senderEmail),
+                                1200L, false, Duration.ZERO, Duration.ofMinutes(5), false, false)));
+        
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
+                .param("senderEmail", senderEmail)
+                .param("mode", "estimate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.emailCount").value(1200))
+                .andExpect(jsonPath("$.exact").value(false));
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmails_AtLeast_ReportsThresholdMet() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.atLeast(1000)), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailCountResult(sender(senderEmail),
+                                1000L, false, Duration.ZERO, Duration.ofMinutes(5), false, false)));
+        
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
+                .param("senderEmail", senderEmail)
+                .param("atLeast", "1000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.emailCount").value(1000))
+                .andExpect(jsonPath("$.exact").value(false))
+                .andExpect(jsonPath("$.thresholdMet").value(true));
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmails_UnknownMode_ReturnsBadRequest() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/emails/count")
+                .param("senderEmail", "superman@example.com")
+                .param("mode", "guess"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value(400));
+        verify(emailService, never()).getEmailCountResultAsync(any(), any(), any());
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmails_TimeoutHeader_PassesDeadlineAndMapsTimeoutTo504() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        ArgumentCaptor<RequestDeadline> deadline = ArgumentCaptor.forClass(RequestDeadline.class);
+        when(emailService.getEmailCountResultAsync(eq(senderEmail), eq(CountQuery.EXACT), deadline.capture()))
+                .thenReturn(CompletableFuture.failedFuture(new RequestTimeoutException("Request deadline exceeded")));
+        
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count")
+                .param("senderEmail", senderEmail)
+                .header("X-Request-Timeout-Ms", "1500"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(jsonPath("$.status").value(504));
+        assertTrue(deadline.getValue().remaining().compareTo(Duration.ofMillis(1500)) <= 0);
+    }
+    
+    @Test
+    @WithMockUser
+    void testCountEmailSet_ReturnsCountAcrossSenders() throws Exception {
+        // Arrange
+        when(emailService.countMessageSetAsync(eq(List.of("a@example.com", "b@example.com")),
+                eq(List.of("CATEGORY_PROMOTIONS")), any()))
+                .thenReturn(CompletableFuture.completedFuture(new EmailService.MessageSetCount(12L, 1)));
+        
+        // Act
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/emails/count/set")
+                .param("senderEmail", "a@example.com", "b@example.com")
+                .param("excludedLabel", "CATEGORY_PROMOTIONS"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        // Assert
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.emailCount").value(12))
+                .andExpect(jsonPath("$.gmailScans").value(1))
+                .andExpect(jsonPath("$.senderEmails[1]").value("b@example.com"));
+    }
+    
+    private static EmailAddress sender(String email) {
+        int at = email.indexOf('@');
+        return new EmailAddress(email, email.substring(0, at), email.substring(at + 1), email);
     }
 }
@@ -0,0 +1,99 @@
+package com.krysta.emailreader.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.krysta.emailreader.config.RateLimitProperties;
+import com.krysta.emailreader.service.AuditService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RateLimitFilter.
+ */
+class RateLimitFilterTest {
+    
+    private static final String PATH = "/api/v1/emails/count";
+    
+    private AuditService auditService;
+    private RateLimitProperties properties;
+    private RateLimitFilter filter;
+    
+    @BeforeEach
+    void setUp() {
+        auditService = mock(AuditService.class);
+        properties = new RateLimitProperties();
+        properties.setRequestsPerMinute(2);
+        filter = new RateLimitFilter(properties, auditService, new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+    
+    @Test
+    void testFilter_WithinLimit_PassesThroughWithRemainingHeader() throws Exception {
+        // Act
+        MockHttpServletResponse response = send("10.0.0.1");
+        
+        // Assert
+        assertEquals(200, response.getStatus());
+        assertEquals("1", response.getHeader("X-Rate-Limit-Remaining"));
+        verifyNoInteractions(auditService);
+    }
+    
+    @Test
+    void testFilter_LimitExceeded_Returns429WithRetryAfter() throws Exception {
+        // Arrange
+        send("10.0.0.1");
+        send("10.0.0.1");
+        
+        // Act
+        MockHttpServletResponse response = send("10.0.0.1");
+        
+        // Assert
+        assertEquals(429, response.getStatus());
+        assertEquals("0", response.getHeader("X-Rate-Limit-Remaining"));
+        assertTrue(Long.parseLong(response.getHeader("Retry-After")) >= 1);
+        verify(auditService).logRateLimitViolation("10.0.0.1", PATH);
+    }
+    
+    @Test
+    void testFilter_SeparateClients_HaveSeparateBuckets() throws Exception {
+        // Arrange
+        send("10.0.0.1");
+        send("10.0.0.1");
+        
+        // Act
+        MockHttpServletResponse response = send("10.0.0.2");
+        
+        // Assert
+        assertEquals(200, response.getStatus());
+    }
+    
+    @Test
+    void testFilter_ForwardedHeaderNotTrusted_UsesRemoteAddress() throws Exception {
+        // Arrange
+        send("10.0.0.1");
+        send("10.0.0.1");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", PATH);
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "203.0.113.7");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        // Act
+        filter.doFilter(request, response, new MockFilterChain());
+        
+        // Assert
+        assertEquals(429, response.getStatus());
+    }
+    
+    private MockHttpServletResponse send(String remoteAddr) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", PATH);
+        request.setRemoteAddr(remoteAddr);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
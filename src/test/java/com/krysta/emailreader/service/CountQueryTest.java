@@ -0,0 +1,51 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.exception.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CountQuery.
+ */
+class CountQueryTest {
+    
+    @Test
+    void testFromParameters_NoParameters_IsExact() {
+        // Act
+        CountQuery query = CountQuery.fromParameters(null, null);
+        
+        // Assert
+        assertEquals(CountQuery.EXACT, query);
+        assertFalse(query.stopsEarly());
+    }
+    
+    @Test
+    void testFromParameters_ModeNamesIgnoreCaseAndSeparators() {
+        // Act & Assert
+        assertEquals(CountQuery.ESTIMATE, CountQuery.fromParameters("Estimate", null));
+        assertEquals(CountQuery.EXISTS, CountQuery.fromParameters("exists", null));
+        assertEquals(CountQuery.atLeast(5), CountQuery.fromParameters("at-least", 5L));
+        assertEquals(CountQuery.atLeast(5), CountQuery.fromParameters("atLeast", 5L));
+    }
+    
+    @Test
+    void testFromParameters_AtLeastAlone_ImpliesAtLeastMode() {
+        // Act
+        CountQuery query = CountQuery.fromParameters(null, 1000L);
+        
+        // Assert
+        assertEquals(CountMode.AT_LEAST, query.mode());
+        assertEquals(1000L, query.threshold());
+        assertTrue(query.stopsEarly());
+    }
+    
+    @Test
+    void testFromParameters_InvalidCombinations_Throw() {
+        // Act & Assert
+        assertThrows(InvalidRequestException.class, () -> CountQuery.fromParameters("guess", null));
+        assertThrows(InvalidRequestException.class, () -> CountQuery.fromParameters("atLeast", null));
+        assertThrows(InvalidRequestException.class, () -> CountQuery.fromParameters("exists", 3L));
+        assertThrows(InvalidRequestException.class, () -> CountQuery.fromParameters(null, 0L));
+    }
+}
@@ -1,12 +1,37 @@
 package com.krysta.emailreader.service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
+import com.krysta.emailreader.exception.GmailApiException;
 import com.krysta.emailreader.exception.InvalidEmailException;
+import com.krysta.emailreader.exception.InvalidRequestException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -19,22 +44,47 @@ class EmailServiceTest {
     @Mock
     private GmailService gmailService;
     
-    @InjectMocks
+    private SimpleMeterRegistry meterRegistry;
+    
+    private EmailCacheProperties cacheProperties;
+    
+    private GmailConfig gmailConfig;
+    
+    private SenderIndex senderIndex;
+    
+    private MessageBitmapIndex messageBitmaps;
+    
+    private GmailCircuitBreaker circuitBreaker;
+    
+    @TempDir
+    Path tempDir;
+    
     private EmailService emailService;
     
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cacheProperties = new EmailCacheProperties();
+        gmailConfig = new GmailConfig();
+        senderIndex = new SenderIndex(cacheProperties, meterRegistry);
+        messageBitmaps = new MessageBitmapIndex(cacheProperties, meterRegistry);
+        circuitBreaker = new GmailCircuitBreaker(gmailConfig, mock(AuditService.class), meterRegistry);
+        emailService = newEmailService();
+    }
+    
     @Test
     void testGetEmailCount_ValidEmail_ReturnsCount() {
         // Arrange
         String senderEmail = "superman@example.com";
         long expectedCount = 10L;
-        when(gmailService.countEmailsFromSender(senderEmail)).thenReturn(expectedCount);
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenReturn(expectedCount);
         
         // Act
         long actualCount = emailService.getEmailCount(senderEmail);
         
         // Assert
         assertEquals(expectedCount, actualCount);
-        verify(gmailService, times(1)).countEmailsFromSender(senderEmail);
+        verify(gmailService, times(1)).countEmailsFromSender(sender(senderEmail), any());
     }
     
     @Test
@@ -47,7 +97,7 @@ class EmailServiceTest {
             emailService.getEmailCount(invalidEmail);
         });
         
-        verify(gmailService, never()).countEmailsFromSender(anyString());
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
     }
     
     @Test
@@ -60,7 +110,7 @@ class EmailServiceTest {
             emailService.getEmailCount(emptyEmail);
         });
         
-        verify(gmailService, never()).countEmailsFromSender(anyString());
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
     }
     
     @Test
@@ -73,7 +123,7 @@ class EmailServiceTest {
             emailService.getEmailCount(nullEmail);
         });
         
-        verify(gmailService, never()).countEmailsFromSender(anyString());
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
     }
     
     @Test
@@ -81,13 +131,464 @@ class EmailServiceTest {
         // Arrange
         String senderEmail = "user123@example.com";
         long expectedCount = 5L;
-        when(gmailService.countEmailsFromSender(senderEmail)).thenReturn(expectedCount);
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenReturn(expectedCount);
         
         // Act
         long actualCount = emailService.getEmailCount(senderEmail);
         
         // Assert
         assertEquals(expectedCount, actualCount);
-        verify(gmailService, times(1)).countEmailsFromSender(senderEmail);
+        verify(gmailService, times(1)).countEmailsFromSender(sender(senderEmail), any());
+    }
+    
+    @Test
+    void testGetEmailCount_CachedResult_DoesNotCallGmailAgain() {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenReturn(7L);
+        
+        // Act
+        EmailCountResult first = emailService.getEmailCountResult(senderEmail);
+        EmailCountResult second = emailService.getEmailCountResult(senderEmail);
+        
+        // Assert
+        assertFalse(first.cached());
+        assertTrue(second.cached());
+        assertEquals(7L, second.count());
+        assertTrue(second.remainingTtl().compareTo(Duration.ofMinutes(5)) <= 0);
+        assertEquals(1.0, meterRegistry.counter("email.count.cache.lookups", "result", "hit").count());
+        verify(gmailService, times(1)).countEmailsFromSender(sender(senderEmail), any());
+    }
+    
+    @Test
+    void testGetEmailCount_EquivalentSpellings_ShareCacheEntry() {
+        // Arrange
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), any())).thenReturn(3L);
+        
+        // Act
+        EmailCountResult first = emailService.getEmailCountResult(" Bob@Example.COM ");
+        EmailCountResult second = emailService.getEmailCountResult("bob@example.com");
+        
+        // Assert
+        assertEquals("bob@example.com", first.sender().canonical());
+        assertEquals("Bob@Example.COM", first.sender().address());
+        assertTrue(second.cached());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCount_GmailRulesEnabled_StripsTagsAndDots() {
+        // Arrange
+        cacheProperties.getCanonicalization().setStripPlusTags(true);
+        cacheProperties.getCanonicalization().setIgnoreGmailDots(true);
+        when(gmailService.countEmailsFromSender(sender("johnsmith@gmail.com"), any())).thenReturn(4L);
+        
+        // Act
+        EmailCountResult result = emailService.getEmailCountResult("John.Smith+news@GMail.com");
+        
+        // Assert
+        assertEquals(4L, result.count());
+        assertEquals("johnsmith@gmail.com", result.sender().canonical());
+    }
+    
+    @Test
+    void testGetEmailCount_ConcurrentRequests_ShareSingleScan() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        CountDownLatch scanStarted = new CountDownLatch(1);
+        CountDownLatch releaseScan = new CountDownLatch(1);
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenAnswer(invocation -> {
+            scanStarted.countDown();
+            releaseScan.await(5, TimeUnit.SECONDS);
+            return 42L;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        
+        try {
+            // Act
+            Future<Long> first = executor.submit(() -> emailService.getEmailCount(senderEmail));
+            assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+            Future<Long> second = executor.submit(() -> emailService.getEmailCount(senderEmail));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.counter("email.count.coalesced").count() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            releaseScan.countDown();
+            
+            // Assert
+            assertEquals(42L, first.get(5, TimeUnit.SECONDS));
+            assertEquals(42L, second.get(5, TimeUnit.SECONDS));
+            verify(gmailService, times(1)).countEmailsFromSender(sender(senderEmail), any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    void testGetEmailCountResult_StaleEntry_ServedAndRefreshedInBackground() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        cacheProperties.setExpireAfterWrite(Duration.ofMillis(50));
+        cacheProperties.getRefreshAhead().setEnabled(true);
+        emailService = newEmailService();
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenReturn(5L, 6L);
+        emailService.getEmailCountResult(senderEmail);
+        Thread.sleep(100);
+        
+        // Act
+        EmailCountResult result = emailService.getEmailCountResult(senderEmail);
+        
+        // Assert
+        assertEquals(5L, result.count());
+        assertTrue(result.stale());
+        verify(gmailService, timeout(2000).times(2)).countEmailsFromSender(sender(senderEmail), any());
+    }
+    
+    @Test
+    void testGetEmailCountResult_CircuitOpen_ServesLastKnownCountAsStale() throws Exception {
+        // Arrange
+        String senderEmail = "superman@example.com";
+        cacheProperties.setExpireAfterWrite(Duration.ofMillis(50));
+        when(gmailService.countEmailsFromSender(sender(senderEmail), any())).thenReturn(8L);
+        emailService.getEmailCountResult(senderEmail);
+        Thread.sleep(100);
+        openCircuit();
+        
+        // Act
+        EmailCountResult result = emailService.getEmailCountResult(senderEmail);
+        
+        // Assert
+        assertEquals(8L, result.count());
+        assertTrue(result.stale());
+        assertTrue(result.cached());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResult_CircuitOpenWithoutLastKnown_ThrowsServiceUnavailable() {
+        // Arrange
+        openCircuit();
+        
+        // Act & Assert
+        assertThrows(ServiceUnavailableException.class, () -> emailService.getEmailCountResult("second@example.com"));
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResult_DeadlinePasses_ThrowsRequestTimeout() {
+        // Arrange
+        CountDownLatch releaseScan = new CountDownLatch(1);
+        when(gmailService.countEmailsFromSender(sender("slow@example.com"), any())).thenAnswer(invocation -> {
+            releaseScan.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+        
+        try {
+            // Act & Assert
+            assertThrows(RequestTimeoutException.class,
+                    () -> emailService.getEmailCountResult("slow@example.com", RequestDeadline.after(Duration.ofMillis(50))));
+        } finally {
+            releaseScan.countDown();
+        }
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_LastWaiterCancels_CancelsScan() throws Exception {
+        // Arrange
+        CountDownLatch scanStarted = new CountDownLatch(1);
+        AtomicReference<RequestDeadline> scanDeadline = new AtomicReference<>();
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), any())).thenAnswer(invocation -> {
+            scanDeadline.set(invocation.getArgument(1));
+            scanStarted.countDown();
+            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!scanDeadline.get().isCancelled() && System.nanoTime() < waitUntil) {
+                Thread.sleep(5);
+            }
+            scanDeadline.get().check();
+            return 1L;
+        });
+        RequestDeadline first = RequestDeadline.none();
+        RequestDeadline second = RequestDeadline.none();
+        CompletableFuture<EmailCountResult> firstResult = emailService.getEmailCountResultAsync("bob@example.com", first);
+        assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<EmailCountResult> secondResult = emailService.getEmailCountResultAsync("bob@example.com", second);
+        
+        // Act
+        first.cancel();
+        assertFalse(scanDeadline.get().isCancelled());
+        second.cancel();
+        
+        // Assert
+        ExecutionException error = assertThrows(ExecutionException.class, () -> firstResult.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(GmailApiException.class, error.getCause());
+        assertTrue(secondResult.isCompletedExceptionally());
+        assertTrue(scanDeadline.get().isCancelled());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_EstimateMode_CachedSeparatelyFromExact() throws Exception {
+        // Arrange
+        when(gmailService.estimateEmailsFromSender(sender("bob@example.com"), any())).thenReturn(1200L);
+        
+        // Act
+        EmailCountResult first = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.ESTIMATE, RequestDeadline.none()).get();
+        EmailCountResult second = emailService
+                .getEmailCountResultAsync("Bob@example.com", CountQuery.ESTIMATE, RequestDeadline.none()).get();
+        
+        // Assert
+        assertEquals(1200L, first.count());
+        assertFalse(first.exact());
+        assertFalse(first.cached());
+        assertTrue(second.cached());
+        verify(gmailService, times(1)).estimateEmailsFromSender(any(), any());
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_EstimateMode_RunsOnBulkhead() throws Exception {
+        // Arrange
+        AtomicReference<Thread> caller = new AtomicReference<>();
+        when(gmailService.estimateEmailsFromSender(sender("bob@example.com"), any())).thenAnswer(invocation -> {
+            caller.set(Thread.currentThread());
+            return 1200L;
+        });
+        
+        // Act
+        EmailCountResult result = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.ESTIMATE, RequestDeadline.none())
+                .get(5, TimeUnit.SECONDS);
+        
+        // Assert
+        assertEquals(1200L, result.count());
+        assertNotSame(Thread.currentThread(), caller.get());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_EstimateMode_AnsweredByCachedExactCount() throws Exception {
+        // Arrange
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), any())).thenReturn(17L);
+        emailService.getEmailCountResult("bob@example.com");
+        
+        // Act
+        EmailCountResult result = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.ESTIMATE, RequestDeadline.none()).get();
+        
+        // Assert
+        assertEquals(17L, result.count());
+        assertTrue(result.exact());
+        verify(gmailService, never()).estimateEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_Exists_StopsAtFirstMessageAndCachesSeparately() throws Exception {
+        // Arrange
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), eq(1L), any())).thenReturn(1L);
+        
+        // Act
+        EmailCountResult first = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.EXISTS, RequestDeadline.none()).get(5, TimeUnit.SECONDS);
+        EmailCountResult second = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.EXISTS, RequestDeadline.none()).get(5, TimeUnit.SECONDS);
+        
+        // Assert
+        assertEquals(1L, first.count());
+        assertFalse(first.exact());
+        assertTrue(second.cached());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), eq(1L), any());
+        verify(gmailService, never()).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_AtLeastBelowThreshold_IsExact() throws Exception {
+        // Arrange
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), eq(1000L), any())).thenReturn(42L);
+        
+        // Act
+        EmailCountResult result = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.atLeast(1000), RequestDeadline.none())
+                .get(5, TimeUnit.SECONDS);
+        
+        // Assert
+        assertEquals(42L, result.count());
+        assertTrue(result.exact());
+    }
+    
+    @Test
+    void testGetEmailCountResultAsync_AtLeast_AnsweredByCachedExactCount() throws Exception {
+        // Arrange
+        when(gmailService.countEmailsFromSender(sender("bob@example.com"), any())).thenReturn(2500L);
+        emailService.getEmailCountResult("bob@example.com");
+        
+        // Act
+        EmailCountResult result = emailService
+                .getEmailCountResultAsync("bob@example.com", CountQuery.atLeast(1000), RequestDeadline.none()).get();
+        
+        // Assert
+        assertEquals(2500L, result.count());
+        assertTrue(result.exact());
+        verify(gmailService, never()).countEmailsFromSender(any(), anyLong(), any());
+    }
+    
+    @Test
+    void testGetEmailCountResult_SenderIndexCaughtUp_AnswersWithoutGmail() throws Exception {
+        // Arrange
+        cacheProperties.getIndex().setEnabled(true);
+        cacheProperties.getIndex().setFile(tempDir.resolve("sender-index").toString());
+        indexSender("indexed@example.com", 42);
+        
+        // Act
+        EmailCountResult indexed = emailService.getEmailCountResult("Indexed@Example.com");
+        EmailCountResult unknown = emailService.getEmailCountResult("nobody@example.com");
+        
+        // Assert
+        assertEquals(42L, indexed.count());
+        assertTrue(indexed.cached());
+        assertTrue(indexed.exact());
+        assertEquals(0L, unknown.count());
+        verifyNoInteractions(gmailService);
+    }
+    
+    @Test
+    void testGetEmailCountResult_SenderIndexTooOld_CountsFromGmail() throws Exception {
+        // Arrange
+        cacheProperties.getIndex().setEnabled(true);
+        cacheProperties.getIndex().setFile(tempDir.resolve("sender-index").toString());
+        cacheProperties.getIndex().setMaxStaleness(Duration.ZERO);
+        indexSender("indexed@example.com", 42);
+        when(gmailService.countEmailsFromSender(sender("indexed@example.com"), any())).thenReturn(40L);
+        Thread.sleep(5);
+        
+        // Act
+        EmailCountResult result = emailService.getEmailCountResult("indexed@example.com");
+        
+        // Assert
+        assertEquals(40L, result.count());
+    }
+    
+    @Test
+    void testCountMessageSet_SecondQuery_AnsweredFromBitmaps() {
+        // Arrange
+        cacheProperties.getBitmaps().setEnabled(true);
+        stubMessages("alice@example.com", "a1", "a2", "b1");
+        stubMessages("bob@example.com", "b1", "b2");
+        when(gmailService.listLabelMessageIds(eq("CATEGORY_PROMOTIONS"), any(), any())).thenAnswer(invocation -> {
+            Consumer<String> ids = invocation.getArgument(1);
+            ids.accept("a2");
+            return 1L;
+        });
+        
+        // Act
+        EmailService.MessageSetCount union = emailService.countMessageSet(
+                List.of("alice@example.com", "Bob@Example.com"), List.of(), RequestDeadline.none());
+        EmailService.MessageSetCount filtered = emailService.countMessageSet(List.of("alice@example.com",
+                "bob@example.com"), List.of("CATEGORY_PROMOTIONS"), RequestDeadline.none());
+        
+        // Assert
+        assertEquals(new EmailService.MessageSetCount(4L, 2), union);
+        assertEquals(new EmailService.MessageSetCount(3L, 1), filtered);
+        verify(gmailService, times(2)).countEmailsFromSender(any(), anyLong(), any(), any());
+    }
+    
+    @Test
+    void testCountMessageSet_ScannedSender_CachesExactCount() {
+        // Arrange
+        cacheProperties.getBitmaps().setEnabled(true);
+        stubMessages("alice@example.com", "a1", "a2", "a3");
+        
+        // Act
+        emailService.countMessageSet(List.of("alice@example.com"), List.of(), RequestDeadline.none());
+        long count = emailService.getEmailCount("alice@example.com");
+        
+        // Assert
+        assertEquals(3L, count);
+        verify(gmailService, times(1)).countEmailsFromSender(any(), anyLong(), any(), any());
+    }
+    
+    @Test
+    void testCountMessageSetAsync_ConcurrentQueries_ShareSenderScan() throws Exception {
+        // Arrange
+        cacheProperties.getBitmaps().setEnabled(true);
+        CountDownLatch release = new CountDownLatch(1);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), eq(Long.MAX_VALUE), any(), any()))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    Consumer<String> ids = invocation.getArgument(2);
+                    ids.accept("a1");
+                    return 1L;
+                });
+        
+        // Act
+        CompletableFuture<EmailService.MessageSetCount> first = emailService.countMessageSetAsync(
+                List.of("alice@example.com"), List.of(), RequestDeadline.none());
+        CompletableFuture<EmailService.MessageSetCount> second = emailService.countMessageSetAsync(
+                List.of("alice@example.com"), List.of(), RequestDeadline.none());
+        release.countDown();
+        
+        // Assert
+        assertEquals(1L, first.get(5, TimeUnit.SECONDS).count());
+        assertEquals(1L, second.get(5, TimeUnit.SECONDS).count());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), anyLong(), any(), any());
+    }
+    
+    @Test
+    void testCountMessageSet_BitmapsDisabled_ThrowsInvalidRequest() {
+        // Act & Assert
+        assertThrows(InvalidRequestException.class, () -> emailService.countMessageSet(
+                List.of("alice@example.com"), List.of(), RequestDeadline.none()));
+        verifyNoInteractions(gmailService);
+    }
+    
+    @Test
+    void testCountMessageSet_InvalidLabel_ThrowsInvalidRequest() {
+        // Arrange
+        cacheProperties.getBitmaps().setEnabled(true);
+        
+        // Act & Assert
+        assertThrows(InvalidRequestException.class, () -> emailService.countMessageSet(
+                List.of("alice@example.com"), List.of("label:inbox"), RequestDeadline.none()));
+        verifyNoInteractions(gmailService);
+    }
+    
+    /**
+     * Answers the full scan of the sender with the given message ids.
+     */
+    private void stubMessages(String canonical, String... messageIds) {
+        when(gmailService.countEmailsFromSender(sender(canonical), eq(Long.MAX_VALUE), any(), any()))
+                .thenAnswer(invocation -> {
+                    Consumer<String> ids = invocation.getArgument(2);
+                    List.of(messageIds).forEach(ids);
+                    return (long) messageIds.length;
+                });
+    }
+    
+    /**
+     * Publishes a sender index holding only the given sender.
+     */
+    private void indexSender(String canonical, long count) throws IOException {
+        try (SenderTable.Build build = senderIndex.startBuild()) {
+            build.merge(canonical, count);
+            senderIndex.publish(build, BigInteger.TEN, senderIndex.generation());
+        }
+    }
+    
+    /**
+     * Opens the breaker as a failed Gmail request inside the service would.
+     */
+    private void openCircuit() {
+        gmailConfig.getCircuitBreaker().setMinimumCalls(1);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onError(0, new IOException("503"));
+    }
+    
+    private EmailService newEmailService() {
+        GmailBulkhead gmailBulkhead = new GmailBulkhead(gmailConfig, meterRegistry);
+        return new EmailService(gmailService, Caffeine.newBuilder().buildAsync(), cacheProperties,
+                new PersistentCountStore(false, Path.of("unused"), 0, null), circuitBreaker, gmailBulkhead, senderIndex,
+                messageBitmaps, meterRegistry);
+    }
+    
+    private static EmailAddress sender(String canonical) {
+        return argThat(address -> address != null && address.canonical().equals(canonical));
     }
 }
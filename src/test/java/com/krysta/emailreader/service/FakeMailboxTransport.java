@@ -0,0 +1,118 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport answering messages.list calls from an in-memory mailbox of one
+ * sender. Understands {@code after:}/{@code before:} epoch-second bounds
+ * (both exclusive, as in Gmail), {@code maxResults}, page tokens and
+ * {@code resultSizeEstimate} in the fields mask.
+ */
+class FakeMailboxTransport extends MockHttpTransport {
+    
+    private final long[] timestamps;
+    private final long latencyMillis;
+    private final AtomicInteger requests = new AtomicInteger();
+    
+    FakeMailboxTransport(long[] timestamps, long latencyMillis) {
+        this.timestamps = timestamps.clone();
+        Arrays.sort(this.timestamps);
+        this.latencyMillis = latencyMillis;
+    }
+    
+    int requestCount() {
+        return requests.get();
+    }
+    
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+        return new MockLowLevelHttpRequest(url) {
+            @Override
+            public LowLevelHttpResponse execute() {
+                requests.incrementAndGet();
+                if (latencyMillis > 0) {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new MockLowLevelHttpResponse()
+                        .setContentType("application/json; charset=UTF-8")
+                        .setContent(page(parameters(url)));
+            }
+        };
+    }
+    
+    private String page(Map<String, String> parameters) {
+        long after = Long.MIN_VALUE;
+        long before = Long.MAX_VALUE;
+        for (String term : parameters.getOrDefault("q", "").split(" ")) {
+            if (term.startsWith("after:")) {
+                after = Long.parseLong(term.substring("after:".length()));
+            } else if (term.startsWith("before:")) {
+                before = Long.parseLong(term.substring("before:".length()));
+            }
+        }
+        
+        int from = lowerBound(after + 1);
+        int to = lowerBound(before);
+        int offset = from + Integer.parseInt(parameters.getOrDefault("pageToken", "0"));
+        int end = Math.min(to, offset + Integer.parseInt(parameters.getOrDefault("maxResults", "100")));
+        
+        StringBuilder json = new StringBuilder("{\"messages\":[");
+        for (int i = offset; i < end; i++) {
+            json.append(i > offset ? "," : "").append("{\"id\":\"m").append(i).append("\"}");
+        }
+        json.append(']');
+        if (end < to) {
+            json.append(",\"nextPageToken\":\"").append(end - from).append('"');
+        }
+        if (parameters.getOrDefault("fields", "").contains("resultSizeEstimate")) {
+            json.append(",\"resultSizeEstimate\":").append(to - from);
+        }
+        return json.append('}').toString();
+    }
+    
+    /**
+     * Index of the first message at or after the given second.
+     */
+    private int lowerBound(long second) {
+        int index = Arrays.binarySearch(timestamps, second);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && timestamps[index - 1] == second) {
+            index--;
+        }
+        return index;
+    }
+    
+    private static Map<String, String> parameters(String url) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = URI.create(url).getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                parameters.put(pair.substring(0, split),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
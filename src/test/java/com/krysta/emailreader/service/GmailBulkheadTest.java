@@ -0,0 +1,113 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GmailBulkhead.
+ */
+class GmailBulkheadTest {
+    
+    private GmailConfig gmailConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailBulkhead bulkhead;
+    private final CountDownLatch release = new CountDownLatch(1);
+    
+    @BeforeEach
+    void setUp() {
+        gmailConfig = new GmailConfig();
+        gmailConfig.getBulkhead().setThreads(1);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        bulkhead.shutdown();
+    }
+    
+    @Test
+    void testExecute_QueueFull_RejectsWithServiceUnavailable() throws Exception {
+        // Arrange
+        gmailConfig.getBulkhead().setQueueCapacity(1);
+        bulkhead = new GmailBulkhead(gmailConfig, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        bulkhead.execute(() -> block(started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        bulkhead.execute(() -> { });
+        
+        // Act
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+                () -> bulkhead.execute(() -> { }));
+        
+        // Assert
+        assertEquals(gmailConfig.getBulkhead().getRetryAfter(), e.getRetryAfter());
+        assertEquals(1.0, meterRegistry.counter("gmail.bulkhead.rejected", "reason", "queue_full").count());
+    }
+    
+    @Test
+    void testExecute_QueueDelayAboveTarget_ShedsNewWork() throws Exception {
+        // Arrange
+        gmailConfig.getBulkhead().setTargetDelay(Duration.ofMillis(10));
+        gmailConfig.getBulkhead().setInterval(Duration.ZERO);
+        bulkhead = new GmailBulkhead(gmailConfig, meterRegistry);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch thirdStarted = new CountDownLatch(1);
+        bulkhead.execute(() -> {
+            firstStarted.countDown();
+            await(first);
+        });
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        bulkhead.execute(() -> { });
+        bulkhead.execute(() -> block(thirdStarted));
+        bulkhead.execute(() -> { });
+        Thread.sleep(50);
+        
+        // Act
+        first.countDown();
+        assertTrue(thirdStarted.await(5, TimeUnit.SECONDS));
+        
+        // Assert
+        assertThrows(ServiceUnavailableException.class, () -> bulkhead.execute(() -> { }));
+        assertEquals(1.0, meterRegistry.counter("gmail.bulkhead.rejected", "reason", "queue_delay").count());
+    }
+    
+    @Test
+    void testExecute_FastQueue_RunsTasks() throws Exception {
+        // Arrange
+        bulkhead = new GmailBulkhead(gmailConfig, meterRegistry);
+        CountDownLatch done = new CountDownLatch(3);
+        
+        // Act
+        for (int i = 0; i < 3; i++) {
+            bulkhead.execute(done::countDown);
+        }
+        
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+    
+    private void block(CountDownLatch started) {
+        started.countDown();
+        await(release);
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
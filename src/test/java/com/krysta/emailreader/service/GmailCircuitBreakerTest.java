@@ -0,0 +1,184 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for GmailCircuitBreaker.
+ */
+class GmailCircuitBreakerTest {
+    
+    private static final RuntimeException GMAIL_FAILURE =
+            new GmailApiException("Failed to count emails from sender", new IOException("503"));
+    
+    private GmailConfig gmailConfig;
+    private AuditService auditService;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailCircuitBreaker circuitBreaker;
+    
+    @BeforeEach
+    void setUp() {
+        gmailConfig = new GmailConfig();
+        gmailConfig.getCircuitBreaker().setWindowSize(4);
+        gmailConfig.getCircuitBreaker().setMinimumCalls(4);
+        gmailConfig.getCircuitBreaker().setHalfOpenCalls(1);
+        gmailConfig.getCircuitBreaker().setOpenDuration(Duration.ofMillis(50));
+        auditService = mock(AuditService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = new GmailCircuitBreaker(gmailConfig, auditService, meterRegistry);
+    }
+    
+    @Test
+    void testFailureRateAboveThreshold_OpensAndRejects() {
+        // Act
+        callSucceeding(2);
+        callFailing(2);
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals(2.0, meterRegistry.get("gmail.circuit.state").gauge().value());
+        verify(auditService).logGmailApiError(any(), eq("CIRCUIT_OPEN"));
+    }
+    
+    @Test
+    void testBelowMinimumCalls_StaysClosed() {
+        // Act
+        callFailing(3);
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testSlowCalls_OpenBreaker() {
+        // Arrange
+        gmailConfig.getCircuitBreaker().setSlowCallDuration(Duration.ofMillis(10));
+        
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onSuccess(TimeUnit.SECONDS.toNanos(1));
+        }
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testHalfOpenTrialSucceeds_Closes() throws Exception {
+        // Arrange
+        callFailing(4);
+        Thread.sleep(80);
+        
+        // Act
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess(0);
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        verify(auditService).logGmailApiError(any(), eq("CIRCUIT_HALF_OPEN"));
+        verify(auditService).logGmailApiError(any(), eq("CIRCUIT_CLOSED"));
+    }
+    
+    @Test
+    void testHalfOpenTrialFails_Reopens() throws Exception {
+        // Arrange
+        callFailing(4);
+        Thread.sleep(80);
+        
+        // Act
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onError(0, GMAIL_FAILURE);
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testLocalErrors_AreNotCounted() {
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onError(0, new GmailApiException("Request was cancelled"));
+        }
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testNotFoundResponses_AreNotCounted() {
+        // Act
+        for (int i = 0; i < 4; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onError(0, response(404));
+        }
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testServerErrorsAndRateLimits_AreCounted() {
+        // Act
+        callSucceeding(2);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onError(0, response(503));
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onError(0, response(429));
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+    
+    @Test
+    void testDeadlineTimeouts_CountAsSlowCalls() {
+        // Arrange
+        gmailConfig.getCircuitBreaker().setSlowCallRateThreshold(50);
+        
+        // Act
+        callSucceeding(2);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onError(0, new RequestTimeoutException("Request deadline exceeded"));
+        }
+        
+        // Assert
+        assertEquals(GmailCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.isOpen());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+    
+    private static HttpResponseException response(int status) {
+        return new HttpResponseException.Builder(status, null, new HttpHeaders()).build();
+    }
+    
+    private void callSucceeding(int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onSuccess(0);
+        }
+    }
+    
+    private void callFailing(int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onError(0, GMAIL_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.services.gmail.Gmail;
+import com.krysta.emailreader.exception.GmailApiException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for GmailClientHolder.
+ */
+class GmailClientHolderTest {
+    
+    private CredentialsStorageService credentialsStorageService;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailClientHolder holder;
+    
+    @BeforeEach
+    void setUp() {
+        credentialsStorageService = new CredentialsStorageService();
+        meterRegistry = new SimpleMeterRegistry();
+        holder = new GmailClientHolder(credentialsStorageService, new NetHttpTransport(), meterRegistry);
+    }
+    
+    @Test
+    void testGetClient_ReusesClientWhileCredentialsUnchanged() {
+        // Arrange
+        AtomicInteger builds = new AtomicInteger();
+        GmailClientHolder.ClientFactory factory = transport -> {
+            builds.incrementAndGet();
+            return mock(Gmail.class);
+        };
+        
+        // Act
+        Gmail first = holder.getClient(factory);
+        Gmail second = holder.getClient(factory);
+        
+        // Assert
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertEquals(1.0, meterRegistry.counter("gmail.client.rebuilds").count());
+    }
+    
+    @Test
+    void testGetClient_RebuildsAfterCredentialsChange() {
+        // Arrange
+        GmailClientHolder.ClientFactory factory = transport -> mock(Gmail.class);
+        Gmail first = holder.getClient(factory);
+        
+        // Act
+        credentialsStorageService.clearAll();
+        Gmail second = holder.getClient(factory);
+        
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(2.0, meterRegistry.counter("gmail.client.rebuilds").count());
+    }
+    
+    @Test
+    void testGetClient_FactoryFailure_ThrowsAndDoesNotCache() {
+        // Arrange
+        GmailClientHolder.ClientFactory failing = transport -> {
+            throw new IOException("boom");
+        };
+        
+        // Act & Assert
+        assertThrows(GmailApiException.class, () -> holder.getClient(failing));
+        assertNotNull(holder.getClient(transport -> mock(Gmail.class)));
+    }
+}
@@ -0,0 +1,129 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GmailConcurrencyLimiter.
+ */
+class GmailConcurrencyLimiterTest {
+    
+    private GmailConfig gmailConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailConcurrencyLimiter limiter;
+    
+    @BeforeEach
+    void setUp() {
+        gmailConfig = new GmailConfig();
+        gmailConfig.getConcurrencyLimit().setInitialLimit(2);
+        gmailConfig.getConcurrencyLimit().setMaxWait(Duration.ofMillis(20));
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new GmailConcurrencyLimiter(gmailConfig, meterRegistry);
+    }
+    
+    @Test
+    void testAcquire_AtLimit_WaitsThenRejects() {
+        // Arrange
+        limiter.acquire(RequestDeadline.none());
+        limiter.acquire(RequestDeadline.none());
+        
+        // Act & Assert
+        assertThrows(ServiceUnavailableException.class, () -> limiter.acquire(RequestDeadline.none()));
+        assertEquals(2, limiter.getInFlight());
+    }
+    
+    @Test
+    void testAcquire_AtLimit_StopsWaitingAtDeadline() {
+        // Arrange
+        gmailConfig.getConcurrencyLimit().setMaxWait(Duration.ofSeconds(30));
+        limiter.acquire(RequestDeadline.none());
+        limiter.acquire(RequestDeadline.none());
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofMillis(20));
+        
+        // Act
+        long start = System.nanoTime();
+        assertThrows(RequestTimeoutException.class, () -> limiter.acquire(deadline));
+        
+        // Assert
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, limiter.getInFlight());
+    }
+    
+    @Test
+    void testRelease_FreesSlot() {
+        // Arrange
+        GmailConcurrencyLimiter.Listener first = limiter.acquire(RequestDeadline.none());
+        limiter.acquire(RequestDeadline.none());
+        
+        // Act
+        first.onIgnore();
+        
+        // Assert
+        assertNotNull(limiter.acquire(RequestDeadline.none()));
+    }
+    
+    @Test
+    void testStableLatencyUnderLoad_RaisesLimit() {
+        // Arrange - sub-millisecond timings are noisy, so tolerate any latency here
+        gmailConfig.getConcurrencyLimit().setLatencyTolerance(1_000_000);
+        
+        // Act
+        for (int i = 0; i < 20; i++) {
+            GmailConcurrencyLimiter.Listener first = limiter.acquire(RequestDeadline.none());
+            GmailConcurrencyLimiter.Listener second = limiter.acquire(RequestDeadline.none());
+            first.onSuccess();
+            second.onSuccess();
+        }
+        
+        // Assert
+        assertTrue(limiter.getLimit() > 2);
+        assertEquals(limiter.getLimit(), meterRegistry.get("gmail.concurrency.limit").gauge().value());
+    }
+    
+    @Test
+    void testDroppedCall_HalvesLimit() {
+        // Arrange
+        gmailConfig.getConcurrencyLimit().setInitialLimit(8);
+        limiter = new GmailConcurrencyLimiter(gmailConfig, new SimpleMeterRegistry());
+        
+        // Act
+        limiter.acquire(RequestDeadline.none()).onDropped();
+        
+        // Assert
+        assertEquals(4.0, limiter.getLimit());
+    }
+    
+    @Test
+    void testLimit_NeverBelowMinimum() {
+        // Act
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(RequestDeadline.none()).onDropped();
+        }
+        
+        // Assert
+        assertEquals(1.0, limiter.getLimit());
+    }
+    
+    @Test
+    void testDisabled_DoesNotLimit() {
+        // Arrange
+        gmailConfig.getConcurrencyLimit().setEnabled(false);
+        
+        // Act
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(RequestDeadline.none());
+        }
+        
+        // Assert
+        assertEquals(5, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,101 @@
+package com.krysta.emailreader.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GmailListPage.
+ */
+class GmailListPageTest {
+    
+    @Test
+    void testParse_FullPage_CountsMessagesAndReadsTokenAndEstimate() throws IOException {
+        // Arrange
+        String json = """
+                {
+                  "messages": [
+                    {"id": "a1", "threadId": "t1"},
+                    {"id": "a2", "threadId": "t2"},
+                    {"id": "a3", "threadId": "t3"}
+                  ],
+                  "nextPageToken": "next",
+                  "resultSizeEstimate": 201
+                }
+                """;
+        
+        // Act
+        GmailListPage page = parse(json);
+        
+        // Assert
+        assertEquals(3, page.messageCount());
+        assertEquals("next", page.nextPageToken());
+        assertEquals(201L, page.resultSizeEstimate());
+    }
+    
+    @Test
+    void testParse_WithIdConsumer_ReadsMessageIds() throws IOException {
+        // Arrange
+        String json = """
+                {"messages": [{"threadId": "t1", "id": "a1"}, {"id": "a2", "extra": {"id": "x"}}], "nextPageToken": "n"}
+                """;
+        List<String> ids = new ArrayList<>();
+        
+        // Act
+        GmailListPage page = GmailListPage.parse(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), ids::add);
+        
+        // Assert
+        assertEquals(2, page.messageCount());
+        assertEquals(List.of("a1", "a2"), ids);
+        assertEquals("n", page.nextPageToken());
+    }
+    
+    @Test
+    void testParse_LastPageWithoutMessages_ReturnsEmptyPage() throws IOException {
+        // Act
+        GmailListPage page = parse("{\"resultSizeEstimate\": 0}");
+        
+        // Assert
+        assertEquals(0, page.messageCount());
+        assertNull(page.nextPageToken());
+        assertEquals(0L, page.resultSizeEstimate());
+    }
+    
+    @Test
+    void testParse_SkipsUnknownAndNestedFields() throws IOException {
+        // Arrange
+        String json = """
+                {
+                  "extra": {"messages": [{"id": "x"}], "nextPageToken": "wrong"},
+                  "messages": [{"id": "a1", "labelIds": ["INBOX", "UNREAD"], "payload": {"headers": []}}],
+                  "nextPageToken": "right"
+                }
+                """;
+        
+        // Act
+        GmailListPage page = parse(json);
+        
+        // Assert
+        assertEquals(1, page.messageCount());
+        assertEquals("right", page.nextPageToken());
+        assertNull(page.resultSizeEstimate());
+    }
+    
+    @Test
+    void testParse_TruncatedBody_Throws() {
+        // Act & Assert
+        assertThrows(IOException.class, () -> parse("{\"messages\": [{\"id\": \"a1\"},"));
+        assertThrows(IOException.class, () -> parse("[]"));
+    }
+    
+    private static GmailListPage parse(String json) throws IOException {
+        return GmailListPage.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,119 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import com.krysta.emailreader.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GmailQuotaScheduler.
+ */
+class GmailQuotaSchedulerTest {
+    
+    private static final String ACCOUNT = "user";
+    
+    private GmailConfig gmailConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailQuotaScheduler scheduler;
+    
+    @BeforeEach
+    void setUp() {
+        gmailConfig = new GmailConfig();
+        gmailConfig.getQuota().setUnitsPerSecond(100);
+        gmailConfig.getQuota().setBurst(10);
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = new GmailQuotaScheduler(gmailConfig, meterRegistry);
+    }
+    
+    @Test
+    void testAcquire_WithinBurst_DoesNotWait() {
+        // Act
+        long start = System.nanoTime();
+        scheduler.acquire(ACCOUNT, 5, RequestDeadline.none());
+        scheduler.acquire(ACCOUNT, 5, RequestDeadline.none());
+        
+        // Assert
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(10.0, meterRegistry.counter("gmail.quota.units").count());
+    }
+    
+    @Test
+    void testAcquire_BudgetSpent_PacesCaller() {
+        // Arrange
+        scheduler.acquire(ACCOUNT, 10, RequestDeadline.none());
+        
+        // Act
+        long start = System.nanoTime();
+        scheduler.acquire(ACCOUNT, 10, RequestDeadline.none());
+        
+        // Assert - 10 units at 100 units/s take about 100 ms to refill
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+        assertEquals(2, meterRegistry.timer("gmail.quota.wait").count());
+    }
+    
+    @Test
+    void testAcquire_WaitAboveMaximum_Throws() {
+        // Arrange
+        gmailConfig.getQuota().setMaxWait(Duration.ofMillis(10));
+        scheduler.acquire(ACCOUNT, 10, RequestDeadline.none());
+        
+        // Act
+        ServiceUnavailableException rejected =
+                assertThrows(ServiceUnavailableException.class, () -> scheduler.acquire(ACCOUNT, 10, RequestDeadline.none()));
+        
+        // Assert - 10 units at 100 units/s take about 100 ms to refill
+        assertTrue(rejected.getRetryAfter().toMillis() > 50);
+        assertEquals(1.0, meterRegistry.counter("gmail.quota.rejected").count());
+    }
+    
+    @Test
+    void testAcquire_WaitPastDeadline_RejectsWithoutReserving() {
+        // Arrange
+        scheduler.acquire(ACCOUNT, 10, RequestDeadline.none());
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofMillis(20));
+        
+        // Act
+        long start = System.nanoTime();
+        assertThrows(RequestTimeoutException.class, () -> scheduler.acquire(ACCOUNT, 10, deadline));
+        
+        // Assert - rejected at once and nothing reserved
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(10.0, meterRegistry.counter("gmail.quota.units").count());
+        assertEquals(1.0, meterRegistry.counter("gmail.quota.rejected").count());
+    }
+    
+    @Test
+    void testPenalize_PausesBudget() {
+        // Arrange
+        scheduler.penalize(ACCOUNT, Duration.ofMillis(100));
+        
+        // Act
+        long start = System.nanoTime();
+        scheduler.acquire(ACCOUNT, 1, RequestDeadline.none());
+        
+        // Assert
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+    }
+    
+    @Test
+    void testAcquire_Disabled_NeverWaits() {
+        // Arrange
+        gmailConfig.getQuota().setEnabled(false);
+        
+        // Act
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            scheduler.acquire(ACCOUNT, 10, RequestDeadline.none());
+        }
+        
+        // Assert
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
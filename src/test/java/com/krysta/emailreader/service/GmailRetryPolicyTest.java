@@ -0,0 +1,120 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.krysta.emailreader.config.GmailConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GmailRetryPolicy.
+ */
+class GmailRetryPolicyTest {
+    
+    private GmailConfig gmailConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private GmailRetryPolicy retryPolicy;
+    
+    @BeforeEach
+    void setUp() {
+        gmailConfig = new GmailConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        retryPolicy = new GmailRetryPolicy(gmailConfig, meterRegistry);
+    }
+    
+    @Test
+    void testNextDelay_ServerError_BackoffWithinCeiling() {
+        // Act
+        Duration first = retryPolicy.nextDelay(1, httpError(503, null));
+        Duration third = retryPolicy.nextDelay(3, httpError(500, null));
+        
+        // Assert
+        assertNotNull(first);
+        assertTrue(first.toMillis() <= 250);
+        assertNotNull(third);
+        assertTrue(third.toMillis() <= 1000);
+    }
+    
+    @Test
+    void testNextDelay_RetryAfterHeader_IsHonored() {
+        // Act
+        Duration delay = retryPolicy.nextDelay(1, httpError(429, "3"));
+        
+        // Assert
+        assertEquals(Duration.ofSeconds(3), delay);
+    }
+    
+    @Test
+    void testNextDelay_RetryAfterBeyondMaxBackoff_DoesNotRetry() {
+        // Act & Assert
+        assertNull(retryPolicy.nextDelay(1, httpError(429, "60")));
+    }
+    
+    @Test
+    void testNextDelay_ClientError_DoesNotRetry() {
+        // Act & Assert
+        assertNull(retryPolicy.nextDelay(1, httpError(404, null)));
+        assertNull(retryPolicy.nextDelay(1, httpError(401, null)));
+    }
+    
+    @Test
+    void testNextDelay_SocketTimeout_Retries() {
+        // Act & Assert
+        assertNotNull(retryPolicy.nextDelay(1, new SocketTimeoutException("Read timed out")));
+    }
+    
+    @Test
+    void testNextDelay_MaxAttemptsReached_DoesNotRetry() {
+        // Act & Assert
+        assertNull(retryPolicy.nextDelay(5, httpError(503, null)));
+    }
+    
+    @Test
+    void testNextDelay_BudgetExhausted_DoesNotRetry() {
+        // Arrange
+        gmailConfig.getRetry().setBudgetCapacity(2);
+        gmailConfig.getRetry().setMinRetriesPerSecond(0);
+        retryPolicy = new GmailRetryPolicy(gmailConfig, meterRegistry);
+        
+        // Act
+        assertNotNull(retryPolicy.nextDelay(1, httpError(503, null)));
+        assertNotNull(retryPolicy.nextDelay(1, httpError(503, null)));
+        Duration third = retryPolicy.nextDelay(1, httpError(503, null));
+        
+        // Assert
+        assertNull(third);
+        assertEquals(1.0, meterRegistry.counter("gmail.retries", "result", "budget_exhausted").count());
+    }
+    
+    @Test
+    void testRecordCall_EarnsRetries() {
+        // Arrange
+        gmailConfig.getRetry().setBudgetCapacity(1);
+        gmailConfig.getRetry().setMinRetriesPerSecond(0);
+        gmailConfig.getRetry().setBudgetRatio(0.5);
+        retryPolicy = new GmailRetryPolicy(gmailConfig, meterRegistry);
+        assertNotNull(retryPolicy.nextDelay(1, httpError(503, null)));
+        
+        // Act
+        retryPolicy.recordCall();
+        retryPolicy.recordCall();
+        
+        // Assert
+        assertNotNull(retryPolicy.nextDelay(1, httpError(503, null)));
+    }
+    
+    private static IOException httpError(int status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) {
+            headers.set("Retry-After", retryAfter);
+        }
+        return new HttpResponseException.Builder(status, null, headers).build();
+    }
+}
@@ -1,13 +1,24 @@
 package com.krysta.emailreader.service;
 
 import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
 import com.krysta.emailreader.exception.GmailApiException;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.gmail.Gmail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,7 +47,18 @@ class GmailServiceTest {
         gmailConfig.setTokensDirectory("tokens");
         gmailConfig.setScopes(List.of("https://www.googleapis.com/auth/gmail.readonly"));
         
-        gmailService = new GmailService(gmailConfig, credentialsStorageService);
+        NetHttpTransport httpTransport = new NetHttpTransport();
+        AuthorizationFlowCache authorizationFlowCache = new AuthorizationFlowCache(
+                gmailConfig, credentialsStorageService, httpTransport);
+        GmailClientHolder gmailClientHolder = new GmailClientHolder(
+                credentialsStorageService, httpTransport, new SimpleMeterRegistry());
+        TokenRefreshService tokenRefreshService = new TokenRefreshService(gmailConfig, new SimpleMeterRegistry());
+        GmailQuotaScheduler quotaScheduler = new GmailQuotaScheduler(gmailConfig, new SimpleMeterRegistry());
+        GmailRetryPolicy retryPolicy = new GmailRetryPolicy(gmailConfig, new SimpleMeterRegistry());
+        GmailConcurrencyLimiter concurrencyLimiter = new GmailConcurrencyLimiter(gmailConfig, new SimpleMeterRegistry());
+        GmailCircuitBreaker circuitBreaker = new GmailCircuitBreaker(gmailConfig, new AuditService(), new SimpleMeterRegistry());
+        gmailService = new GmailService(gmailConfig, authorizationFlowCache, gmailClientHolder,
+                tokenRefreshService, quotaScheduler, retryPolicy, concurrencyLimiter, circuitBreaker);
     }
     
     @Test
@@ -44,7 +66,7 @@ class GmailServiceTest {
         // This test verifies that the service handles missing credentials gracefully
         // In a real scenario, calling countEmailsFromSender without credentials should throw GmailApiException
         
-        String senderEmail = "test@example.com";
+        EmailAddress senderEmail = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
         
         // Act & Assert
         assertThrows(GmailApiException.class, () -> {
@@ -61,4 +83,181 @@ class GmailServiceTest {
         assertNotNull(gmailConfig.getScopes());
         assertTrue(gmailConfig.getScopes().contains("https://www.googleapis.com/auth/gmail.readonly"));
     }
+    
+    @Test
+    void testNewListRequest_RequestsOnlyIdsAndPageToken() throws Exception {
+        // Arrange
+        Gmail gmail = new Gmail.Builder(new MockHttpTransport(), GsonFactory.getDefaultInstance(), null).build();
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        Gmail.Users.Messages.List request = GmailService.newListRequest(gmail, sender, 500L, "token");
+        
+        // Assert
+        assertEquals("nextPageToken,messages/id", request.getFields());
+        assertEquals("from:test@example.com", request.getQ());
+        assertEquals(500L, request.getMaxResults());
+        assertEquals("token", request.getPageToken());
+    }
+    
+    @Test
+    void testGmailClientBuilder_AsksForGzip() throws Exception {
+        // Arrange
+        Gmail gmail = GmailService.gmailClientBuilder(
+                new MockHttpTransport(), request -> { }, 1000, 2000, "Test Application").build();
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        HttpRequest request = GmailService.newListRequest(gmail, sender, 500L, null).buildHttpRequest();
+        
+        // Assert
+        assertEquals("gzip", request.getHeaders().getAcceptEncoding());
+        assertEquals(2000, request.getReadTimeout());
+    }
+    
+    @Test
+    void testExecuteListPage_StreamsResponseIntoPage() throws Exception {
+        // Arrange
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse()
+                        .setContentType("application/json; charset=UTF-8")
+                        .setContent("{\"messages\":[{\"id\":\"a1\"},{\"id\":\"a2\"}],\"nextPageToken\":\"next\"}"))
+                .build();
+        Gmail gmail = GmailService.gmailClientBuilder(transport, request -> { }, 1000, 2000, "Test Application").build();
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        GmailListPage page = GmailService.executeListPage(GmailService.newListRequest(gmail, sender, 500L, null));
+        
+        // Assert
+        assertEquals(2, page.messageCount());
+        assertEquals("next", page.nextPageToken());
+    }
+    
+    @Test
+    void testCountEmailsFromSender_Partitioned_MatchesMailboxSize() {
+        // Arrange
+        long start = Instant.parse("2020-01-01T00:00:00Z").getEpochSecond();
+        long[] timestamps = new long[1800];
+        for (int i = 0; i < 1200; i++) {
+            timestamps[i] = start + i * 86_400L + (i % 7) * 3_600L;
+        }
+        // A burst that no window can be split around
+        Arrays.fill(timestamps, 1200, 1800, start + 500 * 86_400L);
+        FakeMailboxTransport transport = new FakeMailboxTransport(timestamps, 0);
+        gmailConfig.getPartitioning().setEnabled(true);
+        gmailConfig.getPartitioning().setPagesPerWindow(1);
+        gmailConfig.getPartitioning().setMinWindow(Duration.ofDays(1));
+        GmailService partitioned = serviceUsing(transport);
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        long count = partitioned.countEmailsFromSender(sender);
+        partitioned.shutdown();
+        
+        // Assert
+        assertEquals(1800, count);
+        assertTrue(transport.requestCount() > 4);
+    }
+    
+    @Test
+    void testCountEmailsFromSender_Partitioned_CountsMessagesOutsideDateRange() {
+        // Arrange
+        long start = Instant.parse("2020-01-01T00:00:00Z").getEpochSecond();
+        long[] timestamps = new long[600];
+        for (int i = 0; i < 598; i++) {
+            timestamps[i] = start + i * 86_400L;
+        }
+        // An import with a bogus Date header and one dated years ahead
+        timestamps[598] = Instant.parse("1999-06-01T00:00:00Z").getEpochSecond();
+        timestamps[599] = Instant.now().plus(Duration.ofDays(3650)).getEpochSecond();
+        FakeMailboxTransport transport = new FakeMailboxTransport(timestamps, 0);
+        gmailConfig.getPartitioning().setEnabled(true);
+        gmailConfig.getPartitioning().setPagesPerWindow(1);
+        gmailConfig.getPartitioning().setMinWindow(Duration.ofDays(1));
+        GmailService partitioned = serviceUsing(transport);
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        long count = partitioned.countEmailsFromSender(sender);
+        partitioned.shutdown();
+        
+        // Assert
+        assertEquals(600, count);
+    }
+    
+    @Test
+    void testCountEmailsFromSender_PartitioningDisabled_PaginatesSequentially() {
+        // Arrange
+        long[] timestamps = new long[1200];
+        Arrays.setAll(timestamps, i -> 1_600_000_000L + i);
+        FakeMailboxTransport transport = new FakeMailboxTransport(timestamps, 0);
+        GmailService sequential = serviceUsing(transport);
+        EmailAddress sender = new EmailAddress("test@example.com", "test", "example.com", "test@example.com");
+        
+        // Act
+        long count = sequential.countEmailsFromSender(sender);
+        
+        // Assert
+        assertEquals(1200, count);
+        assertEquals(3, transport.requestCount());
+    }
+    
+    @Test
+    void testSearchWindow_SplitCoversWindowWithoutGaps() {
+        // Arrange
+        SearchWindow window = new SearchWindow(1_000, 1_103);
+        
+        // Act
+        List<SearchWindow> parts = window.split(4, 10);
+        
+        // Assert
+        assertEquals(4, parts.size());
+        assertEquals(1_000, parts.get(0).startSecond());
+        assertEquals(1_103, parts.get(3).endSecond());
+        for (int i = 1; i < parts.size(); i++) {
+            assertEquals(parts.get(i - 1).endSecond(), parts.get(i).startSecond());
+        }
+        assertEquals("after:999 before:1025", parts.get(0).query());
+    }
+    
+    @Test
+    void testSearchWindow_UnboundedSplit_KeepsOuterEndsOpen() {
+        // Act
+        List<SearchWindow> parts = SearchWindow.unbounded(1_000, 1_103).split(3, 10);
+        
+        // Assert
+        assertEquals("before:1034", parts.get(0).query());
+        assertEquals("after:1033 before:1068", parts.get(1).query());
+        assertEquals("after:1067", parts.get(2).query());
+        assertEquals("", SearchWindow.unbounded(0, 5).split(16, 10).get(0).query());
+    }
+    
+    @Test
+    void testSearchWindow_SplitRespectsMinimumLength() {
+        // Act
+        List<SearchWindow> parts = new SearchWindow(0, 30).split(16, 10);
+        
+        // Assert
+        assertEquals(3, parts.size());
+        assertEquals(1, new SearchWindow(0, 5).split(16, 10).size());
+    }
+    
+    private GmailService serviceUsing(FakeMailboxTransport transport) {
+        Gmail gmail = GmailService.gmailClientBuilder(transport, request -> { }, 1000, 2000, "Test Application").build();
+        GmailClientHolder holder = new GmailClientHolder(credentialsStorageService, transport, new SimpleMeterRegistry()) {
+            @Override
+            public Gmail getClient(ClientFactory factory) {
+                return gmail;
+            }
+        };
+        NetHttpTransport httpTransport = new NetHttpTransport();
+        return new GmailService(gmailConfig,
+                new AuthorizationFlowCache(gmailConfig, credentialsStorageService, httpTransport), holder,
+                new TokenRefreshService(gmailConfig, new SimpleMeterRegistry()),
+                new GmailQuotaScheduler(gmailConfig, new SimpleMeterRegistry()),
+                new GmailRetryPolicy(gmailConfig, new SimpleMeterRegistry()),
+                new GmailConcurrencyLimiter(gmailConfig, new SimpleMeterRegistry()),
+                new GmailCircuitBreaker(gmailConfig, new AuditService(), new SimpleMeterRegistry()));
+    }
 }
@@ -0,0 +1,187 @@
+package com.krysta.emailreader.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.HistoryLabelAdded;
+import com.google.api.services.gmail.model.HistoryMessageAdded;
+import com.google.api.services.gmail.model.Message;
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.dto.EmailAddress;
+import com.krysta.emailreader.exception.GmailApiException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for HistorySyncService.
+ */
+@ExtendWith(MockitoExtension.class)
+class HistorySyncServiceTest {
+    
+    private static final BigInteger BASELINE = BigInteger.valueOf(100);
+    
+    @Mock
+    private GmailService gmailService;
+    
+    private SimpleMeterRegistry meterRegistry;
+    private EmailService emailService;
+    private HistorySyncService historySyncService;
+    
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        EmailCacheProperties cacheProperties = new EmailCacheProperties();
+        cacheProperties.getIncremental().setEnabled(true);
+        GmailConfig gmailConfig = new GmailConfig();
+        emailService = new EmailService(gmailService, Caffeine.newBuilder().buildAsync(), cacheProperties,
+                new PersistentCountStore(false, Path.of("unused"), 0, null),
+                new GmailCircuitBreaker(gmailConfig, mock(AuditService.class), meterRegistry),
+                new GmailBulkhead(gmailConfig, meterRegistry), new SenderIndex(cacheProperties, meterRegistry),
+                new MessageBitmapIndex(cacheProperties, meterRegistry), meterRegistry);
+        historySyncService = new HistorySyncService(emailService, gmailService, cacheProperties, meterRegistry);
+    }
+    
+    @Test
+    void testSync_AppliesChangesOfTrackedSender() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(BASELINE);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), any())).thenReturn(10L);
+        emailService.getEmailCount("alice@example.com");
+        when(gmailService.listHistory(eq(BASELINE), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(110),
+                List.of(change(105, "m1", 1), change(106, "m2", 1), change(107, "m3", 1), change(108, "m3", -1)),
+                true));
+        when(gmailService.fromHeaders(eq(List.of("m1", "m2")), any())).thenReturn(new MessageSenders(
+                Map.of("m1", "Alice <Alice@Example.com>", "m2", "bob@example.com"), 0));
+        
+        // Act
+        historySyncService.sync();
+        
+        // Assert
+        assertEquals(11L, emailService.getEmailCount("alice@example.com"));
+        assertEquals(BigInteger.valueOf(110), emailService.historyBaselines().get("alice@example.com").historyId());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), any());
+        verify(gmailService, times(1)).fromHeaders(any(), any());
+        assertEquals(1.0, meterRegistry.counter("email.count.history.syncs", "result", "applied").count());
+    }
+    
+    @Test
+    void testSync_IgnoresChangesUpToBaseline() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(BASELINE);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), any())).thenReturn(10L);
+        emailService.getEmailCount("alice@example.com");
+        when(gmailService.listHistory(eq(BASELINE), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(110), List.of(change(100, "m1", 1)), true));
+        
+        // Act
+        historySyncService.sync();
+        
+        // Assert
+        assertEquals(10L, emailService.getEmailCount("alice@example.com"));
+        verify(gmailService, never()).fromHeaders(any(), any());
+    }
+    
+    @Test
+    void testSync_ExpiredHistory_RescansCounts() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(BASELINE);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), any())).thenReturn(10L, 12L);
+        emailService.getEmailCount("alice@example.com");
+        when(gmailService.listHistory(eq(BASELINE), anyInt(), any())).thenReturn(MailboxHistory.incomplete(BASELINE));
+        
+        // Act
+        historySyncService.sync();
+        
+        // Assert
+        verify(gmailService, timeout(1000).times(2)).countEmailsFromSender(any(), any());
+        assertEquals(1.0, meterRegistry.counter("email.count.history.syncs", "result", "rescan").count());
+    }
+    
+    @Test
+    void testSync_MessageDeletedForGood_RescansCounts() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(BASELINE);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), any())).thenReturn(10L, 9L);
+        emailService.getEmailCount("alice@example.com");
+        when(gmailService.listHistory(eq(BASELINE), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(110), List.of(change(105, "m1", -1)), true));
+        when(gmailService.fromHeaders(eq(List.of("m1")), any())).thenReturn(new MessageSenders(Map.of(), 0));
+        
+        // Act
+        historySyncService.sync();
+        
+        // Assert
+        verify(gmailService, timeout(1000).times(2)).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testSync_UnreadableMessage_FailsWithoutApplying() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(BASELINE);
+        when(gmailService.countEmailsFromSender(sender("alice@example.com"), any())).thenReturn(10L);
+        emailService.getEmailCount("alice@example.com");
+        when(gmailService.listHistory(eq(BASELINE), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(110), List.of(change(105, "m1", 1)), true));
+        when(gmailService.fromHeaders(eq(List.of("m1")), any())).thenReturn(new MessageSenders(Map.of(), 1));
+        
+        // Act & Assert
+        assertThrows(GmailApiException.class, () -> historySyncService.sync());
+        assertEquals(BASELINE, emailService.historyBaselines().get("alice@example.com").historyId());
+        verify(gmailService, times(1)).countEmailsFromSender(any(), any());
+    }
+    
+    @Test
+    void testSync_NothingTracked_DoesNotCallGmail() {
+        // Act
+        historySyncService.sync();
+        
+        // Assert
+        verifyNoInteractions(gmailService);
+    }
+    
+    @Test
+    void testMailboxHistory_TrashAndSpamLeaveTheSearch() {
+        // Arrange
+        History record = new History()
+                .setId(BigInteger.valueOf(7))
+                .setMessagesAdded(List.of(
+                        new HistoryMessageAdded().setMessage(message("m1", "INBOX")),
+                        new HistoryMessageAdded().setMessage(message("m2", "SPAM"))))
+                .setLabelsAdded(List.of(
+                        new HistoryLabelAdded().setLabelIds(List.of("TRASH")).setMessage(message("m3", "TRASH")),
+                        new HistoryLabelAdded().setLabelIds(List.of("STARRED")).setMessage(message("m4", "STARRED"))));
+        List<MailboxHistory.MessageChange> changes = new ArrayList<>();
+        
+        // Act
+        MailboxHistory.addChanges(record, changes);
+        
+        // Assert
+        assertEquals(List.of(change(7, "m1", 1), change(7, "m3", -1)), changes);
+    }
+    
+    private static MailboxHistory.MessageChange change(long historyId, String messageId, int delta) {
+        return new MailboxHistory.MessageChange(BigInteger.valueOf(historyId), messageId, delta);
+    }
+    
+    private static Message message(String id, String... labels) {
+        return new Message().setId(id).setLabelIds(List.of(labels));
+    }
+    
+    private static EmailAddress sender(String canonical) {
+        return argThat(address -> address != null && address.canonical().equals(canonical));
+    }
+}
@@ -0,0 +1,144 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.config.EmailCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageBitmapIndex.
+ */
+class MessageBitmapIndexTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private EmailCacheProperties cacheProperties;
+    private MeterRegistry meterRegistry;
+    private MessageBitmapIndex index;
+    
+    @BeforeEach
+    void setUp() {
+        cacheProperties = new EmailCacheProperties();
+        cacheProperties.getBitmaps().setEnabled(true);
+        cacheProperties.getBitmaps().setFile(tempDir.resolve("bitmaps.bin").toString());
+        meterRegistry = new SimpleMeterRegistry();
+        index = new MessageBitmapIndex(cacheProperties, meterRegistry);
+    }
+    
+    @Test
+    void testCountUnionExcept_CountsSharedMessagesOnce() {
+        // Arrange
+        index.recordSender("alice@example.com", collect("18c1", "18c2", "18c3"));
+        index.recordSender("bob@example.com", collect("18c3", "18c4"));
+        index.recordLabel("INBOX", collect("18c2", "18c4", "18c9"));
+        
+        // Act
+        long either = MessageBitmapIndex.countUnionExcept(
+                List.of(index.sender("alice@example.com"), index.sender("bob@example.com")), List.of());
+        long notInInbox = MessageBitmapIndex.countUnionExcept(
+                List.of(index.sender("alice@example.com"), index.sender("bob@example.com")), List.of(index.label("INBOX")));
+        
+        // Assert
+        assertEquals(4L, either);
+        assertEquals(2L, notInInbox);
+    }
+    
+    @Test
+    void testFlush_SurvivesRestart() throws Exception {
+        // Arrange
+        index.recordSender("alice@example.com", collect("18c1", "18c2"));
+        index.recordLabel("INBOX", collect("18c2"));
+        
+        // Act
+        index.flush();
+        MessageBitmapIndex reloaded = new MessageBitmapIndex(cacheProperties, new SimpleMeterRegistry());
+        reloaded.start();
+        
+        // Assert
+        assertEquals(1L, MessageBitmapIndex.countUnionExcept(
+                List.of(reloaded.sender("alice@example.com")), List.of(reloaded.label("INBOX"))));
+        reloaded.shutdown();
+    }
+    
+    @Test
+    void testFlush_DoesNotWriteSenderAddresses() throws Exception {
+        // Arrange
+        index.recordSender("alice@example.com", collect("18c1"));
+        
+        // Act
+        index.flush();
+        
+        // Assert
+        String written = new String(Files.readAllBytes(tempDir.resolve("bitmaps.bin")), StandardCharsets.ISO_8859_1);
+        assertFalse(written.contains("alice"));
+    }
+    
+    @Test
+    void testRecordSender_AfterClear_IsDiscarded() {
+        // Arrange
+        MessageBitmapIndex.Collector collector = collect("18c1");
+        
+        // Act
+        index.clear();
+        MessageBitmapIndex.MessageSet recorded = index.recordSender("alice@example.com", collector);
+        
+        // Assert
+        assertNull(recorded);
+        assertNull(index.sender("alice@example.com"));
+    }
+    
+    @Test
+    void testSender_OlderThanMaxAge_IsNotUsed() throws Exception {
+        // Arrange
+        cacheProperties.getBitmaps().setMaxAge(Duration.ZERO);
+        index.recordSender("alice@example.com", collect("18c1"));
+        Thread.sleep(5);
+        
+        // Act & Assert
+        assertNull(index.sender("alice@example.com"));
+    }
+    
+    @Test
+    void testFlush_MostOrdinalsOrphaned_ReclaimsThem() throws Exception {
+        // Arrange
+        cacheProperties.getBitmaps().setMaxSets(1);
+        List<String> evicted = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            evicted.add(Integer.toHexString(0x100000 + i));
+        }
+        index.recordSender("alice@example.com", collect(evicted.toArray(String[]::new)));
+        Thread.sleep(5);
+        index.recordSender("bob@example.com", collect("18c1", "18c2"));
+        long generation = index.generation();
+        
+        // Act
+        index.flush();
+        cacheProperties.getBitmaps().setMaxSets(2);
+        index.recordLabel("INBOX", collect("18c2", "18c9"));
+        
+        // Assert
+        assertEquals(3.0, meterRegistry.get("email.bitmaps.messages").gauge().value());
+        assertNotEquals(generation, index.generation());
+        assertNull(index.sender("alice@example.com"));
+        assertEquals(1L, MessageBitmapIndex.countUnionExcept(
+                List.of(index.sender("bob@example.com")), List.of(index.label("INBOX"))));
+    }
+    
+    private MessageBitmapIndex.Collector collect(String... messageIds) {
+        MessageBitmapIndex.Collector collector = index.collector();
+        List.of(messageIds).forEach(collector);
+        return collector;
+    }
+}
@@ -0,0 +1,177 @@
+package com.krysta.emailreader.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PersistentCountStore.
+ */
+class PersistentCountStoreTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private File keyDirectory;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        keyDirectory = Files.createDirectories(tempDir.resolve("tokens")).toFile();
+    }
+    
+    @Test
+    void testPut_SurvivesRestart() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        CachedCount count = CachedCount.loadedNow(12L);
+        
+        // Act
+        store.put("superman@example.com", count);
+        store.close();
+        PersistentCountStore reopened = startedStore(file);
+        
+        // Assert
+        assertEquals(count, awaitEntry(reopened, "superman@example.com"));
+        reopened.close();
+    }
+    
+    @Test
+    void testClear_DropsPersistedEntries() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        store.put("superman@example.com", CachedCount.loadedNow(12L));
+        
+        // Act
+        store.clear();
+        store.close();
+        PersistentCountStore reopened = startedStore(file);
+        awaitEntry(reopened, "missing@example.com");
+        
+        // Assert
+        assertNull(reopened.get("superman@example.com"));
+        reopened.close();
+    }
+    
+    @Test
+    void testGet_ExpiredEntry_ReturnsNull() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = new PersistentCountStore(true, file, TimeUnit.HOURS.toMillis(1), keyDirectory);
+        store.start();
+        awaitEntry(store, "missing@example.com");
+        
+        // Act
+        store.put("superman@example.com", new CachedCount(3L, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        
+        // Assert
+        assertNull(store.get("superman@example.com"));
+        store.close();
+    }
+    
+    @Test
+    void testPut_DoesNotWriteSenderInPlaintext() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        
+        // Act
+        store.put("superman@example.com", CachedCount.loadedNow(12L));
+        store.close();
+        
+        // Assert
+        String contents = Files.readString(file, StandardCharsets.UTF_8);
+        assertFalse(contents.isBlank());
+        assertFalse(contents.contains("superman"));
+    }
+    
+    @Test
+    void testOpen_DifferentKey_SkipsEntries() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        store.put("superman@example.com", CachedCount.loadedNow(12L));
+        store.close();
+        deleteKey();
+        
+        // Act
+        PersistentCountStore reopened = startedStore(file);
+        
+        // Assert
+        assertNull(awaitEntry(reopened, "superman@example.com"));
+        reopened.close();
+    }
+    
+    @Test
+    void testPut_AfterKeyDeletedWithCredentials_UsesNewKey() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        awaitEntry(store, "missing@example.com");
+        store.put("superman@example.com", CachedCount.loadedNow(12L));
+        
+        // Act
+        deleteKey();
+        store.clear();
+        store.put("batman@example.com", CachedCount.loadedNow(7L));
+        store.close();
+        PersistentCountStore reopened = startedStore(file);
+        
+        // Assert
+        assertEquals(7L, awaitEntry(reopened, "batman@example.com").count());
+        assertNull(reopened.get("superman@example.com"));
+        reopened.close();
+    }
+    
+    @Test
+    void testPut_ManyOverwrites_CompactsWhileRunning() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("counts.log");
+        PersistentCountStore store = startedStore(file);
+        awaitEntry(store, "missing@example.com");
+        
+        // Act
+        for (long i = 0; i < 2_500; i++) {
+            store.put("superman@example.com", CachedCount.loadedNow(i));
+        }
+        store.close();
+        
+        // Assert
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(lines.size() <= 1_000, "log was not compacted: " + lines.size() + " lines");
+        PersistentCountStore reopened = startedStore(file);
+        assertEquals(2_499L, awaitEntry(reopened, "superman@example.com").count());
+        reopened.close();
+    }
+    
+    private PersistentCountStore startedStore(Path file) {
+        PersistentCountStore store = new PersistentCountStore(true, file, TimeUnit.HOURS.toMillis(1), keyDirectory);
+        store.start();
+        return store;
+    }
+    
+    private void deleteKey() throws Exception {
+        Files.delete(keyDirectory.toPath().resolve(".keystore"));
+    }
+    
+    /**
+     * Waits for the background load to finish, then returns the entry (possibly null).
+     */
+    private CachedCount awaitEntry(PersistentCountStore store, String sender) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!store.isLoaded() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return store.get(sender);
+    }
+}
@@ -0,0 +1,61 @@
+package com.krysta.emailreader.service;
+
+import com.krysta.emailreader.exception.GmailApiException;
+import com.krysta.emailreader.exception.RequestTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RequestDeadline.
+ */
+class RequestDeadlineTest {
+    
+    @Test
+    void testCheck_PastDeadline_ThrowsRequestTimeout() {
+        // Arrange
+        RequestDeadline deadline = RequestDeadline.after(Duration.ZERO);
+        
+        // Act & Assert
+        assertTrue(deadline.isExpired());
+        assertEquals(Duration.ZERO, deadline.remaining());
+        assertThrows(RequestTimeoutException.class, deadline::check);
+    }
+    
+    @Test
+    void testCancel_RunsListenersOnceAndFailsCheck() {
+        // Arrange
+        RequestDeadline deadline = RequestDeadline.none();
+        AtomicInteger runs = new AtomicInteger();
+        deadline.onCancel(runs::incrementAndGet);
+        
+        // Act
+        deadline.cancel();
+        deadline.cancel();
+        deadline.onCancel(runs::incrementAndGet);
+        
+        // Assert
+        assertEquals(2, runs.get());
+        assertThrows(GmailApiException.class, deadline::check);
+    }
+    
+    @Test
+    void testExtendTo_KeepsLaterDeadline() {
+        // Arrange
+        RequestDeadline deadline = RequestDeadline.after(Duration.ZERO);
+        
+        // Act
+        deadline.extendTo(RequestDeadline.after(Duration.ofMinutes(1)));
+        deadline.extendTo(RequestDeadline.after(Duration.ZERO));
+        
+        // Assert
+        assertFalse(deadline.isExpired());
+        assertTrue(deadline.remaining().compareTo(Duration.ofSeconds(30)) > 0);
+        
+        deadline.extendTo(RequestDeadline.none());
+        assertFalse(deadline.isExpired());
+    }
+}
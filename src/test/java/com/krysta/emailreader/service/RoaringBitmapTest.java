@@ -0,0 +1,107 @@
+package com.krysta.emailreader.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RoaringBitmap.
+ */
+class RoaringBitmapTest {
+    
+    @Test
+    void testOrAndAndNot_SmallSets() {
+        // Arrange
+        RoaringBitmap left = bitmap(1, 5, 70000, 200000);
+        RoaringBitmap right = bitmap(5, 6, 200000);
+        
+        // Act
+        RoaringBitmap union = RoaringBitmap.or(left, right);
+        RoaringBitmap intersection = RoaringBitmap.and(left, right);
+        RoaringBitmap difference = RoaringBitmap.andNot(left, right);
+        
+        // Assert
+        assertEquals(5, union.cardinality());
+        assertTrue(union.contains(6) && union.contains(70000));
+        assertEquals(2, intersection.cardinality());
+        assertTrue(intersection.contains(5) && intersection.contains(200000));
+        assertEquals(2, difference.cardinality());
+        assertTrue(difference.contains(1) && difference.contains(70000));
+        assertFalse(difference.contains(5));
+    }
+    
+    @Test
+    void testAndNot_DenseSets_SwitchBetweenArrayAndBitmap() {
+        // Arrange
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap all = new RoaringBitmap();
+        for (int value = 0; value < 20000; value++) {
+            all.add(value);
+            if (value % 2 == 0) {
+                evens.add(value);
+            }
+        }
+        
+        // Act
+        RoaringBitmap odds = RoaringBitmap.andNot(all, evens);
+        
+        // Assert
+        assertEquals(10000, odds.cardinality());
+        assertTrue(odds.contains(19999));
+        assertFalse(odds.contains(19998));
+        assertEquals(20000, RoaringBitmap.or(odds, evens).cardinality());
+        assertTrue(RoaringBitmap.and(odds, evens).isEmpty());
+    }
+    
+    @Test
+    void testWriteTo_RoundTrips() throws Exception {
+        // Arrange
+        RoaringBitmap original = bitmap(3, 65536, 1_000_000);
+        for (int value = 100000; value < 110000; value++) {
+            original.add(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        // Act
+        original.writeTo(new DataOutputStream(bytes));
+        RoaringBitmap copy = RoaringBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        
+        // Assert
+        assertEquals(original.cardinality(), copy.cardinality());
+        assertTrue(copy.contains(65536) && copy.contains(105000) && copy.contains(1_000_000));
+        assertEquals(0, RoaringBitmap.andNot(original, copy).cardinality());
+    }
+    
+    @Test
+    void testForEach_VisitsValuesInAscendingOrder() {
+        // Arrange
+        RoaringBitmap bitmap = bitmap(200000, 7, 65536);
+        for (int value = 10; value < 5010; value++) {
+            bitmap.add(value);
+        }
+        List<Integer> visited = new ArrayList<>();
+        
+        // Act
+        bitmap.forEach(visited::add);
+        
+        // Assert
+        assertEquals(5003, visited.size());
+        assertEquals(List.of(7, 10, 11), visited.subList(0, 3));
+        assertEquals(List.of(5009, 65536, 200000), visited.subList(5000, 5003));
+    }
+    
+    private static RoaringBitmap bitmap(int... values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,209 @@
+package com.krysta.emailreader.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.krysta.emailreader.config.EmailCacheProperties;
+import com.krysta.emailreader.config.GmailConfig;
+import com.krysta.emailreader.exception.GmailApiException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SenderIndexSyncService.
+ */
+@ExtendWith(MockitoExtension.class)
+class SenderIndexSyncServiceTest {
+    
+    private static final BigInteger HISTORY_ID = BigInteger.valueOf(50);
+    
+    @Mock
+    private GmailService gmailService;
+    
+    @TempDir
+    Path tempDir;
+    
+    private SenderIndex senderIndex;
+    private SenderIndexSyncService syncService;
+    
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmailCacheProperties cacheProperties = new EmailCacheProperties();
+        cacheProperties.getIndex().setEnabled(true);
+        cacheProperties.getIndex().setBatchSize(2);
+        cacheProperties.getIndex().setFile(tempDir.resolve("sender-index").toString());
+        GmailConfig gmailConfig = new GmailConfig();
+        senderIndex = new SenderIndex(cacheProperties, meterRegistry);
+        EmailService emailService = new EmailService(gmailService, Caffeine.newBuilder().buildAsync(), cacheProperties,
+                new PersistentCountStore(false, Path.of("unused"), 0, null),
+                new GmailCircuitBreaker(gmailConfig, mock(AuditService.class), meterRegistry),
+                new GmailBulkhead(gmailConfig, meterRegistry), senderIndex,
+                new MessageBitmapIndex(cacheProperties, meterRegistry), meterRegistry);
+        syncService = new SenderIndexSyncService(senderIndex, gmailService, emailService, cacheProperties,
+                meterRegistry);
+    }
+    
+    @Test
+    void testRefresh_NoIndex_BuildsIndexFromAllMessages() {
+        // Arrange
+        stubMailbox(Map.of("m1", "Alice <Alice@Example.com>", "m2", "alice@example.com", "m3", "bob@example.com"));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        assertEquals(2L, senderIndex.lookup("alice@example.com").getAsLong());
+        assertEquals(1L, senderIndex.lookup("bob@example.com").getAsLong());
+        assertEquals(0L, senderIndex.lookup("nobody@example.com").getAsLong());
+        assertEquals(HISTORY_ID, senderIndex.status().historyId());
+        SenderIndexSyncService.Progress progress = syncService.progress();
+        assertFalse(progress.running());
+        assertEquals(3, progress.messagesListed());
+        assertEquals(3, progress.messagesIndexed());
+        verify(gmailService, times(2)).fromHeaders(any(), any());
+    }
+    
+    @Test
+    void testRefresh_IndexBuilt_CatchesUpFromHistory() {
+        // Arrange
+        stubMailbox(Map.of("m1", "alice@example.com", "m2", "bob@example.com"));
+        syncService.refresh();
+        when(gmailService.listHistory(eq(HISTORY_ID), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(60),
+                List.of(change(51, "m4", 1), change(52, "m5", 1), change(53, "m5", -1), change(54, "m6", -1)),
+                true));
+        when(gmailService.fromHeaders(eq(List.of("m4", "m6")), any()))
+                .thenReturn(new MessageSenders(Map.of("m4", "bob@example.com", "m6", "alice@example.com"), 0));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        assertEquals(2L, senderIndex.lookup("bob@example.com").getAsLong());
+        assertEquals(0L, senderIndex.lookup("alice@example.com").getAsLong());
+        assertEquals(BigInteger.valueOf(60), senderIndex.status().historyId());
+        verify(gmailService, times(1)).listMessageIds(any(), any(), any());
+    }
+    
+    @Test
+    void testRefresh_ChangedMessageGone_RebuildsIndex() {
+        // Arrange
+        stubMailbox(Map.of("m1", "alice@example.com", "m2", "bob@example.com"));
+        syncService.refresh();
+        when(gmailService.listHistory(eq(HISTORY_ID), anyInt(), any())).thenReturn(new MailboxHistory(
+                BigInteger.valueOf(60), List.of(change(51, "m6", -1)), true));
+        when(gmailService.fromHeaders(eq(List.of("m6")), any())).thenReturn(new MessageSenders(Map.of(), 0));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        verify(gmailService, times(2)).listMessageIds(any(), any(), any());
+        assertEquals(1L, senderIndex.lookup("alice@example.com").getAsLong());
+        assertEquals(HISTORY_ID, senderIndex.status().historyId());
+        assertEquals(1, syncService.progress().changesUnattributed());
+    }
+    
+    @Test
+    void testRefresh_HistoryExpired_RebuildsIndex() {
+        // Arrange
+        stubMailbox(Map.of("m1", "alice@example.com"));
+        syncService.refresh();
+        when(gmailService.listHistory(eq(HISTORY_ID), anyInt(), any())).thenReturn(MailboxHistory.incomplete(HISTORY_ID));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        verify(gmailService, times(2)).listMessageIds(any(), any(), any());
+        assertEquals(1L, senderIndex.lookup("alice@example.com").getAsLong());
+    }
+    
+    @Test
+    void testRefresh_MessageFailsThenReads_IndexesIt() {
+        // Arrange
+        stubMailbox(Map.of("m1", "alice@example.com", "m2", "alice@example.com"));
+        when(gmailService.fromHeaders(eq(List.of("m1", "m2")), any()))
+                .thenReturn(new MessageSenders(Map.of("m1", "alice@example.com"), 1));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        assertEquals(2L, senderIndex.lookup("alice@example.com").getAsLong());
+        assertEquals(0, syncService.progress().messagesFailed());
+        assertEquals(2, syncService.progress().messagesIndexed());
+    }
+    
+    @Test
+    void testRefresh_MessageKeepsFailing_DoesNotPublishIndex() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenReturn(HISTORY_ID);
+        when(gmailService.listMessageIds(any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<String> sink = invocation.getArgument(1);
+            List.of("m1", "m2").forEach(sink);
+            return new GmailListPage(2, null, null);
+        });
+        when(gmailService.fromHeaders(any(), any())).thenReturn(new MessageSenders(Map.of("m1", "alice@example.com"), 1));
+        
+        // Act & Assert
+        assertThrows(GmailApiException.class, () -> syncService.refresh());
+        assertFalse(senderIndex.status().ready());
+        assertTrue(senderIndex.lookup("bob@example.com").isEmpty());
+        assertEquals(1, syncService.progress().messagesFailed());
+    }
+    
+    @Test
+    void testClear_DuringSync_DiscardsResult() {
+        // Arrange
+        when(gmailService.currentHistoryId(any())).thenAnswer(invocation -> {
+            senderIndex.clear();
+            return HISTORY_ID;
+        });
+        when(gmailService.listMessageIds(any(), any(), any())).thenReturn(new GmailListPage(0, null, null));
+        
+        // Act
+        syncService.refresh();
+        
+        // Assert
+        assertFalse(senderIndex.status().ready());
+        assertTrue(senderIndex.lookup("alice@example.com").isEmpty());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void stubMailbox(Map<String, String> fromById) {
+        List<String> ids = fromById.keySet().stream().sorted().toList();
+        when(gmailService.currentHistoryId(any())).thenReturn(HISTORY_ID);
+        when(gmailService.listMessageIds(any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<String> sink = invocation.getArgument(1);
+            ids.forEach(sink);
+            return new GmailListPage(ids.size(), null, null);
+        });
+        when(gmailService.fromHeaders(argThat(batch -> batch != null && fromById.keySet().containsAll(batch)), any()))
+                .thenAnswer(invocation -> {
+                    Map<String, String> batch = new HashMap<>();
+                    for (String id : (List<String>) invocation.getArgument(0)) {
+                        batch.put(id, fromById.get(id));
+                    }
+                    return new MessageSenders(batch, 0);
+                });
+    }
+    
+    private static MailboxHistory.MessageChange change(long historyId, String messageId, int delta) {
+        return new MailboxHistory.MessageChange(BigInteger.valueOf(historyId), messageId, delta);
+    }
+}
@@ -0,0 +1,245 @@
+package com.krysta.emailreader.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SenderTable.
+ */
+class SenderTableTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testBuild_CommitSurvivesReopen() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        SenderTable table = SenderTable.open(base);
+        
+        // Act
+        replace(table, Map.of("alice@example.com", 3L, "bob@example.com", 2L), 40);
+        table.close();
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertTrue(reopened.isBuilt());
+        assertEquals(3L, reopened.get("alice@example.com"));
+        assertEquals(2L, reopened.get("bob@example.com"));
+        assertEquals(0L, reopened.get("nobody@example.com"));
+        assertEquals(2L, reopened.senders());
+        assertEquals(5L, reopened.messages());
+        assertEquals(40L, reopened.historyId());
+        assertEquals(0L, Files.size(tempDir.resolve("senders.log")));
+        reopened.close();
+    }
+    
+    @Test
+    void testBuild_ManySenders_GrowsStagingTable() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        SenderTable table = SenderTable.open(base);
+        
+        // Act
+        try (SenderTable.Build build = table.build()) {
+            for (int i = 0; i < 5000; i++) {
+                build.merge("sender" + i + "@example.com", 1);
+            }
+            build.merge("sender0@example.com", 2);
+            build.commit(40);
+        }
+        table.close();
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertEquals(5000L, reopened.senders());
+        assertEquals(5002L, reopened.messages());
+        assertEquals(3L, reopened.get("sender0@example.com"));
+        assertEquals(1L, reopened.get("sender4999@example.com"));
+        assertEquals(40L, reopened.historyId());
+        assertEquals(0L, countBuildFiles());
+        reopened.close();
+    }
+    
+    @Test
+    void testBuild_NotCommitted_KeepsTable() throws Exception {
+        // Arrange
+        SenderTable table = SenderTable.open(tempDir.resolve("senders"));
+        replace(table, Map.of("alice@example.com", 3L), 40);
+        
+        // Act
+        try (SenderTable.Build build = table.build()) {
+            build.merge("bob@example.com", 2);
+        }
+        
+        // Assert
+        assertEquals(3L, table.get("alice@example.com"));
+        assertEquals(0L, table.get("bob@example.com"));
+        assertEquals(40L, table.historyId());
+        assertEquals(0L, countBuildFiles());
+        table.close();
+    }
+    
+    @Test
+    void testApply_AddsDeltasAndDropsEmptySenders() throws Exception {
+        // Arrange
+        SenderTable table = SenderTable.open(tempDir.resolve("senders"));
+        replace(table, Map.of("alice@example.com", 3L, "bob@example.com", 1L), 40);
+        
+        // Act
+        table.apply(Map.of("alice@example.com", 2L, "bob@example.com", -4L, "carol@example.com", 1L), 41);
+        
+        // Assert
+        assertEquals(5L, table.get("alice@example.com"));
+        assertEquals(0L, table.get("bob@example.com"));
+        assertEquals(1L, table.get("carol@example.com"));
+        assertEquals(2L, table.senders());
+        assertEquals(6L, table.messages());
+        assertEquals(41L, table.historyId());
+        table.close();
+    }
+    
+    @Test
+    void testOpen_AfterCrash_ReplaysLoggedChanges() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        Path tableFile = tempDir.resolve("senders.tbl");
+        Path saved = tempDir.resolve("saved.tbl");
+        SenderTable table = SenderTable.open(base);
+        replace(table, Map.of("alice@example.com", 3L), 40);
+        Files.copy(tableFile, saved);
+        table.apply(Map.of("alice@example.com", 1L, "bob@example.com", 2L), 41);
+        
+        // Act
+        // The table pages never reached the disk, only the forced log did
+        Files.copy(saved, tableFile, StandardCopyOption.REPLACE_EXISTING);
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertEquals(4L, reopened.get("alice@example.com"));
+        assertEquals(2L, reopened.get("bob@example.com"));
+        assertEquals(2L, reopened.senders());
+        assertEquals(6L, reopened.messages());
+        assertEquals(41L, reopened.historyId());
+        reopened.close();
+    }
+    
+    @Test
+    void testOpen_LogLeftByReplacedTable_IsNotReplayed() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        Path logFile = tempDir.resolve("senders.log");
+        Path savedLog = tempDir.resolve("saved.log");
+        SenderTable table = SenderTable.open(base);
+        replace(table, Map.of("alice@example.com", 3L), 40);
+        table.apply(Map.of("alice@example.com", 1L, "bob@example.com", 2L), 41);
+        Files.copy(logFile, savedLog);
+        replace(table, Map.of("carol@example.com", 5L), 50);
+        
+        // Act
+        // Crash after the new table was swapped in but before the log was truncated
+        Files.copy(savedLog, logFile, StandardCopyOption.REPLACE_EXISTING);
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertEquals(5L, reopened.get("carol@example.com"));
+        assertEquals(0L, reopened.get("alice@example.com"));
+        assertEquals(0L, reopened.get("bob@example.com"));
+        assertEquals(1L, reopened.senders());
+        assertEquals(5L, reopened.messages());
+        assertEquals(50L, reopened.historyId());
+        assertEquals(0L, Files.size(logFile));
+        reopened.close();
+    }
+    
+    @Test
+    void testOpen_TornLogTail_IsDropped() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        SenderTable table = SenderTable.open(base);
+        replace(table, Map.of("alice@example.com", 3L), 40);
+        table.close();
+        Files.write(tempDir.resolve("senders.log"), new byte[] {0, 0, 0, 40, 1, 2, 3},
+                StandardOpenOption.APPEND);
+        
+        // Act
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertEquals(3L, reopened.get("alice@example.com"));
+        assertEquals(40L, reopened.historyId());
+        assertEquals(0L, Files.size(tempDir.resolve("senders.log")));
+        reopened.close();
+    }
+    
+    @Test
+    void testApply_ManyNewSenders_GrowsTable() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        SenderTable table = SenderTable.open(base);
+        replace(table, Map.of(), 1);
+        
+        // Act
+        for (int batch = 0; batch < 10; batch++) {
+            Map<String, Long> deltas = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                deltas.put("sender" + (batch * 500 + i) + "@example.com", 1L);
+            }
+            table.apply(deltas, batch + 2);
+        }
+        table.close();
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertEquals(5000L, reopened.senders());
+        assertEquals(5000L, reopened.messages());
+        assertEquals(1L, reopened.get("sender0@example.com"));
+        assertEquals(1L, reopened.get("sender4999@example.com"));
+        reopened.close();
+    }
+    
+    @Test
+    void testClear_DropsCounts() throws Exception {
+        // Arrange
+        Path base = tempDir.resolve("senders");
+        SenderTable table = SenderTable.open(base);
+        replace(table, Map.of("alice@example.com", 3L), 40);
+        
+        // Act
+        table.clear();
+        table.close();
+        SenderTable reopened = SenderTable.open(base);
+        
+        // Assert
+        assertFalse(reopened.isBuilt());
+        assertEquals(0L, reopened.get("alice@example.com"));
+        assertEquals(-1L, reopened.historyId());
+        reopened.close();
+    }
+    
+    private static void replace(SenderTable table, Map<String, Long> counts, long historyId) throws IOException {
+        try (SenderTable.Build build = table.build()) {
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                build.merge(count.getKey(), count.getValue());
+            }
+            build.commit(historyId);
+        }
+    }
+    
+    private long countBuildFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().contains(".build")).count();
+        }
+    }
+}
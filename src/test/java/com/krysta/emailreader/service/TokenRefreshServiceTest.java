@@ -0,0 +1,110 @@
+package com.krysta.emailreader.service;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.krysta.emailreader.config.GmailConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TokenRefreshService.
+ */
+class TokenRefreshServiceTest {
+    
+    private static final String ACCOUNT = "user";
+    
+    private TokenRefreshService tokenRefreshService;
+    
+    @BeforeEach
+    void setUp() {
+        tokenRefreshService = new TokenRefreshService(new GmailConfig(), new SimpleMeterRegistry());
+    }
+    
+    @AfterEach
+    void tearDown() {
+        tokenRefreshService.shutdown();
+    }
+    
+    @Test
+    void testGetAccessToken_ValidToken_ReturnsWithoutRefresh() throws Exception {
+        // Arrange
+        Credential credential = credentialExpiringIn(TimeUnit.HOURS.toMillis(1));
+        tokenRefreshService.register(ACCOUNT, credential);
+        
+        // Act
+        String token = tokenRefreshService.getAccessToken(ACCOUNT);
+        
+        // Assert
+        assertEquals("access-token", token);
+        verify(credential, never()).refreshToken();
+    }
+    
+    @Test
+    void testRefresh_ConcurrentCalls_ShareSingleRefresh() throws Exception {
+        // Arrange
+        Credential credential = credentialExpiringIn(TimeUnit.HOURS.toMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        when(credential.refreshToken()).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        tokenRefreshService.register(ACCOUNT, credential);
+        
+        // Act
+        CompletableFuture<Boolean> first = tokenRefreshService.refresh(ACCOUNT);
+        CompletableFuture<Boolean> second = tokenRefreshService.refresh(ACCOUNT);
+        release.countDown();
+        
+        // Assert
+        assertSame(first, second);
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        verify(credential, times(1)).refreshToken();
+    }
+    
+    @Test
+    void testRefresh_FailsInsideLeadWindow_WaitsForRetryDelay() throws Exception {
+        // Arrange
+        Credential credential = credentialExpiringIn(TimeUnit.MINUTES.toMillis(2));
+        when(credential.refreshToken()).thenReturn(false);
+        
+        // Act
+        tokenRefreshService.register(ACCOUNT, credential);
+        
+        // Assert
+        verify(credential, timeout(2000).times(1)).refreshToken();
+        verify(credential, after(500).times(1)).refreshToken();
+    }
+    
+    @Test
+    void testRefresh_ThrowsInsideLeadWindow_WaitsForRetryDelay() throws Exception {
+        // Arrange
+        Credential credential = credentialExpiringIn(TimeUnit.MINUTES.toMillis(2));
+        when(credential.refreshToken()).thenThrow(new IOException("token endpoint unavailable"));
+        
+        // Act
+        tokenRefreshService.register(ACCOUNT, credential);
+        
+        // Assert
+        verify(credential, timeout(2000).times(1)).refreshToken();
+        verify(credential, after(500).times(1)).refreshToken();
+        assertEquals("access-token", tokenRefreshService.getAccessToken(ACCOUNT));
+    }
+    
+    private Credential credentialExpiringIn(long millis) {
+        Credential credential = mock(Credential.class);
+        when(credential.getAccessToken()).thenReturn("access-token");
+        when(credential.getRefreshToken()).thenReturn("refresh-token");
+        when(credential.getExpirationTimeMilliseconds()).thenReturn(System.currentTimeMillis() + millis);
+        when(credential.getExpiresInSeconds()).thenReturn(TimeUnit.MILLISECONDS.toSeconds(millis));
+        return credential;
+    }
+}